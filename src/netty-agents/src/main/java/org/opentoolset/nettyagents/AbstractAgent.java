@@ -8,18 +8,31 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.PrivateKey;
+import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.X509TrustManager;
 
 import org.slf4j.Logger;
 
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.ImmediateExecutor;
 
 /**
  * Abstract Agent class contains common members for its childs ie. Client and Server Agents.
@@ -32,7 +45,19 @@ public abstract class AbstractAgent {
 
 	private Context context = new Context();
 
-	private SslContext sslContext;
+	private volatile SslContext sslContext;
+
+	private AgentRuntime runtime;
+
+	private boolean privateRuntime;
+
+	private boolean runtimeRetained;
+
+	// ---
+
+	protected AbstractAgent() {
+		this.context.setTrustChangeListener(this::invalidateTlsSessions);
+	}
 
 	// ---
 
@@ -74,18 +99,39 @@ public abstract class AbstractAgent {
 		this.context.getMessageReceiver().setMessageHandler(classOfMessage, consumer);
 	}
 
+	/**
+	 * Removes the request handler of a specific request type
+	 * 
+	 * @param classOfRequest
+	 */
+	public void removeRequestHandler(Class<? extends AbstractRequest<?>> classOfRequest) {
+		this.context.getMessageReceiver().removeRequestHandler(classOfRequest);
+	}
+
+	/**
+	 * Removes the message handler of a specific message type
+	 * 
+	 * @param classOfMessage
+	 */
+	public void removeMessageHandler(Class<? extends AbstractMessage> classOfMessage) {
+		this.context.getMessageReceiver().removeMessageHandler(classOfMessage);
+	}
+
 	/**
 	 * Starts peer identification mode. In this mode it is only allowed to exchage certificates between peers. No other communication is allowed. Any peer may give trust to other peers in this mode if they are authentic.
 	 */
 	public void startPeerIdentificationMode() {
 		this.context.setTrustNegotiationMode(true);
+		invalidateTlsSessions();
 	}
 
 	/**
-	 * Ends peer identification mod. After ending this mode, peers can communicate with each other.
+	 * Ends peer identification mod. After ending this mode, peers can communicate with each other.<br />
+	 * TLS sessions established in this mode are invalidated, since peer certificates are not verified while establishing them.
 	 */
 	public void stopPeerIdentificationMode() {
 		this.context.setTrustNegotiationMode(false);
+		invalidateTlsSessions();
 	}
 
 	// ---
@@ -99,10 +145,67 @@ public abstract class AbstractAgent {
 		return context;
 	}
 
+	/**
+	 * Returns the runtime providing event loops and executors to this agent
+	 * 
+	 * @return runtime, or null if the agent is not started and no runtime was set
+	 */
+	public AgentRuntime getRuntime() {
+		return runtime;
+	}
+
+	/**
+	 * Sets a runtime shared with other agents. Must be called before startup.<br />
+	 * Transport and dispatcher settings of a shared runtime override the corresponding settings in the configuration of this agent.
+	 * 
+	 * @param runtime
+	 */
+	public void setRuntime(AgentRuntime runtime) {
+		this.runtime = runtime;
+		this.privateRuntime = false;
+	}
+
 	/**
 	 * Starts the agent up ie. by entering listening mode (for server) or making connection attempts to configured server-peer
 	 */
 	protected void startup() {
+		if (this.runtime == null) {
+			this.runtime = createRuntime();
+			this.privateRuntime = true;
+			this.runtimeRetained = true;
+		} else if (!this.runtimeRetained) {
+			this.runtime.retain();
+			this.runtimeRetained = true;
+		}
+
+		this.context.getResponseCache().setMaxBytes(getConfig().getResponseCacheMaxBytes());
+		this.context.setInboundDispatcher(this.runtime.getInboundDispatcher());
+		if (getConfig().isAdmissionControlEnabled() && this.context.getAdmissionController() == null) {
+			this.context.setAdmissionController(new AdmissionController(Constants.DEFAULT_ADMISSION_INITIAL_LIMIT, Constants.DEFAULT_ADMISSION_MIN_LIMIT, getConfig().getAdmissionMaxLimit()));
+		}
+	}
+
+	/**
+	 * Shuts the agent down by releasing resources allocated during startup. The runtime is released only once, even if shutdown is called again.
+	 */
+	protected void shutdown() {
+		if (this.runtimeRetained) {
+			this.runtimeRetained = false;
+			this.runtime.release();
+			if (this.privateRuntime) {
+				this.runtime = null;
+			}
+		}
+	}
+
+	/**
+	 * Creates the private runtime of this agent if no shared runtime was set
+	 * 
+	 * @return
+	 */
+	protected AgentRuntime createRuntime() {
+		AbstractConfig config = getConfig();
+		return new AgentRuntime(config.getTransport(), Constants.DEFAULT_BOSS_THREADS, Constants.DEFAULT_WORKER_THREADS, config.getDispatcherThreads());
 	}
 
 	/**
@@ -123,6 +226,90 @@ public abstract class AbstractAgent {
 		this.sslContext = sslContext;
 	}
 
+	/**
+	 * Builds SSL context object with TLS session options of the configuration, so reconnecting peers can resume their sessions instead of making full handshakes:
+	 * <ul>
+	 * <li>Sessions are cached by both sides with the configured cache size and timeout; clients resume sessions per remote host and port,</li>
+	 * <li>Server issues session tickets if enabled and supported by the TLS provider, so clients can resume without the server keeping their sessions.</li>
+	 * </ul>
+	 * Since the trust manager isn't called for resumed sessions, agents verify peer certificates against trusted certificates after every handshake and close the connection if verification fails.
+	 * Besides, sessions are invalidated whenever trusted certificates change or peer identification mode starts or stops (see {@link #invalidateTlsSessions()}).
+	 * 
+	 * @param builder
+	 * @return
+	 * @throws SSLException
+	 */
+	protected SslContext buildSslContext(SslContextBuilder builder) throws SSLException {
+		AbstractConfig config = getConfig();
+		builder.sslProvider(resolveTlsProvider(config.getTlsProvider()));
+		builder.sessionCacheSize(config.getTlsSessionCacheSize());
+		builder.sessionTimeout(config.getTlsSessionTimeoutSec());
+		SslContext sslContext = builder.build();
+
+		SSLSessionContext sessionContext = sslContext.sessionContext();
+		if (sslContext.isServer() && config.isTlsSessionTicketsEnabled() && sessionContext instanceof OpenSslSessionContext) {
+			byte[] ticketKey = config.getTlsSessionTicketKey();
+			if (ticketKey == null) {
+				ticketKey = new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE];
+				new SecureRandom().nextBytes(ticketKey);
+			}
+
+			((OpenSslSessionContext) sessionContext).setTicketKeys(newTicketKey(ticketKey));
+		}
+		return sslContext;
+	}
+
+	private static OpenSslSessionTicketKey newTicketKey(byte[] ticketKey) {
+		byte[] name = Arrays.copyOfRange(ticketKey, 0, OpenSslSessionTicketKey.NAME_SIZE);
+		byte[] hmacKey = Arrays.copyOfRange(ticketKey, OpenSslSessionTicketKey.NAME_SIZE, OpenSslSessionTicketKey.NAME_SIZE + OpenSslSessionTicketKey.HMAC_KEY_SIZE);
+		byte[] aesKey = Arrays.copyOfRange(ticketKey, OpenSslSessionTicketKey.NAME_SIZE + OpenSslSessionTicketKey.HMAC_KEY_SIZE, OpenSslSessionTicketKey.TICKET_KEY_SIZE);
+		return new OpenSslSessionTicketKey(name, hmacKey, aesKey);
+	}
+
+	/**
+	 * Invalidates cached TLS sessions of this agent, so that the next handshakes with peers are full handshakes verified by the trust manager.<br />
+	 * Ticket keys of the OpenSSL provider are also renewed if session tickets are enabled. Tickets issued by other providers may still be resumed, so peer certificates are verified after every handshake as well.
+	 */
+	protected void invalidateTlsSessions() {
+		SslContext sslContext = this.sslContext;
+		if (sslContext == null) {
+			return;
+		}
+
+		SSLSessionContext sessionContext = sslContext.sessionContext();
+		for (Enumeration<byte[]> ids = sessionContext.getIds(); ids.hasMoreElements();) {
+			SSLSession session = sessionContext.getSession(ids.nextElement());
+			if (session != null) {
+				session.invalidate();
+			}
+		}
+
+		if (sslContext.isServer() && getConfig().isTlsSessionTicketsEnabled() && sessionContext instanceof OpenSslSessionContext) {
+			byte[] ticketKey = new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE];
+			new SecureRandom().nextBytes(ticketKey);
+			((OpenSslSessionContext) sessionContext).setTicketKeys(newTicketKey(ticketKey));
+		}
+	}
+
+	/**
+	 * Returns the executor which TLS handshake tasks are delegated to
+	 * 
+	 * @return executor of the runtime if handshake offload is enabled, otherwise an executor running tasks on the event loop
+	 */
+	protected Executor getTlsExecutor() {
+		return getConfig().isTlsHandshakeOffloadEnabled() ? getRuntime().getTlsExecutor() : ImmediateExecutor.INSTANCE;
+	}
+
+	// ---
+
+	private static SslProvider resolveTlsProvider(SslProvider tlsProvider) {
+		if (tlsProvider != SslProvider.JDK && !OpenSsl.isAvailable()) {
+			logger.warn("OpenSSL is not available, JDK TLS provider is used instead: {}", String.valueOf(OpenSsl.unavailabilityCause()));
+			return SslProvider.JDK;
+		}
+		return tlsProvider;
+	}
+
 	// ---
 
 	public static class AbstractConfig {
@@ -130,6 +317,29 @@ public abstract class AbstractAgent {
 		private boolean tlsEnabled = Constants.DEFAULT_TLS_ENABLED;
 		private PrivateKey priKey;
 		private X509Certificate cert;
+		private long responseCacheMaxBytes = Constants.DEFAULT_RESPONSE_CACHE_MAX_BYTES;
+		private int dispatcherThreads = Constants.DEFAULT_DISPATCHER_THREADS;
+		private int writeBufferLowWaterMark = Constants.DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
+		private int writeBufferHighWaterMark = Constants.DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+		private int outboundQueueCapacity = Constants.DEFAULT_OUTBOUND_QUEUE_CAPACITY;
+		private OverflowPolicy overflowPolicy = Constants.DEFAULT_OVERFLOW_POLICY;
+		private boolean flowControlEnabled = Constants.DEFAULT_FLOW_CONTROL_ENABLED;
+		private int flowControlInitialWindow = Constants.DEFAULT_FLOW_CONTROL_INITIAL_WINDOW;
+		private int flowControlMaxWindow = Constants.DEFAULT_FLOW_CONTROL_MAX_WINDOW;
+		private boolean admissionControlEnabled = Constants.DEFAULT_ADMISSION_CONTROL_ENABLED;
+		private int admissionMaxLimit = Constants.DEFAULT_ADMISSION_MAX_LIMIT;
+		private Transport transport = Constants.DEFAULT_TRANSPORT;
+		private boolean tcpNoDelay = Constants.DEFAULT_TCP_NO_DELAY;
+		private boolean tcpQuickAck = Constants.DEFAULT_TCP_QUICK_ACK;
+		private int busyPollMicros = Constants.DEFAULT_BUSY_POLL_MICROS;
+		private int tcpFastOpenQueueLength = Constants.DEFAULT_TCP_FAST_OPEN_QUEUE_LENGTH;
+		private int heartbeatIntervalSec = Constants.DEFAULT_HEARTBEAT_INTERVAL_SEC;
+		private int tlsSessionCacheSize = Constants.DEFAULT_TLS_SESSION_CACHE_SIZE;
+		private int tlsSessionTimeoutSec = Constants.DEFAULT_TLS_SESSION_TIMEOUT_SEC;
+		private boolean tlsSessionTicketsEnabled = Constants.DEFAULT_TLS_SESSION_TICKETS_ENABLED;
+		private byte[] tlsSessionTicketKey;
+		private SslProvider tlsProvider = Constants.DEFAULT_TLS_PROVIDER;
+		private boolean tlsHandshakeOffloadEnabled = Constants.DEFAULT_TLS_HANDSHAKE_OFFLOAD_ENABLED;
 
 		// ---
 
@@ -145,6 +355,98 @@ public abstract class AbstractAgent {
 			return cert;
 		}
 
+		public long getResponseCacheMaxBytes() {
+			return responseCacheMaxBytes;
+		}
+
+		public int getDispatcherThreads() {
+			return dispatcherThreads;
+		}
+
+		public int getWriteBufferLowWaterMark() {
+			return writeBufferLowWaterMark;
+		}
+
+		public int getWriteBufferHighWaterMark() {
+			return writeBufferHighWaterMark;
+		}
+
+		public int getOutboundQueueCapacity() {
+			return outboundQueueCapacity;
+		}
+
+		public OverflowPolicy getOverflowPolicy() {
+			return overflowPolicy;
+		}
+
+		public boolean isFlowControlEnabled() {
+			return flowControlEnabled;
+		}
+
+		public int getFlowControlInitialWindow() {
+			return flowControlInitialWindow;
+		}
+
+		public int getFlowControlMaxWindow() {
+			return flowControlMaxWindow;
+		}
+
+		public boolean isAdmissionControlEnabled() {
+			return admissionControlEnabled;
+		}
+
+		public int getAdmissionMaxLimit() {
+			return admissionMaxLimit;
+		}
+
+		public Transport getTransport() {
+			return transport;
+		}
+
+		public boolean isTcpNoDelay() {
+			return tcpNoDelay;
+		}
+
+		public boolean isTcpQuickAck() {
+			return tcpQuickAck;
+		}
+
+		public int getBusyPollMicros() {
+			return busyPollMicros;
+		}
+
+		public int getTcpFastOpenQueueLength() {
+			return tcpFastOpenQueueLength;
+		}
+
+		public int getHeartbeatIntervalSec() {
+			return heartbeatIntervalSec;
+		}
+
+		public int getTlsSessionCacheSize() {
+			return tlsSessionCacheSize;
+		}
+
+		public int getTlsSessionTimeoutSec() {
+			return tlsSessionTimeoutSec;
+		}
+
+		public boolean isTlsSessionTicketsEnabled() {
+			return tlsSessionTicketsEnabled;
+		}
+
+		public byte[] getTlsSessionTicketKey() {
+			return tlsSessionTicketKey;
+		}
+
+		public SslProvider getTlsProvider() {
+			return tlsProvider;
+		}
+
+		public boolean isTlsHandshakeOffloadEnabled() {
+			return tlsHandshakeOffloadEnabled;
+		}
+
 		// ---
 
 		public AbstractConfig setTlsEnabled(boolean tlsEnabled) {
@@ -179,6 +481,242 @@ public abstract class AbstractAgent {
 			this.cert = cert;
 			return this;
 		}
+
+		/**
+		 * Sets the size budget of the response cache used for request types marked as {@link Cacheable}
+		 * 
+		 * @param responseCacheMaxBytes
+		 * @return
+		 */
+		public AbstractConfig setResponseCacheMaxBytes(long responseCacheMaxBytes) {
+			this.responseCacheMaxBytes = responseCacheMaxBytes;
+			return this;
+		}
+
+		/**
+		 * Sets the number of threads which inbound messages and requests are handled on. Messages with the same routing key (see {@link Routable}) are handled in order on the same thread, and each thread takes waiting messages in order of their priority.<br />
+		 * If it is zero (default), handlers are executed inline on the event loop of the channel.
+		 * 
+		 * @param dispatcherThreads
+		 * @return
+		 */
+		public AbstractConfig setDispatcherThreads(int dispatcherThreads) {
+			this.dispatcherThreads = dispatcherThreads;
+			return this;
+		}
+
+		/**
+		 * Sets water marks of the outbound buffer of each channel in bytes. A channel becomes unwritable above the high water mark and writable again below the low water mark; queued messages are kept back while it is unwritable.
+		 * 
+		 * @param writeBufferLowWaterMark
+		 * @param writeBufferHighWaterMark
+		 * @return
+		 */
+		public AbstractConfig setWriteBufferWaterMark(int writeBufferLowWaterMark, int writeBufferHighWaterMark) {
+			this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+			this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of messages queued for each peer while its channel is unwritable
+		 * 
+		 * @param outboundQueueCapacity
+		 * @return
+		 */
+		public AbstractConfig setOutboundQueueCapacity(int outboundQueueCapacity) {
+			this.outboundQueueCapacity = outboundQueueCapacity;
+			return this;
+		}
+
+		/**
+		 * Sets what happens to messages sent to a peer whose outbound queue is full
+		 * 
+		 * @param overflowPolicy
+		 * @return
+		 */
+		public AbstractConfig setOverflowPolicy(OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+			return this;
+		}
+
+		/**
+		 * Enables credit-based flow control between peers (see {@link FlowControl}). It must be enabled on both sides of a connection.
+		 * 
+		 * @param flowControlEnabled
+		 * @return
+		 */
+		public AbstractConfig setFlowControlEnabled(boolean flowControlEnabled) {
+			this.flowControlEnabled = flowControlEnabled;
+			return this;
+		}
+
+		/**
+		 * Sets initial and maximum size of the flow control window in number of messages
+		 * 
+		 * @param flowControlInitialWindow
+		 * @param flowControlMaxWindow
+		 * @return
+		 */
+		public AbstractConfig setFlowControlWindow(int flowControlInitialWindow, int flowControlMaxWindow) {
+			this.flowControlInitialWindow = flowControlInitialWindow;
+			this.flowControlMaxWindow = flowControlMaxWindow;
+			return this;
+		}
+
+		/**
+		 * Enables admission control of request handlers (see {@link AdmissionController}). Requests over the adaptive concurrency limit are rejected immediately by an {@link OverloadedResponse}, which makes the request method of the peer throw {@link OverloadedException}.
+		 * 
+		 * @param admissionControlEnabled
+		 * @return
+		 */
+		public AbstractConfig setAdmissionControlEnabled(boolean admissionControlEnabled) {
+			this.admissionControlEnabled = admissionControlEnabled;
+			return this;
+		}
+
+		/**
+		 * Sets the upper bound of the adaptive concurrency limit of request handlers
+		 * 
+		 * @param admissionMaxLimit
+		 * @return
+		 */
+		public AbstractConfig setAdmissionMaxLimit(int admissionMaxLimit) {
+			this.admissionMaxLimit = admissionMaxLimit;
+			return this;
+		}
+
+		/**
+		 * Sets the socket transport. Native transports fall back to NIO when their native library is not available.
+		 * 
+		 * @param transport
+		 * @return
+		 */
+		public AbstractConfig setTransport(Transport transport) {
+			this.transport = transport;
+			return this;
+		}
+
+		public AbstractConfig setTcpNoDelay(boolean tcpNoDelay) {
+			this.tcpNoDelay = tcpNoDelay;
+			return this;
+		}
+
+		/**
+		 * Enables TCP_QUICKACK socket option (epoll transport only)
+		 * 
+		 * @param tcpQuickAck
+		 * @return
+		 */
+		public AbstractConfig setTcpQuickAck(boolean tcpQuickAck) {
+			this.tcpQuickAck = tcpQuickAck;
+			return this;
+		}
+
+		/**
+		 * Sets SO_BUSY_POLL socket option in microseconds, zero disables busy polling (epoll transport only)
+		 * 
+		 * @param busyPollMicros
+		 * @return
+		 */
+		public AbstractConfig setBusyPollMicros(int busyPollMicros) {
+			this.busyPollMicros = busyPollMicros;
+			return this;
+		}
+
+		/**
+		 * Enables TCP Fast Open with the given queue length of pending server connections, zero disables it (epoll transport only)
+		 * 
+		 * @param tcpFastOpenQueueLength
+		 * @return
+		 */
+		public AbstractConfig setTcpFastOpenQueueLength(int tcpFastOpenQueueLength) {
+			this.tcpFastOpenQueueLength = tcpFastOpenQueueLength;
+			return this;
+		}
+
+		/**
+		 * Enables heartbeats on idle connections (see {@link HeartbeatHandler}), zero disables them. Peers always answer heartbeats, so it only needs to be enabled on the side which checks the health of its connections.
+		 * 
+		 * @param heartbeatIntervalSec
+		 * @return
+		 */
+		public AbstractConfig setHeartbeatIntervalSec(int heartbeatIntervalSec) {
+			this.heartbeatIntervalSec = heartbeatIntervalSec;
+			return this;
+		}
+
+		/**
+		 * Sets the TLS session cache, so that reconnecting peers resume their sessions instead of making full handshakes. Zero size or timeout uses the defaults of the TLS provider.
+		 * 
+		 * @param tlsSessionCacheSize
+		 *          Maximum number of cached sessions
+		 * @param tlsSessionTimeoutSec
+		 *          Duration which a session can be resumed within
+		 * @return
+		 */
+		public AbstractConfig setTlsSessionCache(int tlsSessionCacheSize, int tlsSessionTimeoutSec) {
+			this.tlsSessionCacheSize = tlsSessionCacheSize;
+			this.tlsSessionTimeoutSec = tlsSessionTimeoutSec;
+			return this;
+		}
+
+		/**
+		 * Enables TLS session tickets issued by the server (OpenSSL provider only; JDK provider uses its own defaults)
+		 * 
+		 * @param tlsSessionTicketsEnabled
+		 * @return
+		 */
+		public AbstractConfig setTlsSessionTicketsEnabled(boolean tlsSessionTicketsEnabled) {
+			this.tlsSessionTicketsEnabled = tlsSessionTicketsEnabled;
+			return this;
+		}
+
+		/**
+		 * Sets the TLS implementation. OpenSSL providers require netty-tcnative (eg. netty-tcnative-boringssl-static) on the classpath and fall back to JDK if it is not available.
+		 * 
+		 * @param tlsProvider
+		 * @return
+		 */
+		public AbstractConfig setTlsProvider(SslProvider tlsProvider) {
+			this.tlsProvider = tlsProvider;
+			return this;
+		}
+
+		/**
+		 * Enables delegating expensive TLS handshake tasks to the TLS executor of the runtime instead of running them on event loops
+		 * 
+		 * @param tlsHandshakeOffloadEnabled
+		 * @return
+		 */
+		public AbstractConfig setTlsHandshakeOffloadEnabled(boolean tlsHandshakeOffloadEnabled) {
+			this.tlsHandshakeOffloadEnabled = tlsHandshakeOffloadEnabled;
+			return this;
+		}
+
+		/**
+		 * Sets the key which session tickets are encrypted with, eg. to share it between servers behind the same address so that tickets issued by one of them are accepted by the others. A random key is used if not set.
+		 * 
+		 * @param tlsSessionTicketKey
+		 *          48 bytes of name, HMAC key and AES key
+		 * @return
+		 */
+		public AbstractConfig setTlsSessionTicketKey(byte[] tlsSessionTicketKey) {
+			if (tlsSessionTicketKey != null && tlsSessionTicketKey.length != OpenSslSessionTicketKey.TICKET_KEY_SIZE) {
+				throw new IllegalArgumentException("Session ticket key must be " + OpenSslSessionTicketKey.TICKET_KEY_SIZE + " bytes");
+			}
+			this.tlsSessionTicketKey = tlsSessionTicketKey;
+			return this;
+		}
+
+		/**
+		 * Creates a flow control window for a new connection if flow control is enabled
+		 * 
+		 * @return flow control window, or null if flow control is disabled
+		 */
+		public FlowControl newFlowControl() {
+			return this.flowControlEnabled ? new FlowControl(this.flowControlInitialWindow, Math.min(Constants.DEFAULT_FLOW_CONTROL_MIN_WINDOW, this.flowControlInitialWindow), this.flowControlMaxWindow) : null;
+		}
 	}
 
 	// ---
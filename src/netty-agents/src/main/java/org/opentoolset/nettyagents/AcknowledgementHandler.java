@@ -0,0 +1,192 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Tracks delivery of messages sent with {@link DeliveryMode#ACKNOWLEDGED} on a channel:
+ * <ul>
+ * <li>On the sending side, assigns sequence numbers to tracked messages in the order they are written to the channel, and completes their futures when a cumulative acknowledgement covering them arrives,</li>
+ * <li>On the receiving side, acknowledges the highest received sequence number once per batch of messages or after a short delay, whichever comes first.</li>
+ * </ul>
+ * A tracked message which is dropped by a later handler before reaching message handlers (see {@link #onDropped(MessageWrapper)}) is answered with a negative acknowledgement instead, which fails its future. It is sent before any acknowledgement covering the dropped message, so the cumulative acknowledgement never completes it.<br />
+ * Since sequence numbers are only meaningful within a connection, pending deliveries fail when the channel is closed, except the ones kept in a session (see {@link Session}), which are resent after reconnecting.
+ */
+public class AcknowledgementHandler extends ChannelDuplexHandler {
+
+	private final Queue<PendingDelivery> pendingDeliveries = new ArrayDeque<>();
+
+	private long lastSentSeq = 0;
+
+	private long lastReceivedSeq = 0;
+
+	private long lastAckedSeq = 0;
+
+	private boolean ackScheduled = false;
+
+	private ChannelHandlerContext ctx;
+
+	private Long droppedSeq;
+
+	// ---
+
+	/**
+	 * Must be called on the event loop by a handler after this one when it drops a message instead of passing it on
+	 * 
+	 * @param messageWrapper
+	 */
+	void onDropped(MessageWrapper messageWrapper) {
+		Long seq = messageWrapper.getSeq();
+		if (seq != null && this.ctx != null) {
+			this.droppedSeq = seq;
+			this.ctx.writeAndFlush(MessageWrapper.createNack(seq));
+		}
+	}
+
+	// ---
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof MessageWrapper) {
+			MessageWrapper messageWrapper = (MessageWrapper) msg;
+			CompletableFuture<Void> deliveryFuture = messageWrapper.deliveryFuture();
+			if (deliveryFuture != null) {
+				long seq = ++this.lastSentSeq;
+				messageWrapper.setSeq(seq);
+				boolean resumable = messageWrapper.getSessionSeq() != null;
+				this.pendingDeliveries.add(new PendingDelivery(seq, deliveryFuture, resumable));
+				promise.addListener(future -> {
+					if (!future.isSuccess() && !resumable) {
+						deliveryFuture.completeExceptionally(future.cause());
+					}
+				});
+			}
+		}
+
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof MessageWrapper) {
+			MessageWrapper messageWrapper = (MessageWrapper) msg;
+
+			Long ack = messageWrapper.getAck();
+			if (ack != null) {
+				onAck(ack);
+				return;
+			}
+
+			Long nack = messageWrapper.getNack();
+			if (nack != null) {
+				onNack(nack);
+				return;
+			}
+
+			Long seq = messageWrapper.getSeq();
+			if (seq != null) {
+				// Recorded after passing it on, so a message dropped by a later handler is never acknowledged
+				ctx.fireChannelRead(msg);
+				if (!seq.equals(this.droppedSeq)) {
+					onTrackedMessage(ctx, seq);
+				}
+				return;
+			}
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		failPendingDeliveries();
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		failPendingDeliveries();
+	}
+
+	// ---
+
+	private void onAck(long ack) {
+		PendingDelivery pendingDelivery;
+		while ((pendingDelivery = this.pendingDeliveries.peek()) != null && pendingDelivery.seq <= ack) {
+			this.pendingDeliveries.poll();
+			pendingDelivery.future.complete(null);
+		}
+	}
+
+	private void onNack(long nack) {
+		for (Iterator<PendingDelivery> iterator = this.pendingDeliveries.iterator(); iterator.hasNext();) {
+			PendingDelivery pendingDelivery = iterator.next();
+			if (pendingDelivery.seq == nack) {
+				iterator.remove();
+				pendingDelivery.future.completeExceptionally(new IllegalStateException("Message was dropped by the peer"));
+				return;
+			}
+		}
+	}
+
+	private void onTrackedMessage(ChannelHandlerContext ctx, long seq) {
+		this.lastReceivedSeq = seq;
+		if (this.lastReceivedSeq - this.lastAckedSeq >= Constants.DEFAULT_ACK_BATCH_SIZE) {
+			sendAck(ctx);
+		} else if (!this.ackScheduled) {
+			this.ackScheduled = true;
+			ctx.executor().schedule(() -> {
+				this.ackScheduled = false;
+				sendAck(ctx);
+			}, Constants.DEFAULT_ACK_DELAY_MS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void sendAck(ChannelHandlerContext ctx) {
+		if (this.lastReceivedSeq > this.lastAckedSeq && ctx.channel().isActive()) {
+			this.lastAckedSeq = this.lastReceivedSeq;
+			ctx.writeAndFlush(MessageWrapper.createAck(this.lastAckedSeq));
+		}
+	}
+
+	private void failPendingDeliveries() {
+		PendingDelivery pendingDelivery;
+		while ((pendingDelivery = this.pendingDeliveries.poll()) != null) {
+			if (!pendingDelivery.resumable) {
+				pendingDelivery.future.completeExceptionally(new ClosedChannelException());
+			}
+		}
+	}
+
+	// ---
+
+	private static final class PendingDelivery {
+
+		private final long seq;
+		private final CompletableFuture<Void> future;
+		private final boolean resumable;
+
+		private PendingDelivery(long seq, CompletableFuture<Void> future, boolean resumable) {
+			this.seq = seq;
+			this.future = future;
+			this.resumable = resumable;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits number of concurrently handled requests by an adaptive limit, so that requests are rejected early instead of piling up when handlers fall behind.<br />
+ * The limit is adjusted by a Vegas-style algorithm: the queueing in handling is estimated from the ratio of the minimum and current latency of requests; the limit is increased while the estimated queue is small and decreased when it grows.
+ */
+public class AdmissionController {
+
+	private static final int MIN_RTT_RESET_SAMPLES = 1000;
+
+	private final int minLimit;
+	private final int maxLimit;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private volatile double limit;
+	private long minRttNanos = Long.MAX_VALUE;
+	private int samples = 0;
+
+	// ---
+
+	public AdmissionController(int initialLimit, int minLimit, int maxLimit) {
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Admits a request if the number of requests in flight is below the current limit. Each admitted request must be released by {@link #release(long)}.
+	 * 
+	 * @return true if the request is admitted
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			int current = this.inFlight.get();
+			if (current >= (int) this.limit) {
+				this.rejectedCount.incrementAndGet();
+				return false;
+			}
+
+			if (this.inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Releases an admitted request and adjusts the limit by its latency
+	 * 
+	 * @param rttNanos
+	 *          Time passed since the request was admitted
+	 */
+	public void release(long rttNanos) {
+		this.inFlight.decrementAndGet();
+		update(rttNanos);
+	}
+
+	/**
+	 * Returns a suggested delay for clients before retrying a rejected request
+	 * 
+	 * @return
+	 */
+	public synchronized long getRetryAfterMillis() {
+		return this.minRttNanos == Long.MAX_VALUE ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(this.minRttNanos));
+	}
+
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	// ---
+
+	private synchronized void update(long rttNanos) {
+		if (rttNanos <= 0) {
+			return;
+		}
+
+		if (++this.samples >= MIN_RTT_RESET_SAMPLES) {
+			// Let the minimum latency follow changes of handling cost
+			this.samples = 0;
+			this.minRttNanos = rttNanos;
+		} else if (rttNanos < this.minRttNanos) {
+			this.minRttNanos = rttNanos;
+		}
+
+		double limit = this.limit;
+		double queueSize = limit * (1 - (double) this.minRttNanos / rttNanos);
+		double log = Math.max(1, Math.log10(limit));
+		if (queueSize <= 3 * log) {
+			limit += log;
+		} else if (queueSize >= 6 * log) {
+			limit -= log;
+		}
+
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, limit));
+	}
+}
@@ -0,0 +1,190 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Agent runtime holds the resources which agents need to run: event loop groups, a timer, a buffer allocator, handler dispatch executors and an executor for TLS handshake tasks.<br />
+ * A runtime can be shared by many agents in the same JVM by setting it to each agent before startup. It is reference counted: the creator holds the first reference, each running agent holds one more, and resources are released when the
+ * last reference is released.<br />
+ * If no runtime is set, an agent creates a private runtime from its own configuration.
+ */
+public class AgentRuntime {
+
+	private final Transport transport;
+
+	private final int bossThreads;
+
+	private final int workerThreads;
+
+	private final ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+	private final InboundDispatcher inboundDispatcher = new InboundDispatcher();
+
+	private EventLoopGroup bossGroup;
+
+	private EventLoopGroup workerGroup;
+
+	private Timer timer;
+
+	private ExecutorService tlsExecutor;
+
+	private int refCount = 1;
+
+	// ---
+
+	/**
+	 * Creates a runtime with the best available transport, a single boss thread, default number of worker threads of Netty and inline handler dispatch
+	 */
+	public AgentRuntime() {
+		this(Constants.DEFAULT_TRANSPORT, Constants.DEFAULT_BOSS_THREADS, Constants.DEFAULT_WORKER_THREADS, Constants.DEFAULT_DISPATCHER_THREADS);
+	}
+
+	/**
+	 * Creates a runtime
+	 * 
+	 * @param transport
+	 *          Socket transport, native transports fall back to NIO if they are not available
+	 * @param bossThreads
+	 *          Number of threads accepting connections of server agents
+	 * @param workerThreads
+	 *          Number of I/O threads, zero means the default of Netty
+	 * @param dispatcherThreads
+	 *          Number of threads executing message handlers, zero means handlers are executed on I/O threads
+	 */
+	public AgentRuntime(Transport transport, int bossThreads, int workerThreads, int dispatcherThreads) {
+		this.transport = transport.resolve();
+		this.bossThreads = bossThreads;
+		this.workerThreads = workerThreads;
+		this.inboundDispatcher.startup(dispatcherThreads);
+	}
+
+	// ---
+
+	/**
+	 * Returns the transport which is actually used by this runtime
+	 * 
+	 * @return
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Returns event loop group accepting connections. It is created on first use, so runtimes of client agents only do not start boss threads.
+	 * 
+	 * @return
+	 */
+	public synchronized EventLoopGroup getBossGroup() {
+		checkNotReleased();
+		if (this.bossGroup == null) {
+			this.bossGroup = this.transport.newEventLoopGroup(this.bossThreads);
+		}
+		return bossGroup;
+	}
+
+	public synchronized EventLoopGroup getWorkerGroup() {
+		checkNotReleased();
+		if (this.workerGroup == null) {
+			this.workerGroup = this.transport.newEventLoopGroup(this.workerThreads);
+		}
+		return workerGroup;
+	}
+
+	/**
+	 * Returns a timer for scheduling coarse-grained timeouts without occupying event loops
+	 * 
+	 * @return
+	 */
+	public synchronized Timer getTimer() {
+		checkNotReleased();
+		if (this.timer == null) {
+			this.timer = new HashedWheelTimer(new DefaultThreadFactory("netty-agents-timer", true));
+		}
+		return timer;
+	}
+
+	/**
+	 * Returns an executor for expensive TLS handshake tasks, eg. key exchange and certificate validation, so they don't block event loops. It is created on first use with one thread per processor.
+	 * 
+	 * @return
+	 */
+	public synchronized ExecutorService getTlsExecutor() {
+		checkNotReleased();
+		if (this.tlsExecutor == null) {
+			this.tlsExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DefaultThreadFactory("netty-agents-tls", true));
+		}
+		return tlsExecutor;
+	}
+
+	public ByteBufAllocator getAllocator() {
+		return allocator;
+	}
+
+	public InboundDispatcher getInboundDispatcher() {
+		return inboundDispatcher;
+	}
+
+	/**
+	 * Acquires one more reference to this runtime
+	 * 
+	 * @return this runtime
+	 * @throws IllegalStateException
+	 *           if the runtime was already released
+	 */
+	public synchronized AgentRuntime retain() {
+		checkNotReleased();
+		this.refCount++;
+		return this;
+	}
+
+	/**
+	 * Releases one reference to this runtime and releases all its resources if it was the last reference
+	 * 
+	 * @return true if the resources were released
+	 */
+	public synchronized boolean release() {
+		checkNotReleased();
+		if (--this.refCount > 0) {
+			return false;
+		}
+
+		if (this.bossGroup != null) {
+			this.bossGroup.shutdownGracefully();
+		}
+		if (this.workerGroup != null) {
+			this.workerGroup.shutdownGracefully();
+		}
+		if (this.timer != null) {
+			this.timer.stop();
+		}
+		if (this.tlsExecutor != null) {
+			this.tlsExecutor.shutdown();
+		}
+		this.inboundDispatcher.shutdown();
+		return true;
+	}
+
+	public synchronized int refCount() {
+		return refCount;
+	}
+
+	// ---
+
+	private void checkNotReleased() {
+		if (this.refCount <= 0) {
+			throw new IllegalStateException("Agent runtime was already released");
+		}
+	}
+}
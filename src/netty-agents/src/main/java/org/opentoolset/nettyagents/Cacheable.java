@@ -0,0 +1,30 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a request type as a pure lookup whose response only depends on the request content.<br />
+ * Responses of such requests are kept in the response cache of the receiving agent and served without calling the request handler until they expire or are invalidated.
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+
+	/**
+	 * Time to live of cached responses in seconds
+	 * 
+	 * @return
+	 */
+	int ttlSec() default Constants.DEFAULT_RESPONSE_CACHE_TTL_SEC;
+}
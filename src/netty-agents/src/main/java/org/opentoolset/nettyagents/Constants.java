@@ -7,6 +7,8 @@ package org.opentoolset.nettyagents;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
+import io.netty.handler.ssl.SslProvider;
+
 public interface Constants {
 
 	Charset CRYPTO_CHARSET = StandardCharsets.US_ASCII;
@@ -17,4 +19,51 @@ public interface Constants {
 	int DEFAULT_SERVER_PORT = 4444;
 	boolean DEFAULT_TLS_ENABLED = false;
 	int DEFAULT_TLS_HANDSHAKE_TIMEOUT_SEC = 60;
+	int DEFAULT_RESPONSE_CACHE_TTL_SEC = 60;
+	long DEFAULT_RESPONSE_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+	int DEFAULT_DISPATCHER_THREADS = 0;
+	int DEFAULT_ACK_BATCH_SIZE = 64;
+	int DEFAULT_ACK_DELAY_MS = 20;
+	int DEFAULT_JOURNAL_SEGMENT_SIZE = 16 * 1024 * 1024;
+	int DEFAULT_JOURNAL_BATCH_SIZE = 256;
+	int DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32 * 1024;
+	int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+	int DEFAULT_OUTBOUND_QUEUE_CAPACITY = 10000;
+	OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+	boolean DEFAULT_FLOW_CONTROL_ENABLED = false;
+	int DEFAULT_FLOW_CONTROL_INITIAL_WINDOW = 256;
+	int DEFAULT_FLOW_CONTROL_MIN_WINDOW = 16;
+	int DEFAULT_FLOW_CONTROL_MAX_WINDOW = 64 * 1024;
+	boolean DEFAULT_ADMISSION_CONTROL_ENABLED = false;
+	int DEFAULT_ADMISSION_INITIAL_LIMIT = 20;
+	int DEFAULT_ADMISSION_MIN_LIMIT = 1;
+	int DEFAULT_ADMISSION_MAX_LIMIT = 1000;
+	Transport DEFAULT_TRANSPORT = Transport.AUTO;
+	boolean DEFAULT_TCP_NO_DELAY = true;
+	boolean DEFAULT_TCP_QUICK_ACK = false;
+	int DEFAULT_BUSY_POLL_MICROS = 0;
+	int DEFAULT_TCP_FAST_OPEN_QUEUE_LENGTH = 0;
+	int DEFAULT_BOSS_THREADS = 1;
+	int DEFAULT_WORKER_THREADS = 0;
+	int DEFAULT_SO_BACKLOG = 1024;
+	int DEFAULT_ACCEPTORS = 1;
+	int DEFAULT_REBIND_DELAY_MS = 1000;
+	int DEFAULT_CLUSTER_PORT = 4445;
+	int DEFAULT_VIRTUAL_NODES = 160;
+	int DEFAULT_HEARTBEAT_INTERVAL_SEC = 0;
+	int DEFAULT_HEARTBEAT_MAX_MISSED = 3;
+	int DEFAULT_CONNECTIONS = 1;
+	LoadBalancing DEFAULT_LOAD_BALANCING = LoadBalancing.LEAST_PENDING;
+	int DEFAULT_CONNECT_TIMEOUT_MS = 3000;
+	int DEFAULT_ENDPOINT_PROBE_INTERVAL_SEC = 10;
+	int DEFAULT_RECONNECT_BASE_DELAY_MS = 100;
+	int DEFAULT_RECONNECT_MAX_DELAY_MS = 30000;
+	boolean DEFAULT_SESSION_RESUMPTION_ENABLED = false;
+	int DEFAULT_SESSION_TIMEOUT_SEC = 60;
+	int DEFAULT_SESSION_MAX_RECEIVED = 10000;
+	int DEFAULT_TLS_SESSION_CACHE_SIZE = 10000;
+	int DEFAULT_TLS_SESSION_TIMEOUT_SEC = 3600;
+	boolean DEFAULT_TLS_SESSION_TICKETS_ENABLED = true;
+	SslProvider DEFAULT_TLS_PROVIDER = SslProvider.JDK;
+	boolean DEFAULT_TLS_HANDSHAKE_OFFLOAD_ENABLED = true;
 }
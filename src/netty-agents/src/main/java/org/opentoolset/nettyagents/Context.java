@@ -5,7 +5,6 @@
 package org.opentoolset.nettyagents;
 
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.opentoolset.nettyagents.MessageWrapper.Serializer;
@@ -26,9 +25,15 @@ public class Context {
 
 	private MessageSender messageSender = new MessageSender(this);
 
-	private MessageReceiver messageReceiver = new MessageReceiver();
+	private MessageReceiver messageReceiver = new MessageReceiver(this);
 
-	private Map<String, X509Certificate> trustedCerts = new HashMap<>();
+	private ResponseCache responseCache = new ResponseCache();
+
+	private volatile InboundDispatcher inboundDispatcher = new InboundDispatcher();
+
+	private volatile AdmissionController admissionController;
+
+	private final TrustedCerts trustedCerts = new TrustedCerts();
 
 	// ---
 
@@ -58,6 +63,28 @@ public class Context {
 		return messageReceiver;
 	}
 
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	public InboundDispatcher getInboundDispatcher() {
+		return inboundDispatcher;
+	}
+
+	/**
+	 * Returns admission controller of request handlers
+	 * 
+	 * @return admission controller, or null if admission control is disabled
+	 */
+	public AdmissionController getAdmissionController() {
+		return admissionController;
+	}
+
+	/**
+	 * Returns trusted certificates keyed by fingerprint. Changing them invalidates the TLS sessions of the agent, so that peers can't resume sessions established under the previous trust.
+	 * 
+	 * @return
+	 */
 	public Map<String, X509Certificate> getTrustedCerts() {
 		return trustedCerts;
 	}
@@ -68,6 +95,18 @@ public class Context {
 	// this.tlsEnabled = tlsEnabled;
 	// }
 
+	void setInboundDispatcher(InboundDispatcher inboundDispatcher) {
+		this.inboundDispatcher = inboundDispatcher;
+	}
+
+	void setTrustChangeListener(Runnable trustChangeListener) {
+		this.trustedCerts.setChangeListener(trustChangeListener);
+	}
+
+	public void setAdmissionController(AdmissionController admissionController) {
+		this.admissionController = admissionController;
+	}
+
 	public void setTrustNegotiationMode(boolean peerIdentificationMode) {
 		this.trustNegotiationMode = peerIdentificationMode;
 	}
@@ -0,0 +1,21 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines when the future of a delivery-tracked message send is completed.
+ */
+public enum DeliveryMode {
+
+	/**
+	 * Completed when the message was written to the socket
+	 */
+	WRITTEN,
+
+	/**
+	 * Completed when the receiving agent acknowledged the message. Receivers acknowledge cumulatively and in batches, so the overhead is much smaller than a request-response round-trip per message.
+	 */
+	ACKNOWLEDGED;
+}
@@ -0,0 +1,34 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * Holds a message frame which was already encoded, so that the same frame can be written to many channels (see {@link MessageSender#multicast}).
+ */
+final class EncodedMessage extends DefaultByteBufHolder {
+
+	private final Priority priority;
+
+	private final boolean flowControlled;
+
+	// ---
+
+	EncodedMessage(ByteBuf frame, Priority priority, boolean flowControlled) {
+		super(frame);
+		this.priority = priority;
+		this.flowControlled = flowControlled;
+	}
+
+	Priority getPriority() {
+		return priority;
+	}
+
+	boolean isFlowControlled() {
+		return flowControlled;
+	}
+}
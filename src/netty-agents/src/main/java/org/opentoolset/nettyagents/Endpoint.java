@@ -0,0 +1,133 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines a candidate server endpoint of a client agent together with statistics used to select the best endpoint:
+ * <ul>
+ * <li>Smoothed round trip time measured by connection attempts, probes and heartbeats of the connections made to it,</li>
+ * <li>Smoothed error rate of connection attempts and connections,</li>
+ * <li>Whether the endpoint has failed and not recovered yet, ie. no probe has succeeded since the last failure.</li>
+ * </ul>
+ */
+public class Endpoint {
+
+	private static final double ERROR_RATE_WEIGHT = 0.2;
+
+	private static final double ERROR_RATE_PENALTY = 4;
+
+	private final String host;
+
+	private final int port;
+
+	private volatile long roundTripNanos = -1;
+
+	private volatile long measuredAt;
+
+	private volatile double errorRate = 0;
+
+	private volatile boolean failed = false;
+
+	// ---
+
+	public Endpoint(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	// ---
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns smoothed round trip time to this endpoint
+	 * 
+	 * @return round trip time in nanoseconds, or -1 if not measured yet
+	 */
+	public long getRoundTripNanos() {
+		return roundTripNanos;
+	}
+
+	/**
+	 * Returns smoothed ratio of failed attempts to this endpoint, between 0 and 1
+	 * 
+	 * @return
+	 */
+	public double getErrorRate() {
+		return errorRate;
+	}
+
+	/**
+	 * Returns an indicator of whether this endpoint failed and has not recovered yet
+	 * 
+	 * @return
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns an indicator of whether the round trip time of this endpoint was not measured during the given time, eg. because no connection with heartbeats is made to it
+	 * 
+	 * @param maxAgeNanos
+	 * @return
+	 */
+	public boolean isStale(long maxAgeNanos) {
+		return this.roundTripNanos < 0 || System.nanoTime() - this.measuredAt > maxAgeNanos;
+	}
+
+	/**
+	 * Returns the score of this endpoint, lower is better. Round trip time is penalized by error rate, and endpoints not measured yet score worst.
+	 * 
+	 * @return
+	 */
+	public double getScore() {
+		long roundTripNanos = this.roundTripNanos;
+		return roundTripNanos < 0 ? Double.MAX_VALUE : roundTripNanos * (1 + ERROR_RATE_PENALTY * this.errorRate);
+	}
+
+	// ---
+
+	/**
+	 * Records a successful attempt, eg. a connection or a probe, which took the given round trip time
+	 * 
+	 * @param nanos
+	 */
+	public synchronized void onSuccess(long nanos) {
+		onRoundTrip(nanos);
+		this.errorRate = this.errorRate * (1 - ERROR_RATE_WEIGHT);
+		this.failed = false;
+	}
+
+	/**
+	 * Records a failed attempt or a lost connection
+	 */
+	public synchronized void onFailure() {
+		this.errorRate = this.errorRate * (1 - ERROR_RATE_WEIGHT) + ERROR_RATE_WEIGHT;
+		this.failed = true;
+	}
+
+	/**
+	 * Records a round trip time, eg. measured by a heartbeat
+	 * 
+	 * @param nanos
+	 */
+	public synchronized void onRoundTrip(long nanos) {
+		long roundTripNanos = this.roundTripNanos;
+		this.roundTripNanos = roundTripNanos < 0 ? nanos : roundTripNanos + (nanos - roundTripNanos) / 8;
+		this.measuredAt = System.nanoTime();
+	}
+
+	@Override
+	public String toString() {
+		return this.host + ":" + this.port;
+	}
+}
@@ -0,0 +1,148 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
+
+/**
+ * Credit-based flow control window of a connection, similar to the one of HTTP/2.<br />
+ * Each message or request sent with normal or low priority consumes a credit of the sender; the sender stops when it runs out of credits. The receiver grants credits back as its handlers consume messages, or as messages are dropped before reaching them (eg. by rate limits), so the sender is limited by the consumption speed of the receiver rather than the socket. The window is resized by the receiver according to the measured consumption rate and round-trip time of credit grants. High priority messages are not subject to flow control.<br />
+ * Both peers must enable flow control.
+ */
+public class FlowControl {
+
+	public static final AttributeKey<FlowControl> KEY = AttributeKey.valueOf(FlowControl.class.getName());
+
+	private static final double EWMA_WEIGHT = 0.2;
+
+	private final int minWindow;
+	private final int maxWindow;
+
+	// --- Sender side, accessed on event loop only:
+
+	private int sendCredits;
+
+	// --- Receiver side:
+
+	private final AtomicInteger consumedCount = new AtomicInteger();
+	private final AtomicBoolean grantScheduled = new AtomicBoolean();
+	private volatile int window;
+
+	private long grantSeq = 0;
+	private long lastGrantSeq = 0;
+	private long lastGrantNanos = System.nanoTime();
+	private double consumptionRate = 0;
+	private double rttNanos = 0;
+
+	// ---
+
+	public FlowControl(int initialWindow, int minWindow, int maxWindow) {
+		this.sendCredits = initialWindow;
+		this.window = initialWindow;
+		this.minWindow = minWindow;
+		this.maxWindow = maxWindow;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Returns number of remaining credits of the sender
+	 * 
+	 * @return
+	 */
+	public int getSendCredits() {
+		return sendCredits;
+	}
+
+	// ---
+
+	static boolean isSubjectToFlowControl(MessageWrapper messageWrapper) {
+		return messageWrapper.getClassOfMessage() != null && messageWrapper.getCorrelationId() == null && messageWrapper.getPriorityOrDefault() != Priority.HIGH;
+	}
+
+	/**
+	 * Called when a message read from the channel was consumed by a handler or dropped, so that its credit is granted back to the sender if it is subject to flow control. May be called on any thread.
+	 * 
+	 * @param ctx
+	 * @param messageWrapper
+	 */
+	static void onConsumed(ChannelHandlerContext ctx, MessageWrapper messageWrapper) {
+		FlowControl flowControl = ctx.channel().attr(KEY).get();
+		if (flowControl != null && isSubjectToFlowControl(messageWrapper)) {
+			flowControl.onConsumed(ctx);
+		}
+	}
+
+	boolean tryConsumeSendCredit() {
+		if (this.sendCredits <= 0) {
+			return false;
+		}
+
+		this.sendCredits--;
+		return true;
+	}
+
+	void onCreditGranted(int credit) {
+		this.sendCredits += credit;
+	}
+
+	/**
+	 * Called when a handler consumed a message from this connection. May be called on any thread.
+	 * 
+	 * @param ctx
+	 */
+	void onConsumed(ChannelHandlerContext ctx) {
+		if (this.consumedCount.incrementAndGet() >= Math.max(1, this.window / 2) && this.grantScheduled.compareAndSet(false, true)) {
+			ctx.executor().execute(() -> grant(ctx));
+		}
+	}
+
+	void onCreditEcho(long seq) {
+		if (seq == this.lastGrantSeq) {
+			double sample = System.nanoTime() - this.lastGrantNanos;
+			this.rttNanos = this.rttNanos == 0 ? sample : this.rttNanos + EWMA_WEIGHT * (sample - this.rttNanos);
+		}
+	}
+
+	// ---
+
+	private void grant(ChannelHandlerContext ctx) {
+		this.grantScheduled.set(false);
+
+		int consumed = this.consumedCount.getAndSet(0);
+		if (consumed <= 0 || !ctx.channel().isActive()) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		double rate = consumed * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - this.lastGrantNanos);
+		this.consumptionRate = this.consumptionRate == 0 ? rate : this.consumptionRate + EWMA_WEIGHT * (rate - this.consumptionRate);
+
+		int newWindow = this.window;
+		if (this.rttNanos > 0) {
+			double bandwidthDelayProduct = this.consumptionRate * this.rttNanos / TimeUnit.SECONDS.toNanos(1);
+			newWindow = (int) Math.min(this.maxWindow, Math.max(this.minWindow, Math.ceil(2 * bandwidthDelayProduct)));
+		}
+
+		int credit = consumed + (newWindow - this.window);
+		this.window = newWindow;
+		if (credit <= 0) {
+			// Window shrank more than consumed messages, the rest is deducted from next grants
+			this.consumedCount.addAndGet(credit);
+			return;
+		}
+
+		this.lastGrantSeq = ++this.grantSeq;
+		this.lastGrantNanos = now;
+		ctx.writeAndFlush(MessageWrapper.createCredit(credit, this.lastGrantSeq));
+	}
+}
@@ -0,0 +1,72 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a request sent to many peers (see {@link MessageSender#doRequestAll}). It contains the responses received and errors occured until the result was completed, and the peers which hadn't answered by then.
+ * 
+ * @param <TResp>
+ */
+public class GatherResult<TResp extends AbstractMessage> {
+
+	private final Map<PeerContext, TResp> responses;
+
+	private final Map<PeerContext, Throwable> errors;
+
+	private final Set<PeerContext> pending;
+
+	private final int required;
+
+	// ---
+
+	GatherResult(Map<PeerContext, TResp> responses, Map<PeerContext, Throwable> errors, Set<PeerContext> pending, int required) {
+		this.responses = Collections.unmodifiableMap(new LinkedHashMap<>(responses));
+		this.errors = Collections.unmodifiableMap(new LinkedHashMap<>(errors));
+		this.pending = Collections.unmodifiableSet(new LinkedHashSet<>(pending));
+		this.required = required;
+	}
+
+	/**
+	 * Returns responses by peers, in order of their arrival
+	 * 
+	 * @return
+	 */
+	public Map<PeerContext, TResp> getResponses() {
+		return responses;
+	}
+
+	/**
+	 * Returns errors by peers, such as {@link java.util.concurrent.TimeoutException}, {@link OverloadedException} or connection failures
+	 * 
+	 * @return
+	 */
+	public Map<PeerContext, Throwable> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the peers which had not answered when the result was completed because enough responses were received
+	 * 
+	 * @return
+	 */
+	public Set<PeerContext> getPending() {
+		return pending;
+	}
+
+	/**
+	 * Returns whether the required number of responses were received
+	 * 
+	 * @return
+	 */
+	public boolean isSatisfied() {
+		return this.responses.size() >= this.required;
+	}
+}
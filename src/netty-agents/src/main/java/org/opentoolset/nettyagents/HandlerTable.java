@@ -0,0 +1,105 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Immutable dispatch table of handlers keyed by message type.<br />
+ * A handler is resolved by walking the type hierarchy of a message (the class itself, its superclasses and then its interfaces) only once per type; the result is cached in a {@link ClassValue}. Registrations create a new table, so lookups never block.
+ * 
+ * @param <H>
+ *          Type of handlers
+ */
+final class HandlerTable<H> {
+
+	private static final HandlerTable<?> EMPTY = new HandlerTable<>(Collections.emptyMap());
+
+	private final Map<Class<?>, H> handlers;
+
+	private final ClassValue<Optional<H>> resolvedHandlers = new ClassValue<Optional<H>>() {
+
+		@Override
+		protected Optional<H> computeValue(Class<?> type) {
+			return Optional.ofNullable(resolve(type));
+		}
+	};
+
+	// ---
+
+	private HandlerTable(Map<Class<?>, H> handlers) {
+		this.handlers = handlers;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <H> HandlerTable<H> empty() {
+		return (HandlerTable<H>) EMPTY;
+	}
+
+	// ---
+
+	/**
+	 * Returns the handler registered for the given type or its nearest supertype
+	 * 
+	 * @param type
+	 * @return handler, or null if there is no suitable handler
+	 */
+	H get(Class<?> type) {
+		return this.resolvedHandlers.get(type).orElse(null);
+	}
+
+	HandlerTable<H> with(Class<?> type, H handler) {
+		Map<Class<?>, H> handlers = new HashMap<>(this.handlers);
+		handlers.put(type, handler);
+		return new HandlerTable<>(Collections.unmodifiableMap(handlers));
+	}
+
+	HandlerTable<H> without(Class<?> type) {
+		if (!this.handlers.containsKey(type)) {
+			return this;
+		}
+
+		Map<Class<?>, H> handlers = new HashMap<>(this.handlers);
+		handlers.remove(type);
+		return new HandlerTable<>(Collections.unmodifiableMap(handlers));
+	}
+
+	// ---
+
+	private H resolve(Class<?> type) {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			H handler = this.handlers.get(current);
+			if (handler != null) {
+				return handler;
+			}
+		}
+
+		Set<Class<?>> visited = new HashSet<>();
+		Queue<Class<?>> queue = new ArrayDeque<>();
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			Collections.addAll(queue, current.getInterfaces());
+		}
+
+		Class<?> current;
+		while ((current = queue.poll()) != null) {
+			if (visited.add(current)) {
+				H handler = this.handlers.get(current);
+				if (handler != null) {
+					return handler;
+				}
+				Collections.addAll(queue, current.getInterfaces());
+			}
+		}
+
+		return null;
+	}
+}
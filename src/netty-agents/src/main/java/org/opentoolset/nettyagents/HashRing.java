@@ -0,0 +1,131 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hash ring with virtual nodes.<br />
+ * Each node is placed on the ring at a number of points, and a key belongs to the first node at or after the hash of the key. When a node is added or removed, only the keys between its points and their predecessors move, ie.
+ * about 1/N of all keys. Changes create a new ring, so lookups never block.
+ * 
+ * @param <T>
+ *          Type of nodes
+ */
+public final class HashRing<T> {
+
+	private final int virtualNodes;
+
+	private final Map<String, T> nodes;
+
+	private final NavigableMap<Long, String> ring;
+
+	// ---
+
+	/**
+	 * Creates an empty ring
+	 * 
+	 * @param virtualNodes
+	 *          Number of points of each node on the ring; more points spread keys more evenly
+	 */
+	public HashRing(int virtualNodes) {
+		this(virtualNodes, Collections.emptyMap());
+	}
+
+	private HashRing(int virtualNodes, Map<String, T> nodes) {
+		this.virtualNodes = virtualNodes;
+		this.nodes = Collections.unmodifiableMap(nodes);
+		this.ring = new TreeMap<>();
+		for (String id : nodes.keySet()) {
+			for (int i = 0; i < virtualNodes; i++) {
+				this.ring.put(hash(id + "#" + i), id);
+			}
+		}
+	}
+
+	// ---
+
+	/**
+	 * Returns the node owning the key
+	 * 
+	 * @param key
+	 * @return node, or null if the ring is empty
+	 */
+	public T get(String key) {
+		String id = getId(key);
+		return id != null ? this.nodes.get(id) : null;
+	}
+
+	/**
+	 * Returns ID of the node owning the key
+	 * 
+	 * @param key
+	 * @return node ID, or null if the ring is empty
+	 */
+	public String getId(String key) {
+		if (this.ring.isEmpty()) {
+			return null;
+		}
+
+		Map.Entry<Long, String> entry = this.ring.ceilingEntry(hash(key));
+		return entry != null ? entry.getValue() : this.ring.firstEntry().getValue();
+	}
+
+	public Map<String, T> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns a new ring including the given node
+	 * 
+	 * @param id
+	 * @param node
+	 * @return
+	 */
+	public HashRing<T> with(String id, T node) {
+		Map<String, T> nodes = new LinkedHashMap<>(this.nodes);
+		nodes.put(id, node);
+		return new HashRing<>(this.virtualNodes, nodes);
+	}
+
+	/**
+	 * Returns a new ring excluding the given node
+	 * 
+	 * @param id
+	 * @return
+	 */
+	public HashRing<T> without(String id) {
+		Map<String, T> nodes = new LinkedHashMap<>(this.nodes);
+		nodes.remove(id);
+		return new HashRing<>(this.virtualNodes, nodes);
+	}
+
+	// ---
+
+	/**
+	 * 64-bit FNV-1a hash of the UTF-8 bytes of the key, followed by the finalizer of MurmurHash3 to spread similar keys over the ring
+	 * 
+	 * @param key
+	 * @return
+	 */
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(Constants.DEFAULT_CHARSET)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
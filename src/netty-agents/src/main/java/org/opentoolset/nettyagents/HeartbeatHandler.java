@@ -0,0 +1,90 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+/**
+ * Checks health of a connection with heartbeats:
+ * <ul>
+ * <li>Sends a ping whenever nothing was received from the peer during the heartbeat interval, and closes the connection after {@link Constants#DEFAULT_HEARTBEAT_MAX_MISSED} intervals without receiving anything,</li>
+ * <li>Answers pings of the peer with pongs regardless of its own interval, so a handler with zero interval only answers.</li>
+ * </ul>
+ * Heartbeats are consumed by this handler and never reach message handlers. Round trip times measured by pongs are recorded to the peer context, and passed to a listener if one is given.
+ */
+public class HeartbeatHandler extends IdleStateHandler {
+
+	private Logger logger = Context.getLogger();
+
+	private final LongConsumer roundTripListener;
+
+	private int missed = 0;
+
+	// ---
+
+	public HeartbeatHandler(int intervalSec) {
+		this(intervalSec, null);
+	}
+
+	/**
+	 * @param intervalSec
+	 * @param roundTripListener
+	 *          Called with each round trip time in nanoseconds, or null
+	 */
+	public HeartbeatHandler(int intervalSec, LongConsumer roundTripListener) {
+		super(intervalSec, 0, 0, TimeUnit.SECONDS);
+		this.roundTripListener = roundTripListener;
+	}
+
+	// ---
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		this.missed = 0;
+		if (msg instanceof MessageWrapper) {
+			MessageWrapper messageWrapper = (MessageWrapper) msg;
+
+			Long ping = messageWrapper.getPing();
+			if (ping != null) {
+				ctx.writeAndFlush(MessageWrapper.createPong(ping));
+				return;
+			}
+
+			Long pong = messageWrapper.getPong();
+			if (pong != null) {
+				long roundTripNanos = System.nanoTime() - pong;
+				PeerContext peerContext = PeerContext.of(ctx.channel());
+				if (peerContext != null) {
+					peerContext.onRoundTrip(roundTripNanos);
+				}
+				if (this.roundTripListener != null) {
+					this.roundTripListener.accept(roundTripNanos);
+				}
+				return;
+			}
+		}
+
+		super.channelRead(ctx, msg);
+	}
+
+	@Override
+	protected void channelIdle(ChannelHandlerContext ctx, IdleStateEvent evt) throws Exception {
+		if (++this.missed > Constants.DEFAULT_HEARTBEAT_MAX_MISSED) {
+			logger.debug("No heartbeat from {}, closing connection", ctx.channel().remoteAddress());
+			ctx.close();
+		} else {
+			ctx.writeAndFlush(MessageWrapper.createPing(System.nanoTime()));
+		}
+
+		super.channelIdle(ctx, evt);
+	}
+}
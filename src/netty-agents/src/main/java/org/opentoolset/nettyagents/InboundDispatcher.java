@@ -0,0 +1,205 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Dispatches inbound messages and requests to their handlers.<br />
+ * By default handlers are executed inline on the event loop of the channel. If a number of dispatcher threads is configured, handlers are offloaded to the same number of lanes each served by a single thread:
+ * <ul>
+ * <li>Messages with a routing key (see {@link Routable}) are always dispatched to the same lane and handled in order of their arrival regardless of their priority,</li>
+ * <li>Other messages are dispatched to the least loaded lane,</li>
+ * <li>Each lane takes its waiting tasks in order of their priority; a message with a routing key only waits there after earlier messages with the same key are handled.</li>
+ * </ul>
+ */
+public class InboundDispatcher {
+
+	private static Logger logger = Context.getLogger();
+
+	private static final AtomicInteger poolCounter = new AtomicInteger();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private volatile ThreadPoolExecutor[] lanes;
+
+	private final ConcurrentHashMap<String, Queue<PrioritizedTask>> keyedTasks = new ConcurrentHashMap<>();
+
+	// ---
+
+	/**
+	 * Starts offloading handlers to the given number of lanes. If number of lanes is zero, handlers are executed inline.
+	 * 
+	 * @param threads
+	 */
+	public synchronized void startup(int threads) {
+		if (this.lanes != null || threads <= 0) {
+			return;
+		}
+
+		int poolId = poolCounter.incrementAndGet();
+		ThreadPoolExecutor[] lanes = new ThreadPoolExecutor[threads];
+		for (int i = 0; i < lanes.length; i++) {
+			String threadName = String.format("netty-agents-dispatcher-%d-%d", poolId, i + 1);
+			lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, threadName);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		this.lanes = lanes;
+	}
+
+	public synchronized void shutdown() {
+		if (this.lanes != null) {
+			for (ThreadPoolExecutor lane : this.lanes) {
+				lane.shutdown();
+			}
+			this.lanes = null;
+			this.keyedTasks.clear();
+		}
+	}
+
+	/**
+	 * Executes the given handler task inline or on a dispatcher lane in order of its priority
+	 * 
+	 * @param priority
+	 * @param task
+	 */
+	public void dispatch(Priority priority, Runnable task) {
+		dispatch(priority, null, task);
+	}
+
+	/**
+	 * Executes the given handler task inline or on the dispatcher lane which the routing key is mapped to
+	 * 
+	 * @param priority
+	 * @param routingKey
+	 *          Routing key of the message, or null if the message may be handled on any lane
+	 * @param task
+	 */
+	public void dispatch(Priority priority, String routingKey, Runnable task) {
+		ThreadPoolExecutor[] lanes = this.lanes;
+		if (lanes == null) {
+			runSafe(task);
+			return;
+		}
+
+		PrioritizedTask prioritizedTask = new PrioritizedTask(priority, this.sequence.incrementAndGet(), task);
+		if (routingKey == null) {
+			leastLoaded(lanes).execute(prioritizedTask);
+			return;
+		}
+
+		// Only the first waiting task of a key is queued on its lane, so a later task with a higher priority can't overtake it
+		boolean[] first = new boolean[1];
+		this.keyedTasks.compute(routingKey, (key, tasks) -> {
+			if (tasks == null) {
+				tasks = new ArrayDeque<>();
+				first[0] = true;
+			}
+			tasks.add(prioritizedTask);
+			return tasks;
+		});
+
+		if (first[0]) {
+			executeKeyed(lanes[laneIndex(routingKey, lanes.length)], routingKey, prioritizedTask);
+		}
+	}
+
+	// ---
+
+	private void executeKeyed(ThreadPoolExecutor lane, String routingKey, PrioritizedTask prioritizedTask) {
+		lane.execute(new PrioritizedTask(prioritizedTask.priority, prioritizedTask.sequence, () -> {
+			try {
+				prioritizedTask.run();
+			} finally {
+				executeNextKeyed(lane, routingKey);
+			}
+		}));
+	}
+
+	private void executeNextKeyed(ThreadPoolExecutor lane, String routingKey) {
+		PrioritizedTask[] next = new PrioritizedTask[1];
+		this.keyedTasks.computeIfPresent(routingKey, (key, tasks) -> {
+			tasks.poll();
+			next[0] = tasks.peek();
+			return next[0] != null ? tasks : null;
+		});
+
+		if (next[0] != null) {
+			try {
+				executeKeyed(lane, routingKey, next[0]);
+			} catch (RejectedExecutionException e) {
+				logger.warn("Messages with routing key were discarded because dispatcher was shut down: {}", routingKey);
+				this.keyedTasks.remove(routingKey);
+			}
+		}
+	}
+
+	private static int laneIndex(String routingKey, int laneCount) {
+		int hash = routingKey.hashCode();
+		hash ^= (hash >>> 16);
+		return Math.floorMod(hash, laneCount);
+	}
+
+	private static ThreadPoolExecutor leastLoaded(ThreadPoolExecutor[] lanes) {
+		ThreadPoolExecutor result = lanes[0];
+		int minSize = Integer.MAX_VALUE;
+		for (ThreadPoolExecutor lane : lanes) {
+			int size = lane.getQueue().size();
+			if (size < minSize) {
+				minSize = size;
+				result = lane;
+			}
+		}
+		return result;
+	}
+
+	private static void runSafe(Runnable task) {
+		try {
+			task.run();
+		} catch (Exception e) {
+			logger.error(e.getLocalizedMessage(), e);
+		}
+	}
+
+	// ---
+
+	private static final class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+		private final Priority priority;
+		private final long sequence;
+		private final Runnable task;
+
+		private PrioritizedTask(Priority priority, long sequence, Runnable task) {
+			this.priority = priority;
+			this.sequence = sequence;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			runSafe(this.task);
+		}
+
+		@Override
+		public int compareTo(PrioritizedTask other) {
+			int result = Integer.compare(this.priority.ordinal(), other.priority.ordinal());
+			return result != 0 ? result : Long.compare(this.sequence, other.sequence);
+		}
+	}
+}
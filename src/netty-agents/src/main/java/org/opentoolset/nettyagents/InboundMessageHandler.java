@@ -4,6 +4,8 @@
 // ---
 package org.opentoolset.nettyagents;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.opentoolset.nettyagents.AbstractAgent.AbstractConfig;
 import org.opentoolset.nettyagents.MessageSender.OperationContext;
 import org.slf4j.Logger;
@@ -40,6 +42,9 @@ public class InboundMessageHandler extends ChannelInboundHandlerAdapter {
 	@Override
 	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
 		if (this.provider.getConfig().isTlsEnabled() && !this.provider.verifyChannelHandlerContext(ctx)) {
+			if (msg instanceof MessageWrapper) {
+				FlowControl.onConsumed(ctx, (MessageWrapper) msg);
+			}
 			return;
 		}
 
@@ -50,24 +55,80 @@ public class InboundMessageHandler extends ChannelInboundHandlerAdapter {
 			if (correlationId != null) {
 				OperationContext operationContext = this.provider.getContext().getMessageSender().getWaitingRequests().get(correlationId);
 				if (operationContext != null) {
-					operationContext.setResponseWrapper(messageWrapper);
-					Thread thread = operationContext.getThread();
-					synchronized (thread) {
-						if (thread.isAlive()) {
-							thread.notify();
-						}
-					}
+					operationContext.getResponseFuture().complete(messageWrapper);
 				} else {
 					logger.warn("Response was ignored because of timeout");
 				}
 			} else {
+				Context context = this.provider.getContext();
+				Priority priority = messageWrapper.getPriorityOrDefault();
+				String routingKey = messageWrapper.getRoutingKey();
 				String id = messageWrapper.getId();
+
+				Session session = ctx.channel().attr(Session.KEY).get();
+				Long sessionSeq = messageWrapper.getSessionSeq();
+				CompletableFuture<MessageWrapper> response = new CompletableFuture<>();
+				if (session != null && sessionSeq != null) {
+					CompletableFuture<MessageWrapper> earlierResponse = session.onReceived(sessionSeq, response);
+					if (earlierResponse != null) {
+						// Resent after a reconnect; the response of the earlier one is written to this channel when it is ready
+						earlierResponse.thenAccept(responseWrapper -> {
+							if (responseWrapper != null) {
+								context.getMessageSender().writeResponse(ctx, responseWrapper);
+							}
+						});
+						FlowControl.onConsumed(ctx, messageWrapper);
+						return;
+					}
+				}
+
 				if (id != null) {
-					AbstractMessage response = this.provider.getContext().getMessageReceiver().handleRequest(messageWrapper);
-					MessageWrapper responseWrapper = MessageWrapper.createResponse(response, id);
-					ctx.writeAndFlush(responseWrapper);
+					// Cache hits are served here so that they don't take admission slots or skew latency samples of admission control
+					MessageWrapper cachedResponseWrapper = context.getMessageReceiver().getCachedResponse(messageWrapper);
+					if (cachedResponseWrapper != null) {
+						context.getMessageSender().writeResponse(ctx, cachedResponseWrapper);
+						response.complete(cachedResponseWrapper);
+						FlowControl.onConsumed(ctx, messageWrapper);
+						return;
+					}
+
+					AdmissionController admissionController = context.getAdmissionController();
+					if (admissionController != null && !admissionController.tryAcquire()) {
+						if (session != null && sessionSeq != null) {
+							session.forget(sessionSeq);
+						}
+						MessageWrapper responseWrapper = MessageWrapper.createResponse(new OverloadedResponse(admissionController.getRetryAfterMillis()), id);
+						responseWrapper.setPriority(priority);
+						context.getMessageSender().writeResponse(ctx, responseWrapper);
+						FlowControl.onConsumed(ctx, messageWrapper);
+						return;
+					}
+
+					long admittedAt = System.nanoTime();
+					context.getInboundDispatcher().dispatch(priority, routingKey, () -> {
+						MessageWrapper responseWrapper = null;
+						try {
+							responseWrapper = context.getMessageReceiver().handleRequest(messageWrapper);
+							if (responseWrapper != null) {
+								context.getMessageSender().writeResponse(ctx, responseWrapper);
+							}
+						} finally {
+							response.complete(responseWrapper);
+							if (admissionController != null) {
+								admissionController.release(System.nanoTime() - admittedAt);
+							}
+							FlowControl.onConsumed(ctx, messageWrapper);
+						}
+					});
 				} else {
-					this.provider.getContext().getMessageReceiver().handleMessage(messageWrapper);
+					context.getInboundDispatcher().dispatch(priority, routingKey, () -> {
+						try {
+							context.getMessageReceiver().handleMessage(messageWrapper);
+						} finally {
+							response.complete(null);
+							FlowControl.onConsumed(ctx, messageWrapper);
+						}
+					});
 				}
 			}
 		} else {
@@ -0,0 +1,166 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.security.cert.Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.slf4j.Logger;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.ssl.SslHandler;
+
+/**
+ * Limits inbound messages and bytes per second of a peer, and of all peers together by token buckets shared between channels.<br />
+ * Limits of a peer are resolved by the fingerprint of its certificate when TLS is enabled. A peer exceeding its limits is either paused by not reading from its channel, or its messages are rejected. Rejected requests are answered with an {@link OverloadedResponse} right away, so that the requester doesn't wait until its timeout.
+ */
+public class InboundRateLimitHandler extends ChannelInboundHandlerAdapter {
+
+	private static Logger logger = Context.getLogger();
+
+	private final Function<String, RateLimit> peerRateLimitProvider;
+	private final TokenBucket globalMessageBucket;
+	private final TokenBucket globalByteBucket;
+	private final RateLimit.Action action;
+
+	private boolean resolved = false;
+	private TokenBucket messageBucket;
+	private TokenBucket byteBucket;
+
+	private long rejectedCount = 0;
+
+	// ---
+
+	/**
+	 * @param peerRateLimitProvider
+	 *          Provides limits of a peer by its certificate fingerprint, which is null for peers without certificate
+	 * @param globalMessageBucket
+	 *          Bucket shared by all channels for messages, or null if unlimited
+	 * @param globalByteBucket
+	 *          Bucket shared by all channels for bytes, or null if unlimited
+	 * @param action
+	 */
+	public InboundRateLimitHandler(Function<String, RateLimit> peerRateLimitProvider, TokenBucket globalMessageBucket, TokenBucket globalByteBucket, RateLimit.Action action) {
+		this.peerRateLimitProvider = peerRateLimitProvider;
+		this.globalMessageBucket = globalMessageBucket;
+		this.globalByteBucket = globalByteBucket;
+		this.action = action;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		// Control frames (acknowledgements, heartbeats, credits) and responses to our own requests are not limited
+		if (!(msg instanceof MessageWrapper) || ((MessageWrapper) msg).getClassOfMessage() == null || ((MessageWrapper) msg).getCorrelationId() != null) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+
+		if (!this.resolved) {
+			resolvePeerRateLimit(ctx);
+		}
+
+		int frameLength = ((MessageWrapper) msg).frameLength();
+		if (this.action == RateLimit.Action.REJECT) {
+			// All buckets are checked before taking from any of them, so that a message rejected by one bucket doesn't use up tokens of the others
+			if (nanosUntilAvailable(frameLength) == 0) {
+				consume(frameLength);
+				ctx.fireChannelRead(msg);
+			} else {
+				reject(ctx, (MessageWrapper) msg);
+			}
+			return;
+		}
+
+		long waitNanos = consume(frameLength);
+		if (waitNanos > 0 && ctx.channel().config().isAutoRead()) {
+			ctx.channel().config().setAutoRead(false);
+			ctx.executor().schedule(() -> {
+				ctx.channel().config().setAutoRead(true);
+			}, waitNanos, TimeUnit.NANOSECONDS);
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	// ---
+
+	private void reject(ChannelHandlerContext ctx, MessageWrapper messageWrapper) {
+		FlowControl.onConsumed(ctx, messageWrapper);
+
+		String id = messageWrapper.getId();
+		if (id != null) {
+			long retryAfterNanos = nanosUntilAvailable(messageWrapper.frameLength());
+			MessageWrapper responseWrapper = MessageWrapper.createResponse(new OverloadedResponse(TimeUnit.NANOSECONDS.toMillis(retryAfterNanos) + 1), id);
+			responseWrapper.setPriority(messageWrapper.getPriority());
+			ctx.writeAndFlush(responseWrapper);
+		}
+		AcknowledgementHandler acknowledgementHandler = ctx.pipeline().get(AcknowledgementHandler.class);
+		if (acknowledgementHandler != null) {
+			acknowledgementHandler.onDropped(messageWrapper);
+		}
+
+		if (this.rejectedCount++ % 1000 == 0) {
+			logger.warn("Message rejected because of rate limits. Peer: {}, rejected messages: {}", ctx.channel().remoteAddress(), this.rejectedCount);
+		}
+	}
+
+	private void resolvePeerRateLimit(ChannelHandlerContext ctx) {
+		String fingerprint = null;
+		SslHandler sslHandler = ctx.pipeline().get(SslHandler.class);
+		if (sslHandler != null) {
+			try {
+				Certificate[] peerCerts = sslHandler.engine().getSession().getPeerCertificates();
+				fingerprint = Utils.getFingerprintAsHex(peerCerts[0]);
+			} catch (SSLPeerUnverifiedException e) {
+				logger.debug(e.getLocalizedMessage(), e);
+			}
+		}
+
+		RateLimit rateLimit = this.peerRateLimitProvider.apply(fingerprint);
+		if (rateLimit != null) {
+			this.messageBucket = rateLimit.newMessageBucket();
+			this.byteBucket = rateLimit.newByteBucket();
+		}
+		this.resolved = true;
+	}
+
+	/**
+	 * @return nanoseconds until all buckets have tokens for a message of the given length, or zero
+	 */
+	private long nanosUntilAvailable(int frameLength) {
+		long nanos = 0;
+		nanos = Math.max(nanos, nanosUntilAvailable(this.messageBucket, 1));
+		nanos = Math.max(nanos, nanosUntilAvailable(this.byteBucket, frameLength));
+		nanos = Math.max(nanos, nanosUntilAvailable(this.globalMessageBucket, 1));
+		nanos = Math.max(nanos, nanosUntilAvailable(this.globalByteBucket, frameLength));
+		return nanos;
+	}
+
+	/**
+	 * Takes tokens of a message of the given length from all buckets
+	 * 
+	 * @return nanoseconds until all buckets are out of debt, or zero
+	 */
+	private long consume(int frameLength) {
+		long waitNanos = 0;
+		waitNanos = Math.max(waitNanos, consume(this.messageBucket, 1));
+		waitNanos = Math.max(waitNanos, consume(this.byteBucket, frameLength));
+		waitNanos = Math.max(waitNanos, consume(this.globalMessageBucket, 1));
+		waitNanos = Math.max(waitNanos, consume(this.globalByteBucket, frameLength));
+		return waitNanos;
+	}
+
+	private static long consume(TokenBucket bucket, int amount) {
+		return bucket != null ? bucket.consume(amount) : 0;
+	}
+
+	private static long nanosUntilAvailable(TokenBucket bucket, int amount) {
+		return bucket != null ? bucket.nanosUntilAvailable(amount) : 0;
+	}
+}
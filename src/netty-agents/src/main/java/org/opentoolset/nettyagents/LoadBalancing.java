@@ -0,0 +1,21 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines how messages and requests are distributed over the pooled connections of a client agent
+ */
+public enum LoadBalancing {
+
+	/**
+	 * Each send goes to the connection with the fewest requests waiting for a response
+	 */
+	LEAST_PENDING,
+
+	/**
+	 * Sends go to the connections in turn
+	 */
+	ROUND_ROBIN;
+}
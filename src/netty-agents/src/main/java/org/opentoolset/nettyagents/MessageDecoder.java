@@ -17,6 +17,9 @@ public class MessageDecoder extends ReplayingDecoder<MessageWrapper> {
 		int length = in.readInt();
 		String serializedMessageWrapper = in.readCharSequence(length, Constants.DEFAULT_CHARSET).toString();
 		MessageWrapper messageWrapper = MessageWrapper.deserialize(serializedMessageWrapper);
-		out.add(messageWrapper);
+		if (messageWrapper != null) {
+			messageWrapper.setFrameLength(Integer.BYTES + length);
+			out.add(messageWrapper);
+		}
 	}
 }
\ No newline at end of file
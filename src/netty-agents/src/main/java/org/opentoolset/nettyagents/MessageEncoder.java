@@ -12,6 +12,10 @@ public class MessageEncoder extends MessageToByteEncoder<MessageWrapper> {
 
 	@Override
 	protected void encode(ChannelHandlerContext ctx, MessageWrapper messageWrapper, ByteBuf out) throws Exception {
+		writeFrame(messageWrapper, out);
+	}
+
+	static void writeFrame(MessageWrapper messageWrapper, ByteBuf out) {
 		String serializedMessageWrapper = messageWrapper.serialize();
 		out.writeInt(serializedMessageWrapper.length());
 		out.writeCharSequence(serializedMessageWrapper, Constants.DEFAULT_CHARSET);
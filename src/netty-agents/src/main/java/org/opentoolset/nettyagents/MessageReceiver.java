@@ -4,8 +4,6 @@
 // ---
 package org.opentoolset.nettyagents;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -15,45 +13,92 @@ public class MessageReceiver {
 
 	private static Logger logger = Context.getLogger();
 
-	private Map<Class<? extends AbstractMessage>, Function<AbstractRequest<?>, AbstractMessage>> requestHandlers = new HashMap<>();
+	private volatile HandlerTable<Function<AbstractRequest<?>, AbstractMessage>> requestHandlers = HandlerTable.empty();
 
-	private Map<Class<? extends AbstractMessage>, Consumer<AbstractMessage>> messageHandlers = new HashMap<>();
+	private volatile HandlerTable<Consumer<AbstractMessage>> messageHandlers = HandlerTable.empty();
+
+	private Context context;
 
 	// ---
 
+	public MessageReceiver(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * Registers a request handler for the given request type and its subtypes which have no handler of their own. It is safe to call while traffic is flowing.
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param classOfRequest
+	 * @param function
+	 */
 	@SuppressWarnings("unchecked")
-	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> void setRequestHandler(Class<TReq> classOfRequest, Function<TReq, TResp> function) {
-		requestHandlers.put(classOfRequest, (Function<AbstractRequest<?>, AbstractMessage>) function);
+	public synchronized <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> void setRequestHandler(Class<TReq> classOfRequest, Function<TReq, TResp> function) {
+		this.requestHandlers = this.requestHandlers.with(classOfRequest, (Function<AbstractRequest<?>, AbstractMessage>) function);
 	}
 
+	/**
+	 * Registers a message handler for the given message type and its subtypes which have no handler of their own. It is safe to call while traffic is flowing.
+	 * 
+	 * @param <T>
+	 * @param classOfMessage
+	 * @param consumer
+	 */
 	@SuppressWarnings("unchecked")
-	public <T extends AbstractMessage> void setMessageHandler(Class<T> classOfMessage, Consumer<T> consumer) {
-		messageHandlers.put(classOfMessage, (Consumer<AbstractMessage>) consumer);
+	public synchronized <T extends AbstractMessage> void setMessageHandler(Class<T> classOfMessage, Consumer<T> consumer) {
+		this.messageHandlers = this.messageHandlers.with(classOfMessage, (Consumer<AbstractMessage>) consumer);
+	}
+
+	public synchronized void removeRequestHandler(Class<? extends AbstractRequest<?>> classOfRequest) {
+		this.requestHandlers = this.requestHandlers.without(classOfRequest);
+	}
+
+	public synchronized void removeMessageHandler(Class<? extends AbstractMessage> classOfMessage) {
+		this.messageHandlers = this.messageHandlers.without(classOfMessage);
 	}
 
 	// ---
 
-	AbstractMessage handleRequest(MessageWrapper messageWrapper) {
-		AbstractMessage message = messageWrapper.deserializeMessage();
-		if (message == null) {
-			logger.warn("Request message is null");
+	/**
+	 * Returns cached response of the given request if its type is {@link Cacheable} and a response is cached for it, so it can be served without dispatching the request to its handler
+	 * 
+	 * @param requestWrapper
+	 * @return
+	 */
+	MessageWrapper getCachedResponse(MessageWrapper requestWrapper) {
+		Class<? extends AbstractMessage> classOfRequest = requestWrapper.getClassOfMessage();
+		if (classOfRequest == null || !classOfRequest.isAnnotationPresent(Cacheable.class)) {
 			return null;
 		}
 
-		if (!AbstractRequest.class.isInstance(message)) {
-			logger.warn("Request message is not a request. It's class: {}", message.getClass());
+		MessageWrapper cachedResponseWrapper = this.context.getResponseCache().get(classOfRequest, requestWrapper.getSerializedMessage());
+		if (cachedResponseWrapper == null) {
 			return null;
 		}
 
-		AbstractRequest<?> request = (AbstractRequest<?>) message;
-		Function<AbstractRequest<?>, AbstractMessage> function = requestHandlers.get(request.getClass());
-		if (function == null) {
-			logger.warn("Unsupported operation for request class: {}", request.getClass());
+		MessageWrapper responseWrapper = MessageWrapper.createResponse(cachedResponseWrapper, requestWrapper.getId());
+		responseWrapper.setPriority(requestWrapper.getPriority());
+		return responseWrapper;
+	}
+
+	MessageWrapper handleRequest(MessageWrapper requestWrapper) {
+		Class<? extends AbstractMessage> classOfRequest = requestWrapper.getClassOfMessage();
+		Cacheable cacheable = classOfRequest != null ? classOfRequest.getAnnotation(Cacheable.class) : null;
+
+		AbstractMessage response = doHandleRequest(requestWrapper);
+		if (response == null) {
+			logger.warn("Response is null for request class: {}", classOfRequest);
 			return null;
 		}
 
-		AbstractMessage response = function.apply(request);
-		return response;
+		MessageWrapper responseWrapper = MessageWrapper.createResponse(response, requestWrapper.getId());
+		responseWrapper.setPriority(requestWrapper.getPriority());
+		if (cacheable != null) {
+			this.context.getResponseCache().put(classOfRequest, requestWrapper.getSerializedMessage(), responseWrapper, cacheable.ttlSec());
+		}
+
+		return responseWrapper;
 	}
 
 	void handleMessage(MessageWrapper messageWrapper) {
@@ -71,4 +116,29 @@ public class MessageReceiver {
 
 		consumer.accept(message);
 	}
+
+	// ---
+
+	private AbstractMessage doHandleRequest(MessageWrapper messageWrapper) {
+		AbstractMessage message = messageWrapper.deserializeMessage();
+		if (message == null) {
+			logger.warn("Request message is null");
+			return null;
+		}
+
+		if (!AbstractRequest.class.isInstance(message)) {
+			logger.warn("Request message is not a request. It's class: {}", message.getClass());
+			return null;
+		}
+
+		AbstractRequest<?> request = (AbstractRequest<?>) message;
+		Function<AbstractRequest<?>, AbstractMessage> function = requestHandlers.get(request.getClass());
+		if (function == null) {
+			logger.warn("Unsupported operation for request class: {}", request.getClass());
+			return null;
+		}
+
+		AbstractMessage response = function.apply(request);
+		return response;
+	}
 }
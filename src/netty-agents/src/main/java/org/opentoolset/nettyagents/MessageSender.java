@@ -4,11 +4,32 @@
 // ---
 package org.opentoolset.nettyagents;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
 public class MessageSender {
 
 	private Logger logger = Context.getLogger();
@@ -31,54 +52,132 @@ public class MessageSender {
 		return doRequest(request, peerContext, Constants.DEFAULT_REQUEST_TIMEOUT_SEC);
 	}
 
+	/**
+	 * Sends a request to the peer and waits until receiving the response or reaching to the specified timeout duration
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerContext
+	 * @param timeoutSec
+	 * @return response, or null if the request couldn't be sent or timed out
+	 * @throws OverloadedException
+	 *           if the peer rejected the request because it is overloaded
+	 */
 	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request, PeerContext peerContext, int timeoutSec) {
 		if (this.context.isTrustNegotiationMode()) {
 			return null;
 		}
 
 		try {
-			if (!Utils.waitUntil(() -> peerContext.getChannelHandlerContext() != null, Constants.DEFAULT_CHANNEL_WAIT_SEC)) {
+			// A request kept in a session doesn't need a connected channel, it is sent when the peer reconnects
+			Session session = peerContext.getSession();
+			if (session == null && !Utils.waitUntil(() -> peerContext.getChannelHandlerContext() != null, Constants.DEFAULT_CHANNEL_WAIT_SEC)) {
 				return null;
 			}
 
 			MessageWrapper requestWrapper = MessageWrapper.createRequest(request);
-			Thread currentThread = Thread.currentThread();
-
 			OperationContext operationContext = new OperationContext();
-			operationContext.setThread(currentThread);
-
 			this.waitingRequests.put(requestWrapper.getId(), operationContext);
-
-			peerContext.getChannelHandlerContext().writeAndFlush(requestWrapper);
-			synchronized (currentThread) {
-				currentThread.wait(timeoutSec * 1000);
+			peerContext.onRequestSent();
+			if (session != null) {
+				session.addPending(requestWrapper, peerContext);
 			}
 
-			operationContext = this.waitingRequests.remove(requestWrapper.getId());
-			if (operationContext != null) {
-				MessageWrapper responseWrapper = operationContext.getResponseWrapper();
-				if (responseWrapper != null) {
-					TResp responseMessage = responseWrapper.deserializeMessage(request.getResponseClass());
-					return responseMessage;
+			try {
+				ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+				if (channelHandlerContext != null && write(channelHandlerContext, requestWrapper).isCompletedExceptionally()) {
+					return null;
+				}
+
+				MessageWrapper responseWrapper = operationContext.getResponseFuture().get(timeoutSec, TimeUnit.SECONDS);
+				return responseWrapper.deserializeResponse(request.getResponseClass());
+			} finally {
+				this.waitingRequests.remove(requestWrapper.getId());
+				peerContext.onRequestCompleted();
+				if (session != null) {
+					session.removePending(requestWrapper);
 				}
 			}
 		} catch (InterruptedException e) {
 			this.logger.error("Interrupted", e);
+		} catch (TimeoutException | ExecutionException e) {
+			this.logger.debug(e.getLocalizedMessage(), e);
 		}
 
 		return null;
 	}
 
+	/**
+	 * Sends a request to the peer without blocking
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerContext
+	 * @param timeoutSec
+	 * @return future of the response, completed exceptionally with {@link TimeoutException} if no response arrives in time, with {@link OverloadedException} if the peer rejected the request because it is overloaded, or with the
+	 *         cause of the failure if the request couldn't be sent
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<TResp> doRequestAsync(TReq request, PeerContext peerContext, int timeoutSec) {
+		if (this.context.isTrustNegotiationMode()) {
+			CompletableFuture<TResp> future = new CompletableFuture<>();
+			future.completeExceptionally(new IllegalStateException("Requests can't be sent in peer identification mode"));
+			return future;
+		}
+
+		return doRequestAsync(MessageWrapper.createRequest(request), request.getResponseClass(), peerContext, timeoutSec);
+	}
+
+	/**
+	 * Sends a request to many peers in parallel without blocking. The request is serialized once.
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerContexts
+	 * @param timeoutSec
+	 *          Timeout of the request for each peer
+	 * @param required
+	 *          Number of responses after which the result is completed without waiting the other peers, eg. 1 for the first response or a quorum; if it is not reached, the result is completed when all peers have answered,
+	 *          failed or timed out. Must be at least 1.
+	 * @param listener
+	 *          Optional listener called with each response as it arrives
+	 * @return
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<GatherResult<TResp>> doRequestAll(TReq request, Collection<PeerContext> peerContexts, int timeoutSec, int required, BiConsumer<PeerContext, TResp> listener) {
+		Gathering<TResp> gathering = new Gathering<>(peerContexts, required, listener);
+		if (this.context.isTrustNegotiationMode()) {
+			gathering.fail(new IllegalStateException("Requests can't be sent in peer identification mode"));
+			return gathering.result;
+		}
+
+		MessageWrapper requestWrapper = MessageWrapper.createRequest(request);
+		for (PeerContext peerContext : new ArrayList<>(peerContexts)) {
+			if (gathering.result.isDone()) {
+				break;
+			}
+
+			CompletableFuture<TResp> future = doRequestAsync(MessageWrapper.createRequest(requestWrapper), request.getResponseClass(), peerContext, timeoutSec);
+			gathering.requests.put(peerContext, future);
+			future.whenComplete((response, e) -> gathering.onCompleted(peerContext, response, e));
+		}
+		return gathering.result;
+	}
+
 	public <T extends AbstractMessage> boolean sendMessage(T message, PeerContext peerContext) {
+		return sendMessage(message, peerContext, Priority.of(message.getClass()));
+	}
+
+	public <T extends AbstractMessage> boolean sendMessage(T message, PeerContext peerContext, Priority priority) {
 		if (this.context.isTrustNegotiationMode()) {
 			return false;
 		}
 
 		if (Utils.waitUntil(() -> peerContext.getChannelHandlerContext() != null, Constants.DEFAULT_CHANNEL_WAIT_SEC)) {
 			try {
-				MessageWrapper messageWrapper = MessageWrapper.create(message);
-				peerContext.getChannelHandlerContext().writeAndFlush(messageWrapper);
-				return true;
+				MessageWrapper messageWrapper = MessageWrapper.create(message, priority);
+				return !write(peerContext.getChannelHandlerContext(), messageWrapper).isCompletedExceptionally();
 			} catch (Exception e) {
 				// TODO [hadi] Handle exception
 				this.logger.error(e.getLocalizedMessage(), e);
@@ -87,17 +186,347 @@ public class MessageSender {
 		return false;
 	}
 
+	/**
+	 * Sends a message without blocking and returns a future which is completed when the message was written or acknowledged by the peer according to the delivery mode
+	 * 
+	 * @param <T>
+	 * @param message
+	 * @param peerContext
+	 * @param deliveryMode
+	 * @return
+	 */
+	public <T extends AbstractMessage> CompletableFuture<Void> sendMessageTracked(T message, PeerContext peerContext, DeliveryMode deliveryMode) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		if (this.context.isTrustNegotiationMode()) {
+			future.completeExceptionally(new IllegalStateException("Messages can't be sent in peer identification mode"));
+			return future;
+		}
+
+		// A message waiting for an acknowledgement is kept in the session if there is one, and sent when the peer reconnects
+		ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+		Session session = deliveryMode == DeliveryMode.ACKNOWLEDGED ? peerContext.getSession() : null;
+		if (channelHandlerContext == null && session == null) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		try {
+			Priority priority = Priority.of(message.getClass());
+			if (deliveryMode == DeliveryMode.ACKNOWLEDGED) {
+				MessageWrapper messageWrapper = MessageWrapper.createTracked(message, priority, future);
+				if (session != null) {
+					session.addPending(messageWrapper, peerContext);
+					future.whenComplete((result, e) -> session.removePending(messageWrapper));
+				}
+				if (channelHandlerContext != null) {
+					write(channelHandlerContext, messageWrapper).whenComplete((writeFuture, e) -> {
+						if (e != null) {
+							future.completeExceptionally(e);
+						}
+					});
+				}
+			} else {
+				write(channelHandlerContext, MessageWrapper.create(message, priority)).whenComplete((writeFuture, e) -> {
+					if (e != null) {
+						future.completeExceptionally(e);
+					} else {
+						writeFuture.addListener(result -> {
+							if (result.isSuccess()) {
+								future.complete(null);
+							} else {
+								future.completeExceptionally(result.cause());
+							}
+						});
+					}
+				});
+			}
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+		}
+
+		return future;
+	}
+
+	/**
+	 * Sends a message to many peers without waiting a response. The message is serialized and encoded once, and the same frame is written to each peer by a single task per event loop.<br />
+	 * Peers whose channels are not writable (see write buffer water marks) are skipped, so slow peers don't hold back the others.
+	 * 
+	 * @param <T>
+	 * @param message
+	 * @param peerContexts
+	 * @return future of the number of peers the message was written to
+	 */
+	public <T extends AbstractMessage> CompletableFuture<Integer> multicast(T message, Collection<PeerContext> peerContexts) {
+		if (this.context.isTrustNegotiationMode()) {
+			return CompletableFuture.completedFuture(0);
+		}
+
+		Map<EventExecutor, List<ChannelHandlerContext>> contextsByExecutor = new HashMap<>();
+		for (PeerContext peerContext : peerContexts) {
+			ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+			if (channelHandlerContext != null) {
+				contextsByExecutor.computeIfAbsent(channelHandlerContext.executor(), executor -> new ArrayList<>()).add(channelHandlerContext);
+			}
+		}
+
+		if (contextsByExecutor.isEmpty()) {
+			return CompletableFuture.completedFuture(0);
+		}
+
+		MessageWrapper messageWrapper = MessageWrapper.create(message, Priority.of(message.getClass()));
+		Priority priority = messageWrapper.getPriorityOrDefault();
+		boolean flowControlled = FlowControl.isSubjectToFlowControl(messageWrapper);
+
+		ByteBuf frame = contextsByExecutor.values().iterator().next().get(0).alloc().buffer();
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		try {
+			MessageEncoder.writeFrame(messageWrapper, frame);
+			for (Map.Entry<EventExecutor, List<ChannelHandlerContext>> entry : contextsByExecutor.entrySet()) {
+				CompletableFuture<Integer> future = new CompletableFuture<>();
+				futures.add(future);
+
+				List<ChannelHandlerContext> channelHandlerContexts = entry.getValue();
+				ByteBuf executorFrame = frame.retainedDuplicate();
+				try {
+					entry.getKey().execute(() -> {
+						int written = 0;
+						try {
+							for (ChannelHandlerContext channelHandlerContext : channelHandlerContexts) {
+								if (channelHandlerContext.channel().isActive() && channelHandlerContext.channel().isWritable() && hasOutboundCapacity(channelHandlerContext, priority)) {
+									channelHandlerContext.writeAndFlush(new EncodedMessage(executorFrame.retainedDuplicate(), priority, flowControlled));
+									written++;
+								}
+							}
+						} finally {
+							executorFrame.release();
+							future.complete(written);
+						}
+					});
+				} catch (Exception e) {
+					executorFrame.release();
+					future.complete(0);
+				}
+			}
+		} finally {
+			frame.release();
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> futures.stream().mapToInt(CompletableFuture::join).sum());
+	}
+
+	/**
+	 * Sends a message which is already wrapped (see {@link MessageWrapper#create(Class, String, Priority, String)}) without blocking, eg. to forward it without serializing it again
+	 * 
+	 * @param messageWrapper
+	 * @param peerContext
+	 * @return future which is completed when the message was written
+	 */
+	public CompletableFuture<Void> sendMessage(MessageWrapper messageWrapper, PeerContext peerContext) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+		if (channelHandlerContext == null) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		write(channelHandlerContext, messageWrapper).whenComplete((writeFuture, e) -> {
+			if (e != null) {
+				future.completeExceptionally(e);
+			} else {
+				writeFuture.addListener(result -> {
+					if (result.isSuccess()) {
+						future.complete(null);
+					} else {
+						future.completeExceptionally(result.cause());
+					}
+				});
+			}
+		});
+		return future;
+	}
+
+	CompletableFuture<Void> sendTracked(MessageWrapper messageWrapper, PeerContext peerContext) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+		if (channelHandlerContext == null) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		messageWrapper.setDeliveryFuture(future);
+		write(channelHandlerContext, messageWrapper).whenComplete((writeFuture, e) -> {
+			if (e != null) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Resends requests waiting for a response and messages waiting for an acknowledgement which were sent through the peer, eg. after it reconnected. The peer deduplicates them by their session numbers.
+	 * 
+	 * @param peerContext
+	 * @return number of resent requests and messages
+	 */
+	public int resendPendings(PeerContext peerContext) {
+		Session session = peerContext.getSession();
+		ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+		if (session == null || channelHandlerContext == null) {
+			return 0;
+		}
+
+		List<MessageWrapper> pendings = session.getPendings(peerContext);
+		for (MessageWrapper messageWrapper : pendings) {
+			write(channelHandlerContext, messageWrapper);
+		}
+		return pendings.size();
+	}
+
 	public void shutdown() {
 		for (OperationContext operationContext : this.waitingRequests.values()) {
-			Thread thread = operationContext.getThread();
-			synchronized (thread) {
-				thread.notify();
-			}
+			operationContext.getResponseFuture().completeExceptionally(new ClosedChannelException());
 		}
 	}
 
 	// ---
 
+	/**
+	 * Writes a response to the peer which sent the request, subject to the overflow policy like other sends
+	 * 
+	 * @param channelHandlerContext
+	 * @param responseWrapper
+	 */
+	void writeResponse(ChannelHandlerContext channelHandlerContext, MessageWrapper responseWrapper) {
+		write(channelHandlerContext, responseWrapper).whenComplete((writeFuture, e) -> {
+			if (e != null) {
+				this.logger.warn("Response couldn't be sent: {}", e.getLocalizedMessage());
+			}
+		});
+	}
+
+	// ---
+
+	/**
+	 * Writes the message when the outbound queue of the channel has capacity according to its overflow policy
+	 * 
+	 * @param channelHandlerContext
+	 * @param messageWrapper
+	 * @return future of the channel write, completed exceptionally if the message was rejected
+	 */
+	private CompletableFuture<ChannelFuture> write(ChannelHandlerContext channelHandlerContext, MessageWrapper messageWrapper) {
+		return reserveCapacity(channelHandlerContext, messageWrapper.getPriorityOrDefault()).thenApply(v -> channelHandlerContext.writeAndFlush(messageWrapper));
+	}
+
+	private static boolean hasOutboundCapacity(ChannelHandlerContext channelHandlerContext, Priority priority) {
+		OutboundPriorityHandler outboundHandler = channelHandlerContext.pipeline().get(OutboundPriorityHandler.class);
+		return outboundHandler == null || priority == Priority.HIGH || outboundHandler.hasCapacity();
+	}
+
+	private CompletableFuture<Void> reserveCapacity(ChannelHandlerContext channelHandlerContext, Priority priority) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		OutboundPriorityHandler outboundHandler = channelHandlerContext.pipeline().get(OutboundPriorityHandler.class);
+		if (hasOutboundCapacity(channelHandlerContext, priority)) {
+			future.complete(null);
+			return future;
+		}
+
+		switch (outboundHandler.getOverflowPolicy()) {
+			case BLOCK:
+				if (channelHandlerContext.executor().inEventLoop()) {
+					// The event loop can't wait for itself to drain the queue
+					return outboundHandler.capacityFuture();
+				}
+
+				try {
+					if (outboundHandler.awaitCapacity(TimeUnit.SECONDS.toMillis(Constants.DEFAULT_CHANNEL_WAIT_SEC))) {
+						future.complete(null);
+					} else {
+						future.completeExceptionally(new IllegalStateException("Outbound queue of the peer is full"));
+					}
+				} catch (InterruptedException e) {
+					future.completeExceptionally(e);
+				}
+				return future;
+			case FAIL_FAST:
+				future.completeExceptionally(new IllegalStateException("Outbound queue of the peer is full"));
+				return future;
+			case FUTURE:
+				return outboundHandler.capacityFuture();
+			default:
+				future.complete(null);
+				return future;
+		}
+	}
+
+	/**
+	 * Sends a request which is already wrapped (see {@link MessageWrapper#createRequest}) to the peer without blocking, and returns the response without deserializing it, eg. to forward it elsewhere
+	 * 
+	 * @param requestWrapper
+	 * @param peerContext
+	 * @param timeoutSec
+	 * @return future of the wrapped response
+	 */
+	public CompletableFuture<MessageWrapper> doRequestAsync(MessageWrapper requestWrapper, PeerContext peerContext, int timeoutSec) {
+		CompletableFuture<MessageWrapper> future = new CompletableFuture<>();
+		// A request kept in a session is sent when the peer reconnects if the channel is down, and resent if its write fails
+		ChannelHandlerContext channelHandlerContext = peerContext.getChannelHandlerContext();
+		Session session = peerContext.getSession();
+		if (channelHandlerContext == null && session == null) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+
+		String id = requestWrapper.getId();
+		OperationContext operationContext = new OperationContext();
+		this.waitingRequests.put(id, operationContext);
+		peerContext.onRequestSent();
+		if (session != null) {
+			session.addPending(requestWrapper, peerContext);
+		}
+
+		EventExecutor timeoutExecutor = channelHandlerContext != null ? channelHandlerContext.executor() : GlobalEventExecutor.INSTANCE;
+		ScheduledFuture<?> timeout = timeoutExecutor.schedule(() -> {
+			operationContext.getResponseFuture().completeExceptionally(new TimeoutException("Request timed out after " + timeoutSec + " seconds"));
+		}, timeoutSec, TimeUnit.SECONDS);
+
+		operationContext.getResponseFuture().whenComplete((responseWrapper, e) -> {
+			this.waitingRequests.remove(id);
+			peerContext.onRequestCompleted();
+			if (session != null) {
+				session.removePending(requestWrapper);
+			}
+			timeout.cancel(false);
+			if (e != null) {
+				future.completeExceptionally(e);
+			} else {
+				future.complete(responseWrapper);
+			}
+		});
+		future.whenComplete((responseWrapper, e) -> operationContext.getResponseFuture().cancel(false));
+
+		if (channelHandlerContext != null) {
+			write(channelHandlerContext, requestWrapper).whenComplete((writeFuture, e) -> {
+				if (e != null) {
+					operationContext.getResponseFuture().completeExceptionally(e);
+				} else {
+					writeFuture.addListener(result -> {
+						if (!result.isSuccess() && session == null) {
+							operationContext.getResponseFuture().completeExceptionally(result.cause());
+						}
+					});
+				}
+			});
+		}
+		return future;
+	}
+
+	private <TResp extends AbstractMessage> CompletableFuture<TResp> doRequestAsync(MessageWrapper requestWrapper, Class<TResp> responseClass, PeerContext peerContext, int timeoutSec) {
+		CompletableFuture<MessageWrapper> responseFuture = doRequestAsync(requestWrapper, peerContext, timeoutSec);
+		CompletableFuture<TResp> future = responseFuture.thenApply(responseWrapper -> responseWrapper.deserializeResponse(responseClass));
+		future.whenComplete((response, e) -> responseFuture.cancel(false));
+		return future;
+	}
+
 	Map<String, OperationContext> getWaitingRequests() {
 		return waitingRequests;
 	}
@@ -106,23 +535,81 @@ public class MessageSender {
 
 	public static class OperationContext {
 
-		private Thread thread;
-		private MessageWrapper responseWrapper;
+		private final CompletableFuture<MessageWrapper> responseFuture = new CompletableFuture<>();
 
-		public Thread getThread() {
-			return thread;
+		/**
+		 * Returns the future which is completed when the response arrives
+		 * 
+		 * @return
+		 */
+		public CompletableFuture<MessageWrapper> getResponseFuture() {
+			return responseFuture;
 		}
+	}
+
+	private static final class Gathering<TResp extends AbstractMessage> {
+
+		private final CompletableFuture<GatherResult<TResp>> result = new CompletableFuture<>();
+		private final Map<PeerContext, CompletableFuture<TResp>> requests = new ConcurrentHashMap<>();
+		private final Map<PeerContext, TResp> responses = new LinkedHashMap<>();
+		private final Map<PeerContext, Throwable> errors = new LinkedHashMap<>();
+		private final Set<PeerContext> pending;
+		private final int required;
+		private final BiConsumer<PeerContext, TResp> listener;
 
-		public void setThread(Thread thread) {
-			this.thread = thread;
+		private Gathering(Collection<PeerContext> peerContexts, int required, BiConsumer<PeerContext, TResp> listener) {
+			if (required < 1) {
+				throw new IllegalArgumentException("Number of required responses must be at least 1: " + required);
+			}
+
+			this.pending = new LinkedHashSet<>(peerContexts);
+			this.required = required;
+			this.listener = listener;
+			if (this.pending.isEmpty()) {
+				complete();
+			}
 		}
 
-		public MessageWrapper getResponseWrapper() {
-			return responseWrapper;
+		private void onCompleted(PeerContext peerContext, TResp response, Throwable e) {
+			synchronized (this) {
+				if (this.result.isDone() || !this.pending.remove(peerContext)) {
+					return;
+				}
+
+				if (e != null) {
+					this.errors.put(peerContext, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+				} else {
+					this.responses.put(peerContext, response);
+				}
+			}
+
+			if (e == null && this.listener != null) {
+				this.listener.accept(peerContext, response);
+			}
+
+			synchronized (this) {
+				if (!this.result.isDone() && (this.responses.size() >= this.required || this.pending.isEmpty())) {
+					complete();
+				}
+			}
 		}
 
-		public void setResponseWrapper(MessageWrapper responseWrapper) {
-			this.responseWrapper = responseWrapper;
+		private synchronized void fail(Throwable e) {
+			for (PeerContext peerContext : this.pending) {
+				this.errors.put(peerContext, e);
+			}
+			this.pending.clear();
+			complete();
+		}
+
+		private void complete() {
+			this.result.complete(new GatherResult<>(this.responses, this.errors, this.pending, this.required));
+			for (PeerContext peerContext : this.pending) {
+				CompletableFuture<TResp> request = this.requests.get(peerContext);
+				if (request != null) {
+					request.cancel(false);
+				}
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -5,10 +5,15 @@
 package org.opentoolset.nettyagents;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MessageWrapper {
 
 	public interface Serializer {
@@ -24,6 +29,34 @@ public class MessageWrapper {
 	private String id;
 	private String correlationId;
 
+	private Priority priority;
+
+	private String routingKey;
+
+	private Long seq;
+
+	private Long ack;
+
+	private Long nack;
+
+	private Integer credit;
+
+	private Long creditSeq;
+
+	private Long creditEcho;
+
+	private Long ping;
+
+	private Long pong;
+
+	private Long sessionSeq;
+
+	@JsonIgnore
+	private transient CompletableFuture<Void> deliveryFuture;
+
+	@JsonIgnore
+	private transient int frameLength;
+
 	// ---
 
 	public MessageWrapper() {
@@ -33,6 +66,83 @@ public class MessageWrapper {
 		MessageWrapper messageWrapper = new MessageWrapper();
 		messageWrapper.classOfMessage = message.getClass();
 		messageWrapper.serializedMessage = getSerializer().serialize(message);
+		messageWrapper.priority = toWirePriority(Priority.of(message.getClass()));
+		if (message instanceof Routable) {
+			messageWrapper.routingKey = ((Routable) message).getRoutingKey();
+		}
+		return messageWrapper;
+	}
+
+	public static <T extends AbstractMessage> MessageWrapper create(T message, Priority priority) {
+		MessageWrapper messageWrapper = create(message);
+		messageWrapper.priority = toWirePriority(priority);
+		return messageWrapper;
+	}
+
+	/**
+	 * Creates a message from its serialized form, eg. to forward a message without deserializing and serializing it again
+	 * 
+	 * @param classOfMessage
+	 * @param serializedMessage
+	 * @param priority
+	 * @param routingKey
+	 * @return
+	 */
+	public static MessageWrapper create(Class<? extends AbstractMessage> classOfMessage, String serializedMessage, Priority priority, String routingKey) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.classOfMessage = classOfMessage;
+		messageWrapper.serializedMessage = serializedMessage;
+		messageWrapper.priority = toWirePriority(priority);
+		messageWrapper.routingKey = routingKey;
+		return messageWrapper;
+	}
+
+	public static <T extends AbstractMessage> MessageWrapper createTracked(T message, Priority priority, CompletableFuture<Void> deliveryFuture) {
+		MessageWrapper messageWrapper = create(message, priority);
+		messageWrapper.deliveryFuture = deliveryFuture;
+		return messageWrapper;
+	}
+
+	public static MessageWrapper createAck(long ack) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.ack = ack;
+		messageWrapper.priority = Priority.HIGH;
+		return messageWrapper;
+	}
+
+	public static MessageWrapper createNack(long nack) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.nack = nack;
+		messageWrapper.priority = Priority.HIGH;
+		return messageWrapper;
+	}
+
+	public static MessageWrapper createCredit(int credit, long creditSeq) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.credit = credit;
+		messageWrapper.creditSeq = creditSeq;
+		messageWrapper.priority = Priority.HIGH;
+		return messageWrapper;
+	}
+
+	public static MessageWrapper createCreditEcho(long creditSeq) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.creditEcho = creditSeq;
+		messageWrapper.priority = Priority.HIGH;
+		return messageWrapper;
+	}
+
+	public static MessageWrapper createPing(long ping) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.ping = ping;
+		messageWrapper.priority = Priority.HIGH;
+		return messageWrapper;
+	}
+
+	public static MessageWrapper createPong(long ping) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.pong = ping;
+		messageWrapper.priority = Priority.HIGH;
 		return messageWrapper;
 	}
 
@@ -42,12 +152,37 @@ public class MessageWrapper {
 		return messageWrapper;
 	}
 
+	/**
+	 * Creates another request with the same serialized message but a new ID, so the same request can be sent to many peers without serializing it again
+	 * 
+	 * @param requestWrapper
+	 * @return
+	 */
+	public static MessageWrapper createRequest(MessageWrapper requestWrapper) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.classOfMessage = requestWrapper.classOfMessage;
+		messageWrapper.serializedMessage = requestWrapper.serializedMessage;
+		messageWrapper.priority = requestWrapper.priority;
+		messageWrapper.routingKey = requestWrapper.routingKey;
+		messageWrapper.id = UUID.randomUUID().toString();
+		return messageWrapper;
+	}
+
 	public static <T extends AbstractMessage> MessageWrapper createResponse(T message, String correlationId) {
 		MessageWrapper messageWrapper = create(message);
 		messageWrapper.correlationId = correlationId;
 		return messageWrapper;
 	}
 
+	public static MessageWrapper createResponse(MessageWrapper responseWrapper, String correlationId) {
+		MessageWrapper messageWrapper = new MessageWrapper();
+		messageWrapper.classOfMessage = responseWrapper.classOfMessage;
+		messageWrapper.serializedMessage = responseWrapper.serializedMessage;
+		messageWrapper.correlationId = correlationId;
+		messageWrapper.priority = responseWrapper.priority;
+		return messageWrapper;
+	}
+
 	// --- Getters:
 
 	public String getId() {
@@ -66,6 +201,125 @@ public class MessageWrapper {
 		return serializedMessage;
 	}
 
+	public Priority getPriority() {
+		return priority;
+	}
+
+	public String getRoutingKey() {
+		return routingKey;
+	}
+
+	/**
+	 * Returns sequence number of a delivery-tracked message within its connection
+	 * 
+	 * @return
+	 */
+	public Long getSeq() {
+		return seq;
+	}
+
+	/**
+	 * Returns the highest sequence number acknowledged cumulatively by an acknowledgement
+	 * 
+	 * @return
+	 */
+	public Long getAck() {
+		return ack;
+	}
+
+	/**
+	 * Returns sequence number of a delivery-tracked message which the peer dropped without passing to its handlers
+	 * 
+	 * @return
+	 */
+	public Long getNack() {
+		return nack;
+	}
+
+	/**
+	 * Returns number of flow control credits granted by a credit grant
+	 * 
+	 * @return
+	 */
+	public Integer getCredit() {
+		return credit;
+	}
+
+	public Long getCreditSeq() {
+		return creditSeq;
+	}
+
+	public Long getCreditEcho() {
+		return creditEcho;
+	}
+
+	/**
+	 * Returns send time of a heartbeat, which is echoed back by the peer
+	 * 
+	 * @return
+	 */
+	public Long getPing() {
+		return ping;
+	}
+
+	/**
+	 * Returns send time of the heartbeat which this message echoes
+	 * 
+	 * @return
+	 */
+	public Long getPong() {
+		return pong;
+	}
+
+	/**
+	 * Returns number of a request or tracked message within the session of its sender (see {@link Session}), used to deduplicate it if it is resent after a reconnect
+	 * 
+	 * @return
+	 */
+	public Long getSessionSeq() {
+		return sessionSeq;
+	}
+
+	@JsonIgnore
+	public Priority getPriorityOrDefault() {
+		return priority != null ? priority : Priority.NORMAL;
+	}
+
+	// --- Setters:
+
+	void setPriority(Priority priority) {
+		this.priority = toWirePriority(priority);
+	}
+
+	void setSeq(Long seq) {
+		this.seq = seq;
+	}
+
+	void setSessionSeq(Long sessionSeq) {
+		this.sessionSeq = sessionSeq;
+	}
+
+	void setDeliveryFuture(CompletableFuture<Void> deliveryFuture) {
+		this.deliveryFuture = deliveryFuture;
+	}
+
+	CompletableFuture<Void> deliveryFuture() {
+		return deliveryFuture;
+	}
+
+	void setFrameLength(int frameLength) {
+		this.frameLength = frameLength;
+	}
+
+	/**
+	 * Returns length of the frame which this message was decoded from
+	 * 
+	 * @return
+	 */
+	int frameLength() {
+		return frameLength;
+	}
+
 	// --- Helper methods:
 
 	public String serialize() {
@@ -82,6 +336,24 @@ public class MessageWrapper {
 		return message;
 	}
 
+	/**
+	 * Deserializes the message as a response of the given type
+	 * 
+	 * @param <T>
+	 * @param responseClass
+	 * @return
+	 * @throws OverloadedException
+	 *           if the message is an {@link OverloadedResponse} instead of the actual response
+	 */
+	public <T extends AbstractMessage> T deserializeResponse(Class<T> responseClass) {
+		if (this.classOfMessage == OverloadedResponse.class) {
+			OverloadedResponse overloadedResponse = deserializeMessage(OverloadedResponse.class);
+			throw new OverloadedException(overloadedResponse != null ? overloadedResponse.getRetryAfterMillis() : 0);
+		}
+
+		return deserializeMessage(responseClass);
+	}
+
 	@Override
 	public String toString() {
 		return ReflectionToStringBuilder.toString(this, ToStringStyle.SHORT_PREFIX_STYLE);
@@ -101,6 +373,10 @@ public class MessageWrapper {
 
 	// ---
 
+	private static Priority toWirePriority(Priority priority) {
+		return priority != Priority.NORMAL ? priority : null;
+	}
+
 	private static Serializer getSerializer() {
 		return Context.getSerializer();
 	}
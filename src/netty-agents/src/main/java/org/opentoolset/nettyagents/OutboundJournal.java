@@ -0,0 +1,326 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+
+/**
+ * Store-and-forward queue of outbound messages backed by an append-only journal of memory-mapped segment files on local disk.<br />
+ * Messages are appended without waiting for a connection and forwarded in batches once the connection is established. Each batch is committed to a checkpoint after the peer acknowledged all of its messages, and segments are deleted once all of their messages are committed. Uncommitted messages are forwarded again after a reconnect or restart, so delivery is at-least-once.
+ */
+public class OutboundJournal implements Closeable {
+
+	private static Logger logger = Context.getLogger();
+
+	private static final String SEGMENT_FILE_SUFFIX = ".seg";
+	private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+	private static final int RECORD_HEADER_SIZE = Integer.BYTES;
+	private static final int CHECKPOINT_SIZE = Long.BYTES + Integer.BYTES;
+
+	private final Path directory;
+	private final int segmentSize;
+
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+	private MappedByteBuffer checkpoint;
+
+	private Position writePosition;
+	private Position readPosition;
+	private Position committedPosition;
+
+	private CompletableFuture<Void> unreadFuture;
+
+	// ---
+
+	/**
+	 * Opens the journal in the given directory and recovers its state left by a previous run if exists
+	 * 
+	 * @param directory
+	 * @param segmentSize
+	 *          Size of each segment file in bytes
+	 * @throws IOException
+	 */
+	public OutboundJournal(Path directory, int segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+
+		Files.createDirectories(directory);
+		try (FileChannel fileChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			this.checkpoint = fileChannel.map(MapMode.READ_WRITE, 0, CHECKPOINT_SIZE);
+		}
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_FILE_SUFFIX)) {
+			for (Path path : stream) {
+				String fileName = path.getFileName().toString();
+				long id = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+				this.segments.put(id, Segment.open(path, id, 0));
+			}
+		}
+
+		recover();
+	}
+
+	/**
+	 * Appends a message to the end of the journal
+	 * 
+	 * @param messageWrapper
+	 * @throws IOException
+	 */
+	public synchronized void append(MessageWrapper messageWrapper) throws IOException {
+		byte[] bytes = messageWrapper.serialize().getBytes(Constants.DEFAULT_CHARSET);
+		int recordSize = RECORD_HEADER_SIZE + bytes.length;
+
+		Segment segment = this.segments.get(this.writePosition.segmentId);
+		if (this.writePosition.offset + recordSize + RECORD_HEADER_SIZE > segment.buffer.capacity()) {
+			long id = this.writePosition.segmentId + 1;
+			segment = Segment.open(segmentPath(id), id, Math.max(this.segmentSize, recordSize + RECORD_HEADER_SIZE));
+			this.segments.put(id, segment);
+			this.writePosition = new Position(id, 0);
+		}
+
+		int offset = this.writePosition.offset;
+		MappedByteBuffer buffer = segment.buffer;
+		buffer.position(offset + RECORD_HEADER_SIZE);
+		buffer.put(bytes);
+		// Length is written last, so a partially written record is never read after a crash
+		buffer.putInt(offset, bytes.length);
+
+		this.writePosition = new Position(segment.id, offset + recordSize);
+
+		CompletableFuture<Void> unreadFuture = this.unreadFuture;
+		if (unreadFuture != null) {
+			this.unreadFuture = null;
+			unreadFuture.complete(null);
+		}
+	}
+
+	/**
+	 * Returns a future which is completed when there are messages which haven't been read yet, without blocking
+	 * 
+	 * @return
+	 */
+	public synchronized CompletableFuture<Void> whenUnread() {
+		if (hasUnread()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		if (this.unreadFuture == null) {
+			this.unreadFuture = new CompletableFuture<>();
+		}
+		return this.unreadFuture;
+	}
+
+	/**
+	 * Forwards the next batch of messages to the peer without blocking and commits them after they are acknowledged
+	 * 
+	 * @param messageSender
+	 * @param peerContext
+	 * @param maxBatchSize
+	 * @return future of the number of messages forwarded, completed exceptionally if a message couldn't be written or acknowledged; the batch is forwarded again after {@link #rewind()}
+	 */
+	public CompletableFuture<Integer> forwardBatchAsync(MessageSender messageSender, PeerContext peerContext, int maxBatchSize) {
+		List<Record> batch = readBatch(maxBatchSize);
+		if (batch.isEmpty()) {
+			return CompletableFuture.completedFuture(0);
+		}
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>(batch.size());
+		for (Record record : batch) {
+			futures.add(messageSender.sendTracked(record.messageWrapper, peerContext));
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+			try {
+				commit(batch.get(batch.size() - 1).next);
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+			return batch.size();
+		});
+	}
+
+	/**
+	 * Moves the read position back to the last commit, so that unacknowledged messages are forwarded again
+	 */
+	public synchronized void rewind() {
+		this.readPosition = this.committedPosition;
+	}
+
+	public synchronized boolean isEmpty() {
+		return this.committedPosition.equals(this.writePosition);
+	}
+
+	@Override
+	public synchronized void close() {
+		this.checkpoint.force();
+		for (Segment segment : this.segments.values()) {
+			segment.buffer.force();
+		}
+		this.segments.clear();
+	}
+
+	// ---
+
+	private synchronized List<Record> readBatch(int maxBatchSize) {
+		List<Record> batch = new ArrayList<>();
+		Position position = this.readPosition;
+		while (batch.size() < maxBatchSize && !position.equals(this.writePosition)) {
+			Segment segment = this.segments.get(position.segmentId);
+			MappedByteBuffer buffer = segment.buffer;
+			int length = position.offset + RECORD_HEADER_SIZE <= buffer.capacity() ? buffer.getInt(position.offset) : 0;
+			if (length <= 0) {
+				Long nextSegmentId = this.segments.higherKey(position.segmentId);
+				if (nextSegmentId == null) {
+					break;
+				}
+				position = new Position(nextSegmentId, 0);
+				continue;
+			}
+
+			byte[] bytes = new byte[length];
+			buffer.position(position.offset + RECORD_HEADER_SIZE);
+			buffer.get(bytes);
+			position = new Position(segment.id, position.offset + RECORD_HEADER_SIZE + length);
+
+			MessageWrapper messageWrapper = MessageWrapper.deserialize(new String(bytes, Constants.DEFAULT_CHARSET));
+			if (messageWrapper != null) {
+				batch.add(new Record(messageWrapper, position));
+			}
+		}
+
+		this.readPosition = position;
+		return batch;
+	}
+
+	private synchronized void commit(Position position) throws IOException {
+		this.committedPosition = position;
+		this.checkpoint.putLong(0, position.segmentId);
+		this.checkpoint.putInt(Long.BYTES, position.offset);
+		this.checkpoint.force();
+
+		for (Map.Entry<Long, Segment> entry = this.segments.firstEntry(); entry != null && entry.getKey() < position.segmentId; entry = this.segments.firstEntry()) {
+			this.segments.remove(entry.getKey());
+			Files.deleteIfExists(entry.getValue().path);
+		}
+	}
+
+	private boolean hasUnread() {
+		return !this.readPosition.equals(this.writePosition);
+	}
+
+	private void recover() throws IOException {
+		if (this.segments.isEmpty()) {
+			this.segments.put(0L, Segment.open(segmentPath(0), 0, this.segmentSize));
+		}
+
+		long committedSegmentId = this.checkpoint.getLong(0);
+		int committedOffset = this.checkpoint.getInt(Long.BYTES);
+		if (!this.segments.containsKey(committedSegmentId)) {
+			committedSegmentId = this.segments.firstKey();
+			committedOffset = 0;
+		}
+
+		for (Long id : new ArrayList<>(this.segments.headMap(committedSegmentId).keySet())) {
+			Files.deleteIfExists(this.segments.remove(id).path);
+		}
+
+		Segment lastSegment = this.segments.lastEntry().getValue();
+		MappedByteBuffer buffer = lastSegment.buffer;
+		int offset = 0;
+		while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+			int length = buffer.getInt(offset);
+			if (length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+				break;
+			}
+			offset += RECORD_HEADER_SIZE + length;
+		}
+
+		this.writePosition = new Position(lastSegment.id, offset);
+		this.committedPosition = new Position(committedSegmentId, committedOffset);
+		this.readPosition = this.committedPosition;
+
+		if (!isEmpty()) {
+			logger.info("Outbound journal recovered with unforwarded messages in {}", this.directory);
+		}
+	}
+
+	private Path segmentPath(long id) {
+		return this.directory.resolve(String.format("%020d%s", id, SEGMENT_FILE_SUFFIX));
+	}
+
+	// ---
+
+	private static final class Segment {
+
+		private final Path path;
+		private final long id;
+		private final MappedByteBuffer buffer;
+
+		private Segment(Path path, long id, MappedByteBuffer buffer) {
+			this.path = path;
+			this.id = id;
+			this.buffer = buffer;
+		}
+
+		private static Segment open(Path path, long id, int size) throws IOException {
+			try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				long mappedSize = Math.max(size, fileChannel.size());
+				return new Segment(path, id, fileChannel.map(MapMode.READ_WRITE, 0, mappedSize));
+			}
+		}
+	}
+
+	private static final class Position {
+
+		private final long segmentId;
+		private final int offset;
+
+		private Position(long segmentId, int offset) {
+			this.segmentId = segmentId;
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Position)) {
+				return false;
+			}
+
+			Position other = (Position) obj;
+			return this.segmentId == other.segmentId && this.offset == other.offset;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(this.segmentId) * 31 + this.offset;
+		}
+	}
+
+	private static final class Record {
+
+		private final MessageWrapper messageWrapper;
+		private final Position next;
+
+		private Record(MessageWrapper messageWrapper, Position next) {
+			this.messageWrapper = messageWrapper;
+			this.next = next;
+		}
+	}
+}
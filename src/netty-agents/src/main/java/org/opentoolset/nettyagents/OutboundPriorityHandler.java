@@ -0,0 +1,288 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Keeps separate, bounded outbound queues per priority and drains them into the channel by a weighted scheduler.<br />
+ * High priority messages are always written immediately, while normal and low priority messages are only written as long as the channel is writable (see write buffer water marks). So bulk traffic waits in these queues instead of the outbound buffer of the channel and control traffic doesn't queue behind it. Senders are held back by the configured {@link OverflowPolicy} when queues reach their capacity.
+ */
+public class OutboundPriorityHandler extends ChannelDuplexHandler {
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final List<Queue<PendingWrite>> lanes = new ArrayList<>(PRIORITIES.length);
+
+	private final AtomicInteger queuedCount = new AtomicInteger();
+
+	private final int capacity;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final Queue<CompletableFuture<Void>> capacityWaiters = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger blockedSenders = new AtomicInteger();
+
+	private volatile boolean closed = false;
+
+	private final FlowControl flowControl;
+
+	// ---
+
+	public OutboundPriorityHandler(int capacity, OverflowPolicy overflowPolicy) {
+		this(capacity, overflowPolicy, null);
+	}
+
+	/**
+	 * @param capacity
+	 * @param overflowPolicy
+	 * @param flowControl
+	 *          Flow control window of the connection, or null if flow control is disabled
+	 */
+	public OutboundPriorityHandler(int capacity, OverflowPolicy overflowPolicy, FlowControl flowControl) {
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.flowControl = flowControl;
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			this.lanes.add(new ArrayDeque<>());
+		}
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public boolean hasCapacity() {
+		return this.queuedCount.get() < this.capacity;
+	}
+
+	/**
+	 * Blocks the calling thread until the queues have capacity or the timeout elapses. Must not be called on an event loop.
+	 * 
+	 * @param timeoutMillis
+	 * @return true if the queues have capacity
+	 * @throws InterruptedException
+	 */
+	public boolean awaitCapacity(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.blockedSenders.incrementAndGet();
+		try {
+			synchronized (this) {
+				long remaining;
+				while (!hasCapacity() && !this.closed && (remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0) {
+					wait(remaining);
+				}
+			}
+		} finally {
+			this.blockedSenders.decrementAndGet();
+		}
+
+		return hasCapacity();
+	}
+
+	/**
+	 * Returns a future which is completed when the queues have capacity
+	 * 
+	 * @return
+	 */
+	public CompletableFuture<Void> capacityFuture() {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		if (hasCapacity()) {
+			future.complete(null);
+			return future;
+		}
+
+		this.capacityWaiters.add(future);
+		if (hasCapacity() || this.closed) {
+			signalCapacity();
+		}
+		return future;
+	}
+
+	// ---
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		if (msg instanceof MessageWrapper || msg instanceof EncodedMessage) {
+			Priority priority = msg instanceof MessageWrapper ? ((MessageWrapper) msg).getPriorityOrDefault() : ((EncodedMessage) msg).getPriority();
+			if (this.overflowPolicy == OverflowPolicy.DROP_OLDEST && priority != Priority.HIGH && !hasCapacity()) {
+				dropOldest();
+			}
+
+			this.lanes.get(priority.ordinal()).add(new PendingWrite(msg, promise));
+			this.queuedCount.incrementAndGet();
+		} else {
+			ctx.write(msg, promise);
+		}
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		drain(ctx);
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		if (this.flowControl != null) {
+			ctx.channel().attr(FlowControl.KEY).set(this.flowControl);
+		}
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (this.flowControl != null && msg instanceof MessageWrapper) {
+			MessageWrapper messageWrapper = (MessageWrapper) msg;
+			if (messageWrapper.getCredit() != null) {
+				this.flowControl.onCreditGranted(messageWrapper.getCredit());
+				ctx.writeAndFlush(MessageWrapper.createCreditEcho(messageWrapper.getCreditSeq()));
+				drain(ctx);
+				return;
+			}
+
+			if (messageWrapper.getCreditEcho() != null) {
+				this.flowControl.onCreditEcho(messageWrapper.getCreditEcho());
+				return;
+			}
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isWritable()) {
+			drain(ctx);
+		}
+
+		super.channelWritabilityChanged(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		discardAll(new ClosedChannelException());
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		discardAll(new ClosedChannelException());
+	}
+
+	// ---
+
+	private void drain(ChannelHandlerContext ctx) {
+		Queue<PendingWrite> highLane = this.lanes.get(Priority.HIGH.ordinal());
+		while (!highLane.isEmpty()) {
+			writePending(ctx, highLane.poll());
+		}
+
+		boolean progressed = true;
+		while (progressed && this.queuedCount.get() > 0 && ctx.channel().isWritable()) {
+			progressed = false;
+			for (int i = Priority.HIGH.ordinal() + 1; i < this.lanes.size(); i++) {
+				Queue<PendingWrite> lane = this.lanes.get(i);
+				for (int n = 0; n < PRIORITIES[i].getWeight() && !lane.isEmpty() && tryConsumeCredit(lane.peek()); n++) {
+					writePending(ctx, lane.poll());
+					progressed = true;
+				}
+			}
+		}
+
+		ctx.flush();
+
+		if (hasCapacity()) {
+			signalCapacity();
+		}
+	}
+
+	private boolean tryConsumeCredit(PendingWrite pendingWrite) {
+		if (this.flowControl == null) {
+			return true;
+		}
+
+		Object msg = pendingWrite.msg;
+		boolean flowControlled = msg instanceof MessageWrapper ? FlowControl.isSubjectToFlowControl((MessageWrapper) msg) : msg instanceof EncodedMessage && ((EncodedMessage) msg).isFlowControlled();
+		if (!flowControlled) {
+			return true;
+		}
+
+		return this.flowControl.tryConsumeSendCredit();
+	}
+
+	private void writePending(ChannelHandlerContext ctx, PendingWrite pendingWrite) {
+		this.queuedCount.decrementAndGet();
+		Object msg = pendingWrite.msg instanceof EncodedMessage ? ((EncodedMessage) pendingWrite.msg).content() : pendingWrite.msg;
+		ctx.write(msg, pendingWrite.promise);
+	}
+
+	private void dropOldest() {
+		for (int i = this.lanes.size() - 1; i > Priority.HIGH.ordinal(); i--) {
+			PendingWrite pendingWrite = this.lanes.get(i).poll();
+			if (pendingWrite != null) {
+				this.queuedCount.decrementAndGet();
+				ReferenceCountUtil.release(pendingWrite.msg);
+				pendingWrite.promise.tryFailure(new IllegalStateException("Message was dropped because outbound queue of the peer is full"));
+				return;
+			}
+		}
+	}
+
+	private void discardAll(Throwable cause) {
+		this.closed = true;
+		for (Queue<PendingWrite> lane : this.lanes) {
+			PendingWrite pendingWrite;
+			while ((pendingWrite = lane.poll()) != null) {
+				this.queuedCount.decrementAndGet();
+				ReferenceCountUtil.release(pendingWrite.msg);
+				pendingWrite.promise.tryFailure(cause);
+			}
+		}
+		signalCapacity();
+	}
+
+	private void signalCapacity() {
+		if (this.blockedSenders.get() > 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+
+		CompletableFuture<Void> waiter;
+		while ((hasCapacity() || this.closed) && (waiter = this.capacityWaiters.poll()) != null) {
+			if (this.closed) {
+				waiter.completeExceptionally(new ClosedChannelException());
+			} else {
+				waiter.complete(null);
+			}
+		}
+	}
+
+	// ---
+
+	private static final class PendingWrite {
+
+		private final Object msg;
+		private final ChannelPromise promise;
+
+		private PendingWrite(Object msg, ChannelPromise promise) {
+			this.msg = msg;
+			this.promise = promise;
+		}
+	}
+}
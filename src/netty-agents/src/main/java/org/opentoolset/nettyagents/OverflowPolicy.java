@@ -0,0 +1,32 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines what happens to a message or response sent to a peer whose outbound queue is full, ie. because the peer is slower than the sender.<br />
+ * High priority messages, control frames (acknowledgements, credits, heartbeats) and overload responses of requests rejected by rate limits are never subject to this policy. Multicast messages skip peers whose queues are full instead.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Sender waits until the queue has capacity, or the channel wait timeout elapses. Sends on an event loop can't wait, so they behave as {@link #FUTURE}.
+	 */
+	BLOCK,
+
+	/**
+	 * Send fails immediately
+	 */
+	FAIL_FAST,
+
+	/**
+	 * Message is queued and the oldest queued message with the lowest priority is dropped
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Send returns immediately and the message is written when the queue has capacity again
+	 */
+	FUTURE;
+}
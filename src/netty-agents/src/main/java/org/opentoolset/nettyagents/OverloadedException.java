@@ -0,0 +1,29 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Thrown by request methods when the peer rejected the request because it is overloaded. Callers should back off before retrying.
+ */
+public class OverloadedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterMillis;
+
+	public OverloadedException(long retryAfterMillis) {
+		super(String.format("Request was rejected because the peer is overloaded, retry after %d ms", retryAfterMillis));
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * Returns the delay suggested by the peer before retrying the request
+	 * 
+	 * @return
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
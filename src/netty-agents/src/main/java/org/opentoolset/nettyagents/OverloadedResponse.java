@@ -0,0 +1,31 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Response sent instead of the actual response when a request is rejected by admission control or rate limits of the peer because it is overloaded.
+ */
+public class OverloadedResponse extends AbstractMessage {
+
+	private long retryAfterMillis;
+
+	public OverloadedResponse() {
+		// Required for deserialization
+	}
+
+	public OverloadedResponse(long retryAfterMillis) {
+		this();
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * Returns suggested delay before retrying the request
+	 * 
+	 * @return
+	 */
+	public long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+}
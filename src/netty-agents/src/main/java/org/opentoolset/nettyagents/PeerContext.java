@@ -5,8 +5,11 @@
 package org.opentoolset.nettyagents;
 
 import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
 
 /**
  * Defines an object containing contextual data about a peer, such as a channel handler context object indicating the socket connection is active; certificate of the peer after TLS handshake completed amd an indicator of whether this peer is trusted or not.
@@ -15,10 +18,20 @@ import io.netty.channel.ChannelHandlerContext;
  */
 public class PeerContext {
 
-	private String id;
+	/**
+	 * Channel attribute holding the context of the peer at the other end of the channel
+	 */
+	public static final AttributeKey<PeerContext> KEY = AttributeKey.valueOf(PeerContext.class, "peer");
+
+	private volatile String id;
 	private ChannelHandlerContext channelHandlerContext;
-	private X509Certificate cert;
+	private volatile X509Certificate cert;
+	private volatile String fingerprint;
 	private boolean trusted = false;
+	private volatile PeerIndex index;
+	private final AtomicInteger pendingRequests = new AtomicInteger();
+	private volatile long roundTripNanos = -1;
+	private volatile Session session;
 
 	// ---
 
@@ -27,6 +40,18 @@ public class PeerContext {
 
 	// ---
 
+	/**
+	 * Returns context of the peer at the other end of the given channel
+	 * 
+	 * @param channel
+	 * @return peer, or null if the channel does not belong to a known peer yet
+	 */
+	public static PeerContext of(Channel channel) {
+		return channel != null ? channel.attr(KEY).get() : null;
+	}
+
+	// ---
+
 	/**
 	 * Reutns the ID of this peer for custom usage
 	 * 
@@ -54,6 +79,15 @@ public class PeerContext {
 		return cert;
 	}
 
+	/**
+	 * Returns fingerprint of the certificate of the peer as hex string
+	 * 
+	 * @return fingerprint, or null if the certificate is not known
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
 	/**
 	 * Returns an indicator of whether this peer is trusted or not
 	 * 
@@ -63,10 +97,43 @@ public class PeerContext {
 		return trusted;
 	}
 
+	/**
+	 * Returns number of requests sent to this peer which are waiting for a response
+	 * 
+	 * @return
+	 */
+	public int getPendingRequests() {
+		return pendingRequests.get();
+	}
+
+	/**
+	 * Returns smoothed round trip time to this peer measured by heartbeats (see {@link HeartbeatHandler})
+	 * 
+	 * @return round trip time in nanoseconds, or -1 if not measured yet
+	 */
+	public long getRoundTripNanos() {
+		return roundTripNanos;
+	}
+
+	/**
+	 * Returns the session of requests and messages sent to this peer, which are resent after reconnecting (see {@link Session})
+	 * 
+	 * @return session, or null if session resumption is not enabled
+	 */
+	public Session getSession() {
+		return session;
+	}
+
 	// ---
 
 	public void setId(String id) {
+		String oldId = this.id;
 		this.id = id;
+
+		PeerIndex index = this.index;
+		if (index != null) {
+			index.onIdChanged(this, oldId, id);
+		}
 	}
 
 	public void setChannelHandlerContext(ChannelHandlerContext channelHandlerContext) {
@@ -74,10 +141,38 @@ public class PeerContext {
 	}
 
 	public void setCert(X509Certificate cert) {
+		String oldFingerprint = this.fingerprint;
 		this.cert = cert;
+		this.fingerprint = cert != null ? Utils.getFingerprintAsHex(cert) : null;
+
+		PeerIndex index = this.index;
+		if (index != null) {
+			index.onFingerprintChanged(this, oldFingerprint, this.fingerprint);
+		}
 	}
 
 	public void setTrusted(boolean trusted) {
 		this.trusted = trusted;
 	}
+
+	public void setSession(Session session) {
+		this.session = session;
+	}
+
+	void setIndex(PeerIndex index) {
+		this.index = index;
+	}
+
+	void onRequestSent() {
+		this.pendingRequests.incrementAndGet();
+	}
+
+	void onRequestCompleted() {
+		this.pendingRequests.decrementAndGet();
+	}
+
+	void onRoundTrip(long nanos) {
+		long roundTripNanos = this.roundTripNanos;
+		this.roundTripNanos = roundTripNanos < 0 ? nanos : roundTripNanos + (nanos - roundTripNanos) / 8;
+	}
 }
@@ -0,0 +1,100 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indexes connected peers by their ID and certificate fingerprint for constant-time lookups.<br />
+ * A peer added to the index keeps it up to date when its ID or certificate changes.
+ */
+public class PeerIndex {
+
+	private final Map<String, PeerContext> peersById = new ConcurrentHashMap<>();
+
+	private final Map<String, PeerContext> peersByFingerprint = new ConcurrentHashMap<>();
+
+	private volatile Listener listener;
+
+	// ---
+
+	/**
+	 * Returns the peer with the given ID
+	 * 
+	 * @param id
+	 * @return peer, or null if there is no connected peer with this ID
+	 */
+	public PeerContext getById(String id) {
+		return id != null ? this.peersById.get(id) : null;
+	}
+
+	/**
+	 * Returns the peer with the given certificate fingerprint (see {@link Utils#getFingerprintAsHex})
+	 * 
+	 * @param fingerprint
+	 * @return peer, or null if there is no connected peer with this fingerprint
+	 */
+	public PeerContext getByFingerprint(String fingerprint) {
+		return fingerprint != null ? this.peersByFingerprint.get(fingerprint) : null;
+	}
+
+	/**
+	 * Sets a listener which is notified when peer IDs are added to or removed from the index
+	 * 
+	 * @param listener
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public void add(PeerContext peer) {
+		peer.setIndex(this);
+		reindex(peer, null, peer.getId(), null, peer.getFingerprint());
+	}
+
+	public void remove(PeerContext peer) {
+		peer.setIndex(null);
+		reindex(peer, peer.getId(), null, peer.getFingerprint(), null);
+	}
+
+	// ---
+
+	void onIdChanged(PeerContext peer, String oldId, String newId) {
+		reindex(peer, oldId, newId, null, null);
+	}
+
+	void onFingerprintChanged(PeerContext peer, String oldFingerprint, String newFingerprint) {
+		reindex(peer, null, null, oldFingerprint, newFingerprint);
+	}
+
+	private void reindex(PeerContext peer, String oldId, String newId, String oldFingerprint, String newFingerprint) {
+		Listener listener = this.listener;
+		if (oldId != null && this.peersById.remove(oldId, peer) && listener != null) {
+			listener.onIdRemoved(oldId, peer);
+		}
+		if (newId != null) {
+			this.peersById.put(newId, peer);
+			if (listener != null) {
+				listener.onIdAdded(newId, peer);
+			}
+		}
+		if (oldFingerprint != null) {
+			this.peersByFingerprint.remove(oldFingerprint, peer);
+		}
+		if (newFingerprint != null) {
+			this.peersByFingerprint.put(newFingerprint, peer);
+		}
+	}
+
+	// ---
+
+	public interface Listener {
+
+		void onIdAdded(String id, PeerContext peer);
+
+		void onIdRemoved(String id, PeerContext peer);
+	}
+}
@@ -0,0 +1,36 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines priority lanes of messages sharing a single connection.<br />
+ * Messages with high priority (ie. heartbeats, trust or control messages) are never queued behind others; normal and low priority messages share the remaining capacity of the channel by their weights.
+ */
+public enum Priority {
+
+	HIGH(Integer.MAX_VALUE),
+	NORMAL(4),
+	LOW(1);
+
+	private final int weight;
+
+	private Priority(int weight) {
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the maximum number of messages written from this lane in one round of the outbound scheduler
+	 * 
+	 * @return
+	 */
+	public int getWeight() {
+		return weight;
+	}
+
+	public static Priority of(Class<?> classOfMessage) {
+		MessagePriority messagePriority = classOfMessage != null ? classOfMessage.getAnnotation(MessagePriority.class) : null;
+		return messagePriority != null ? messagePriority.value() : NORMAL;
+	}
+}
@@ -0,0 +1,52 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines limits of inbound traffic in messages and bytes per second. A limit of zero means unlimited. Bursts of up to one second of traffic are allowed.
+ */
+public class RateLimit {
+
+	public enum Action {
+
+		/**
+		 * Stops reading from the channel until the peer is within its limits again, so the backpressure is propagated to the peer over TCP
+		 */
+		PAUSE_READS,
+
+		/**
+		 * Drops messages exceeding the limits. Requests are answered with an {@link OverloadedResponse}, and senders of delivery-tracked messages are notified by a negative acknowledgement
+		 */
+		REJECT;
+	}
+
+	private final long messagesPerSec;
+	private final long bytesPerSec;
+
+	// ---
+
+	public RateLimit(long messagesPerSec, long bytesPerSec) {
+		this.messagesPerSec = messagesPerSec;
+		this.bytesPerSec = bytesPerSec;
+	}
+
+	public long getMessagesPerSec() {
+		return messagesPerSec;
+	}
+
+	public long getBytesPerSec() {
+		return bytesPerSec;
+	}
+
+	// ---
+
+	public TokenBucket newMessageBucket() {
+		return this.messagesPerSec > 0 ? new TokenBucket(this.messagesPerSec, this.messagesPerSec) : null;
+	}
+
+	public TokenBucket newByteBucket() {
+		return this.bytesPerSec > 0 ? new TokenBucket(this.bytesPerSec, this.bytesPerSec) : null;
+	}
+}
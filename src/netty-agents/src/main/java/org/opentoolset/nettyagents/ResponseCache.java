@@ -0,0 +1,221 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Response cache of an agent for request types marked as {@link Cacheable}.<br />
+ * Entries are keyed by request type and serialized request content, expire after their TTL and are evicted in least-recently-used order when the size budget is exceeded.
+ */
+public class ResponseCache {
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long maxBytes = Constants.DEFAULT_RESPONSE_CACHE_MAX_BYTES;
+
+	private long currentBytes = 0;
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	// ---
+
+	/**
+	 * Invalidates cached response of the given request if exists
+	 * 
+	 * @param request
+	 */
+	public void invalidate(AbstractRequest<?> request) {
+		String serializedRequest = Context.getSerializer().serialize(request);
+		synchronized (this) {
+			remove(new Key(request.getClass(), serializedRequest));
+		}
+	}
+
+	/**
+	 * Invalidates all cached responses of the given request type
+	 * 
+	 * @param classOfRequest
+	 */
+	public synchronized void invalidate(Class<? extends AbstractRequest<?>> classOfRequest) {
+		removeIf(entry -> entry.key.classOfRequest.equals(classOfRequest));
+	}
+
+	/**
+	 * Invalidates all cached responses
+	 */
+	public synchronized void invalidateAll() {
+		this.entries.clear();
+		this.currentBytes = 0;
+	}
+
+	// ---
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns estimated number of bytes held by cached entries
+	 * 
+	 * @return
+	 */
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	// ---
+
+	public synchronized ResponseCache setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evictIfNeeded();
+		return this;
+	}
+
+	// ---
+
+	MessageWrapper get(Class<? extends AbstractMessage> classOfRequest, String serializedRequest) {
+		Key key = new Key(classOfRequest, serializedRequest);
+		synchronized (this) {
+			Entry entry = this.entries.get(key);
+			if (entry != null) {
+				if (entry.expiresAt - System.nanoTime() > 0) {
+					this.hitCount.incrementAndGet();
+					return entry.responseWrapper;
+				}
+
+				remove(key);
+			}
+		}
+
+		this.missCount.incrementAndGet();
+		return null;
+	}
+
+	void put(Class<? extends AbstractMessage> classOfRequest, String serializedRequest, MessageWrapper responseWrapper, int ttlSec) {
+		if (serializedRequest == null || responseWrapper.getSerializedMessage() == null || ttlSec <= 0) {
+			return;
+		}
+
+		Key key = new Key(classOfRequest, serializedRequest);
+		long size = (long) (serializedRequest.length() + responseWrapper.getSerializedMessage().length()) * Character.BYTES;
+		long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSec);
+
+		synchronized (this) {
+			if (size > this.maxBytes) {
+				return;
+			}
+
+			remove(key);
+			this.entries.put(key, new Entry(key, responseWrapper, size, expiresAt));
+			this.currentBytes += size;
+			evictIfNeeded();
+		}
+	}
+
+	// ---
+
+	private void remove(Key key) {
+		Entry entry = this.entries.remove(key);
+		if (entry != null) {
+			this.currentBytes -= entry.size;
+		}
+	}
+
+	private void removeIf(Predicate<Entry> predicate) {
+		for (Iterator<Entry> iterator = this.entries.values().iterator(); iterator.hasNext();) {
+			Entry entry = iterator.next();
+			if (predicate.test(entry)) {
+				iterator.remove();
+				this.currentBytes -= entry.size;
+			}
+		}
+	}
+
+	private void evictIfNeeded() {
+		Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+		while (this.currentBytes > this.maxBytes && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			iterator.remove();
+			this.currentBytes -= entry.size;
+			this.evictionCount.incrementAndGet();
+		}
+	}
+
+	// ---
+
+	private static final class Key {
+
+		private final Class<? extends AbstractMessage> classOfRequest;
+		private final String serializedRequest;
+		private final int hash;
+
+		private Key(Class<? extends AbstractMessage> classOfRequest, String serializedRequest) {
+			this.classOfRequest = classOfRequest;
+			this.serializedRequest = serializedRequest;
+			this.hash = Objects.hash(classOfRequest, serializedRequest);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+			return this.classOfRequest.equals(other.classOfRequest) && this.serializedRequest.equals(other.serializedRequest);
+		}
+	}
+
+	private static final class Entry {
+
+		private final Key key;
+		private final MessageWrapper responseWrapper;
+		private final long size;
+		private final long expiresAt;
+
+		private Entry(Key key, MessageWrapper responseWrapper, long size, long expiresAt) {
+			this.key = key;
+			this.responseWrapper = responseWrapper;
+			this.size = size;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Defines a message which supplies a routing key for inbound dispatching.<br />
+ * When handlers are offloaded from the event loop, all messages with the same routing key are handled in order on the same dispatcher lane, while messages with different keys are handled in parallel.
+ */
+public interface Routable {
+
+	/**
+	 * Returns the key which this message is ordered by, ie. ID of a device whose state updates must be handled in order
+	 * 
+	 * @return
+	 */
+	String getRoutingKey();
+}
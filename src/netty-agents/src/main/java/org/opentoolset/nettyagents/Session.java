@@ -0,0 +1,176 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.util.AttributeKey;
+
+/**
+ * Defines a session of a client which survives reconnects, identified by a token the client presents on each new connection (see {@link SessionMessage}):
+ * <ul>
+ * <li>On the client side, requests waiting for a response and messages waiting for an acknowledgement are numbered and kept in the session, so they can be resent after reconnecting. This includes the ones issued while disconnected, which are sent for the first time then,</li>
+ * <li>On the server side, numbers of recently received requests and messages are kept with the responses, so resent ones are not handled again and their responses are written to the new connection instead.</li>
+ * </ul>
+ */
+public class Session {
+
+	/**
+	 * Channel attribute holding the session which the channel is attached to on the server side
+	 */
+	public static final AttributeKey<Session> KEY = AttributeKey.valueOf(Session.class, "session");
+
+	private final String token;
+
+	private final AtomicLong lastSeq = new AtomicLong();
+
+	private final Map<Long, Pending> pendings = new ConcurrentSkipListMap<>();
+
+	private final Map<Long, CompletableFuture<MessageWrapper>> received;
+
+	private final AtomicInteger attachedChannels = new AtomicInteger();
+
+	private volatile long detachedAt = System.nanoTime();
+
+	private volatile String fingerprint;
+
+	// ---
+
+	public Session(String token) {
+		this.token = token;
+		this.received = new LinkedHashMap<Long, CompletableFuture<MessageWrapper>>() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CompletableFuture<MessageWrapper>> eldest) {
+				return size() > Constants.DEFAULT_SESSION_MAX_RECEIVED;
+			}
+		};
+	}
+
+	// ---
+
+	public String getToken() {
+		return token;
+	}
+
+	// --- Client side:
+
+	/**
+	 * Numbers the request or tracked message and keeps it until {@link #removePending} is called
+	 * 
+	 * @param messageWrapper
+	 * @param peerContext
+	 *          Connection which the message is sent through and resent through after reconnecting
+	 */
+	void addPending(MessageWrapper messageWrapper, PeerContext peerContext) {
+		long seq = this.lastSeq.incrementAndGet();
+		messageWrapper.setSessionSeq(seq);
+		this.pendings.put(seq, new Pending(messageWrapper, peerContext));
+	}
+
+	void removePending(MessageWrapper messageWrapper) {
+		Long seq = messageWrapper.getSessionSeq();
+		if (seq != null) {
+			this.pendings.remove(seq);
+		}
+	}
+
+	/**
+	 * Returns the pending requests and messages sent through the connection, in the order they were sent
+	 * 
+	 * @param peerContext
+	 * @return
+	 */
+	List<MessageWrapper> getPendings(PeerContext peerContext) {
+		List<MessageWrapper> result = new ArrayList<>();
+		for (Pending pending : this.pendings.values()) {
+			if (pending.peerContext == peerContext) {
+				result.add(pending.messageWrapper);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fails the pending messages waiting for an acknowledgement, eg. when the client shuts down
+	 */
+	public void close() {
+		for (Pending pending : this.pendings.values()) {
+			CompletableFuture<Void> deliveryFuture = pending.messageWrapper.deliveryFuture();
+			if (deliveryFuture != null) {
+				deliveryFuture.completeExceptionally(new ClosedChannelException());
+			}
+		}
+		this.pendings.clear();
+	}
+
+	// --- Server side:
+
+	/**
+	 * Records a received request or message
+	 * 
+	 * @param seq
+	 * @param response
+	 *          Future of the response, completed with null for messages
+	 * @return future of the response of the earlier one if it was received before, or null if not
+	 */
+	synchronized CompletableFuture<MessageWrapper> onReceived(long seq, CompletableFuture<MessageWrapper> response) {
+		return this.received.putIfAbsent(seq, response);
+	}
+
+	synchronized void forget(long seq) {
+		this.received.remove(seq);
+	}
+
+	/**
+	 * Attaches a channel of the peer with the given certificate fingerprint to this session
+	 * 
+	 * @param fingerprint
+	 *          or null if TLS is disabled
+	 * @return false if the session belongs to another peer
+	 */
+	synchronized boolean attach(String fingerprint) {
+		if (this.fingerprint != null && !this.fingerprint.equals(fingerprint)) {
+			return false;
+		}
+
+		this.fingerprint = fingerprint;
+		this.attachedChannels.incrementAndGet();
+		return true;
+	}
+
+	void detach() {
+		if (this.attachedChannels.decrementAndGet() == 0) {
+			this.detachedAt = System.nanoTime();
+		}
+	}
+
+	boolean isExpired(long timeoutNanos) {
+		return this.attachedChannels.get() == 0 && System.nanoTime() - this.detachedAt > timeoutNanos;
+	}
+
+	// ---
+
+	private static final class Pending {
+
+		private final MessageWrapper messageWrapper;
+		private final PeerContext peerContext;
+
+		private Pending(MessageWrapper messageWrapper, PeerContext peerContext) {
+			this.messageWrapper = messageWrapper;
+			this.peerContext = peerContext;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Intercepts session messages of a peer (see {@link SessionMessage}) and attaches the channel to the session, so requests and messages resent by the peer after reconnecting are deduplicated by {@link InboundMessageHandler}. As
+ * subscriptions, sessions are only accepted after the peer is known (and trusted if TLS is enabled).
+ */
+public class SessionHandler extends ChannelInboundHandlerAdapter {
+
+	private final SessionRegistry sessionRegistry;
+
+	private final boolean tlsEnabled;
+
+	// ---
+
+	public SessionHandler(SessionRegistry sessionRegistry, boolean tlsEnabled) {
+		this.sessionRegistry = sessionRegistry;
+		this.tlsEnabled = tlsEnabled;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof MessageWrapper && ((MessageWrapper) msg).getClassOfMessage() == SessionMessage.class) {
+			SessionMessage sessionMessage = ((MessageWrapper) msg).deserializeMessage(SessionMessage.class);
+			PeerContext peer = PeerContext.of(ctx.channel());
+			if (peer != null && (!this.tlsEnabled || peer.isTrusted()) && sessionMessage != null && sessionMessage.getToken() != null && ctx.channel().attr(Session.KEY).get() == null) {
+				Session session = this.sessionRegistry.attach(sessionMessage.getToken(), peer);
+				if (session != null) {
+					ctx.channel().attr(Session.KEY).set(session);
+				}
+			}
+			FlowControl.onConsumed(ctx, (MessageWrapper) msg);
+			return;
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		Session session = ctx.channel().attr(Session.KEY).getAndSet(null);
+		if (session != null) {
+			this.sessionRegistry.detach(session);
+		}
+		super.channelInactive(ctx);
+	}
+}
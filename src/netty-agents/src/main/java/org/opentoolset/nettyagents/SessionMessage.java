@@ -0,0 +1,27 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Control message sent by a client as the first message of each connection to attach the connection to its session (see {@link Session}).
+ */
+@MessagePriority(Priority.HIGH)
+public class SessionMessage extends AbstractMessage {
+
+	private String token;
+
+	public SessionMessage() {
+		// Required for deserialization
+	}
+
+	public SessionMessage(String token) {
+		this();
+		this.token = token;
+	}
+
+	public String getToken() {
+		return token;
+	}
+}
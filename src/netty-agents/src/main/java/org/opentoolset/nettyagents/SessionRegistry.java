@@ -0,0 +1,54 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps sessions of clients on the server side (see {@link Session}). A session expires when no channel has been attached to it for the session timeout.
+ */
+public class SessionRegistry {
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+	private final long timeoutNanos;
+
+	// ---
+
+	public SessionRegistry(int timeoutSec) {
+		this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSec);
+	}
+
+	// ---
+
+	/**
+	 * Attaches a channel of the peer to the session with the given token, creating the session if it doesn't exist
+	 * 
+	 * @param token
+	 * @param peer
+	 * @return session, or null if the session belongs to another peer
+	 */
+	public Session attach(String token, PeerContext peer) {
+		Session session = this.sessions.computeIfAbsent(token, Session::new);
+		return session.attach(peer.getFingerprint()) ? session : null;
+	}
+
+	public void detach(Session session) {
+		session.detach();
+	}
+
+	/**
+	 * Removes expired sessions
+	 */
+	public void expire() {
+		this.sessions.values().removeIf(session -> session.isExpired(this.timeoutNanos));
+	}
+
+	public int size() {
+		return this.sessions.size();
+	}
+}
@@ -0,0 +1,27 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Control message sent by a client to subscribe to a topic published by the server (see {@link TopicIndex} for topic patterns).
+ */
+@MessagePriority(Priority.HIGH)
+public class SubscribeMessage extends AbstractMessage {
+
+	private String topic;
+
+	public SubscribeMessage() {
+		// Required for deserialization
+	}
+
+	public SubscribeMessage(String topic) {
+		this();
+		this.topic = topic;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+}
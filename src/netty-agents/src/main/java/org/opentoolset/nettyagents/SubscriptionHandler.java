@@ -0,0 +1,54 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Intercepts subscription control messages of a peer (see {@link SubscribeMessage} and {@link UnsubscribeMessage}) and applies them to the topic index. The peer is resolved from the channel, so subscriptions are only accepted after the
+ * peer is known (and trusted if TLS is enabled).
+ */
+public class SubscriptionHandler extends ChannelInboundHandlerAdapter {
+
+	private final TopicIndex topicIndex;
+
+	private final boolean tlsEnabled;
+
+	// ---
+
+	public SubscriptionHandler(TopicIndex topicIndex, boolean tlsEnabled) {
+		this.topicIndex = topicIndex;
+		this.tlsEnabled = tlsEnabled;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (msg instanceof MessageWrapper) {
+			MessageWrapper messageWrapper = (MessageWrapper) msg;
+			Class<?> classOfMessage = messageWrapper.getClassOfMessage();
+			if (classOfMessage == SubscribeMessage.class || classOfMessage == UnsubscribeMessage.class) {
+				PeerContext peer = PeerContext.of(ctx.channel());
+				if (peer != null && (!this.tlsEnabled || peer.isTrusted())) {
+					if (classOfMessage == SubscribeMessage.class) {
+						SubscribeMessage subscribeMessage = messageWrapper.deserializeMessage(SubscribeMessage.class);
+						if (subscribeMessage != null && subscribeMessage.getTopic() != null) {
+							this.topicIndex.subscribe(subscribeMessage.getTopic(), peer);
+						}
+					} else {
+						UnsubscribeMessage unsubscribeMessage = messageWrapper.deserializeMessage(UnsubscribeMessage.class);
+						if (unsubscribeMessage != null && unsubscribeMessage.getTopic() != null) {
+							this.topicIndex.unsubscribe(unsubscribeMessage.getTopic(), peer);
+						}
+					}
+				}
+				FlowControl.onConsumed(ctx, messageWrapper);
+				return;
+			}
+		}
+
+		ctx.fireChannelRead(msg);
+	}
+}
@@ -0,0 +1,80 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe token bucket which is refilled continuously at a fixed rate up to its capacity.
+ */
+public class TokenBucket {
+
+	private final double ratePerNano;
+	private final double capacity;
+
+	private double tokens;
+	private long lastRefillNanos = System.nanoTime();
+
+	// ---
+
+	/**
+	 * @param ratePerSec
+	 *          Number of tokens added per second
+	 * @param capacity
+	 *          Maximum number of tokens, ie. allowed burst size
+	 */
+	public TokenBucket(double ratePerSec, double capacity) {
+		this.ratePerNano = ratePerSec / TimeUnit.SECONDS.toNanos(1);
+		this.capacity = capacity;
+		this.tokens = capacity;
+	}
+
+	/**
+	 * Takes the given number of tokens if available
+	 * 
+	 * @param amount
+	 * @return true if tokens were taken
+	 */
+	public synchronized boolean tryConsume(double amount) {
+		refill();
+		if (this.tokens < amount) {
+			return false;
+		}
+
+		this.tokens -= amount;
+		return true;
+	}
+
+	/**
+	 * Takes the given number of tokens even if they are not available yet, so the bucket may go into debt
+	 * 
+	 * @param amount
+	 * @return nanoseconds to wait until the bucket is out of debt, or zero
+	 */
+	public synchronized long consume(double amount) {
+		refill();
+		this.tokens -= amount;
+		return this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens / this.ratePerNano);
+	}
+
+	/**
+	 * Returns the time until the given number of tokens are available
+	 * 
+	 * @param amount
+	 * @return nanoseconds to wait, or zero if available
+	 */
+	public synchronized long nanosUntilAvailable(double amount) {
+		refill();
+		return this.tokens >= amount ? 0 : (long) Math.ceil((amount - this.tokens) / this.ratePerNano);
+	}
+
+	// ---
+
+	private void refill() {
+		long now = System.nanoTime();
+		this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefillNanos) * this.ratePerNano);
+		this.lastRefillNanos = now;
+	}
+}
@@ -0,0 +1,131 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Indexes subscribers of topics.<br />
+ * Topics are dot-separated words such as "config.network.dns". A subscription pattern may contain wildcards:
+ * <ul>
+ * <li>"*" matches exactly one word, eg. "config.*.dns",</li>
+ * <li>"#" as the last word matches zero or more words, eg. "config.#".</li>
+ * </ul>
+ * Subscribers of exact topics are found in constant time; wildcard patterns are matched against published topics.
+ */
+public class TopicIndex {
+
+	private static final Pattern SEPARATOR = Pattern.compile("\\.");
+	private static final String ONE_WORD = "*";
+	private static final String ANY_WORDS = "#";
+
+	private final Map<String, Set<PeerContext>> exactSubscribers = new ConcurrentHashMap<>();
+
+	private final Map<String, Set<PeerContext>> patternSubscribers = new ConcurrentHashMap<>();
+
+	private final Map<PeerContext, Set<String>> subscriptionsOfPeers = new ConcurrentHashMap<>();
+
+	// ---
+
+	public void subscribe(String pattern, PeerContext peer) {
+		Map<String, Set<PeerContext>> subscribers = isPattern(pattern) ? this.patternSubscribers : this.exactSubscribers;
+		subscribers.compute(pattern, (key, peers) -> add(peers, peer));
+		this.subscriptionsOfPeers.compute(peer, (key, patterns) -> add(patterns, pattern));
+	}
+
+	public void unsubscribe(String pattern, PeerContext peer) {
+		Map<String, Set<PeerContext>> subscribers = isPattern(pattern) ? this.patternSubscribers : this.exactSubscribers;
+		subscribers.computeIfPresent(pattern, (key, peers) -> peers.remove(peer) && peers.isEmpty() ? null : peers);
+		this.subscriptionsOfPeers.computeIfPresent(peer, (key, patterns) -> patterns.remove(pattern) && patterns.isEmpty() ? null : patterns);
+	}
+
+	/**
+	 * Removes all subscriptions of the peer
+	 * 
+	 * @param peer
+	 */
+	public void unsubscribeAll(PeerContext peer) {
+		Set<String> patterns = this.subscriptionsOfPeers.remove(peer);
+		if (patterns != null) {
+			for (String pattern : patterns) {
+				Map<String, Set<PeerContext>> subscribers = isPattern(pattern) ? this.patternSubscribers : this.exactSubscribers;
+				subscribers.computeIfPresent(pattern, (key, peers) -> peers.remove(peer) && peers.isEmpty() ? null : peers);
+			}
+		}
+	}
+
+	/**
+	 * Returns the peers subscribed to the topic either exactly or by a matching pattern
+	 * 
+	 * @param topic
+	 * @return
+	 */
+	public Collection<PeerContext> getSubscribers(String topic) {
+		Set<PeerContext> exact = this.exactSubscribers.get(topic);
+		if (this.patternSubscribers.isEmpty()) {
+			return exact != null ? Collections.unmodifiableSet(exact) : Collections.emptySet();
+		}
+
+		Set<PeerContext> result = exact != null ? new HashSet<>(exact) : new HashSet<>();
+		String[] words = words(topic);
+		for (Map.Entry<String, Set<PeerContext>> entry : this.patternSubscribers.entrySet()) {
+			if (matches(words(entry.getKey()), words)) {
+				result.addAll(entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the patterns the peer is subscribed to
+	 * 
+	 * @param peer
+	 * @return
+	 */
+	public Set<String> getSubscriptions(PeerContext peer) {
+		Set<String> patterns = this.subscriptionsOfPeers.get(peer);
+		return patterns != null ? Collections.unmodifiableSet(patterns) : Collections.emptySet();
+	}
+
+	// ---
+
+	private static <T> Set<T> add(Set<T> set, T element) {
+		set = set != null ? set : ConcurrentHashMap.newKeySet();
+		set.add(element);
+		return set;
+	}
+
+	private static String[] words(String topic) {
+		return SEPARATOR.split(topic, -1);
+	}
+
+	private static boolean isPattern(String pattern) {
+		for (String word : words(pattern)) {
+			if (ONE_WORD.equals(word) || ANY_WORDS.equals(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(String[] patternWords, String[] topicWords) {
+		for (int i = 0; i < patternWords.length; i++) {
+			String patternWord = patternWords[i];
+			if (ANY_WORDS.equals(patternWord) && i == patternWords.length - 1) {
+				return true;
+			}
+			if (i >= topicWords.length || !(ONE_WORD.equals(patternWord) || patternWord.equals(topicWords[i]))) {
+				return false;
+			}
+		}
+		return patternWords.length == topicWords.length;
+	}
+}
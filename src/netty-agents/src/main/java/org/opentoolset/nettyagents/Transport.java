@@ -0,0 +1,175 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import org.slf4j.Logger;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * Defines socket transports which agents can use.<br />
+ * Native transports are only used when their native library is available; otherwise agents fall back to NIO. The io_uring transport requires the netty-incubator-transport-native-io_uring library on the classpath.
+ */
+public enum Transport {
+
+	/**
+	 * Uses the best available transport: io_uring, epoll or NIO in order
+	 */
+	AUTO,
+	NIO,
+	EPOLL,
+	IO_URING;
+
+	private static Logger logger = Context.getLogger();
+
+	private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+	// ---
+
+	/**
+	 * Resolves the transport which will actually be used for this setting
+	 * 
+	 * @return one of NIO, EPOLL and IO_URING
+	 */
+	public Transport resolve() {
+		switch (this) {
+			case AUTO:
+				return isIOUringAvailable() ? IO_URING : Epoll.isAvailable() ? EPOLL : NIO;
+			case EPOLL:
+				if (Epoll.isAvailable()) {
+					return EPOLL;
+				}
+				logger.warn("Epoll transport is not available, falling back to NIO", Epoll.unavailabilityCause());
+				return NIO;
+			case IO_URING:
+				if (isIOUringAvailable()) {
+					return IO_URING;
+				}
+				logger.warn("io_uring transport is not available, falling back to NIO");
+				return NIO;
+			default:
+				return NIO;
+		}
+	}
+
+	/**
+	 * Creates an event loop group of this (resolved) transport
+	 * 
+	 * @param threads
+	 *          Number of threads, or zero for the default of Netty
+	 * @return
+	 */
+	public EventLoopGroup newEventLoopGroup(int threads) {
+		switch (this) {
+			case EPOLL:
+				return new EpollEventLoopGroup(threads);
+			case IO_URING:
+				return newIOUringInstance("IOUringEventLoopGroup", threads);
+			default:
+				return new NioEventLoopGroup(threads);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public Class<? extends ServerChannel> getServerChannelClass() {
+		switch (this) {
+			case EPOLL:
+				return EpollServerSocketChannel.class;
+			case IO_URING:
+				return (Class<? extends ServerChannel>) loadIOUringClass("IOUringServerSocketChannel");
+			default:
+				return NioServerSocketChannel.class;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public Class<? extends Channel> getChannelClass() {
+		switch (this) {
+			case EPOLL:
+				return EpollSocketChannel.class;
+			case IO_URING:
+				return (Class<? extends Channel>) loadIOUringClass("IOUringSocketChannel");
+			default:
+				return NioSocketChannel.class;
+		}
+	}
+
+	/**
+	 * Applies socket options of the configuration to a client bootstrap. Native-only options are applied only for epoll transport.
+	 * 
+	 * @param bootstrap
+	 * @param config
+	 */
+	public void applyOptions(Bootstrap bootstrap, AbstractAgent.AbstractConfig config) {
+		bootstrap.option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
+		if (this == EPOLL) {
+			bootstrap.option(EpollChannelOption.TCP_QUICKACK, config.isTcpQuickAck());
+			if (config.getBusyPollMicros() > 0) {
+				bootstrap.option(EpollChannelOption.SO_BUSY_POLL, config.getBusyPollMicros());
+			}
+			if (config.getTcpFastOpenQueueLength() > 0) {
+				bootstrap.option(EpollChannelOption.TCP_FASTOPEN_CONNECT, true);
+			}
+		}
+	}
+
+	/**
+	 * Applies socket options of the configuration to a server bootstrap and its child channels. Native-only options are applied only for epoll transport.
+	 * 
+	 * @param bootstrap
+	 * @param config
+	 */
+	public void applyOptions(ServerBootstrap bootstrap, AbstractAgent.AbstractConfig config) {
+		bootstrap.childOption(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
+		if (this == EPOLL) {
+			bootstrap.childOption(EpollChannelOption.TCP_QUICKACK, config.isTcpQuickAck());
+			if (config.getBusyPollMicros() > 0) {
+				bootstrap.childOption(EpollChannelOption.SO_BUSY_POLL, config.getBusyPollMicros());
+			}
+			if (config.getTcpFastOpenQueueLength() > 0) {
+				bootstrap.option(EpollChannelOption.TCP_FASTOPEN, config.getTcpFastOpenQueueLength());
+			}
+		}
+	}
+
+	// ---
+
+	private static boolean isIOUringAvailable() {
+		try {
+			return (Boolean) loadIOUringClass("IOUring").getMethod("isAvailable").invoke(null);
+		} catch (ReflectiveOperationException | IllegalStateException e) {
+			return false;
+		}
+	}
+
+	private static Class<?> loadIOUringClass(String simpleName) {
+		try {
+			return Class.forName(IO_URING_PACKAGE + simpleName);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("io_uring transport is not on the classpath", e);
+		}
+	}
+
+	private static EventLoopGroup newIOUringInstance(String simpleName, int threads) {
+		try {
+			return (EventLoopGroup) loadIOUringClass(simpleName).getConstructor(int.class).newInstance(threads);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.security.cert.X509Certificate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trusted certificates of an agent keyed by fingerprint.<br />
+ * Notifies a listener whenever the certificates change, so that TLS sessions established under the previous trust can be invalidated.
+ */
+final class TrustedCerts extends AbstractMap<String, X509Certificate> {
+
+	private final Map<String, X509Certificate> certs = new ConcurrentHashMap<>();
+
+	private volatile Runnable changeListener;
+
+	// ---
+
+	void setChangeListener(Runnable changeListener) {
+		this.changeListener = changeListener;
+	}
+
+	@Override
+	public X509Certificate get(Object fingerprint) {
+		return this.certs.get(fingerprint);
+	}
+
+	@Override
+	public boolean containsKey(Object fingerprint) {
+		return this.certs.containsKey(fingerprint);
+	}
+
+	@Override
+	public X509Certificate put(String fingerprint, X509Certificate cert) {
+		X509Certificate previous = this.certs.put(fingerprint, cert);
+		if (!Objects.equals(previous, cert)) {
+			onChanged();
+		}
+		return previous;
+	}
+
+	@Override
+	public Set<Entry<String, X509Certificate>> entrySet() {
+		return new AbstractSet<Entry<String, X509Certificate>>() {
+
+			@Override
+			public Iterator<Entry<String, X509Certificate>> iterator() {
+				Iterator<Entry<String, X509Certificate>> iterator = TrustedCerts.this.certs.entrySet().iterator();
+				return new Iterator<Entry<String, X509Certificate>>() {
+
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Entry<String, X509Certificate> next() {
+						return new SimpleImmutableEntry<>(iterator.next());
+					}
+
+					@Override
+					public void remove() {
+						iterator.remove();
+						onChanged();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return TrustedCerts.this.certs.size();
+			}
+		};
+	}
+
+	// ---
+
+	private void onChanged() {
+		Runnable changeListener = this.changeListener;
+		if (changeListener != null) {
+			changeListener.run();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+/**
+ * Control message sent by a client to cancel its subscription to a topic pattern.
+ */
+@MessagePriority(Priority.HIGH)
+public class UnsubscribeMessage extends AbstractMessage {
+
+	private String topic;
+
+	public UnsubscribeMessage() {
+		// Required for deserialization
+	}
+
+	public UnsubscribeMessage(String topic) {
+		this();
+		this.topic = topic;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+}
@@ -5,41 +5,67 @@
 package org.opentoolset.nettyagents.agents;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
-import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-
-import javax.net.ssl.KeyManagerFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opentoolset.nettyagents.AbstractAgent;
 import org.opentoolset.nettyagents.AbstractMessage;
+import org.opentoolset.nettyagents.AgentRuntime;
 import org.opentoolset.nettyagents.AbstractRequest;
+import org.opentoolset.nettyagents.AcknowledgementHandler;
 import org.opentoolset.nettyagents.Constants;
 import org.opentoolset.nettyagents.Context;
+import org.opentoolset.nettyagents.DeliveryMode;
+import org.opentoolset.nettyagents.Endpoint;
+import org.opentoolset.nettyagents.HeartbeatHandler;
 import org.opentoolset.nettyagents.InboundMessageHandler;
+import org.opentoolset.nettyagents.LoadBalancing;
 import org.opentoolset.nettyagents.MessageDecoder;
 import org.opentoolset.nettyagents.MessageEncoder;
+import org.opentoolset.nettyagents.MessageWrapper;
+import org.opentoolset.nettyagents.OutboundJournal;
+import org.opentoolset.nettyagents.OutboundPriorityHandler;
+import org.opentoolset.nettyagents.OverloadedException;
 import org.opentoolset.nettyagents.PeerContext;
+import org.opentoolset.nettyagents.Priority;
+import org.opentoolset.nettyagents.Session;
+import org.opentoolset.nettyagents.SessionMessage;
+import org.opentoolset.nettyagents.SubscribeMessage;
+import org.opentoolset.nettyagents.Transport;
+import org.opentoolset.nettyagents.UnsubscribeMessage;
 import org.opentoolset.nettyagents.Utils;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.Timeout;
 
 /**
  * Client Agent is a type of agent which makes connection attempts to a server-peer, and maintain communication with its peer.
@@ -48,16 +74,31 @@ import io.netty.handler.ssl.SslHandler;
  */
 public class ClientAgent extends AbstractAgent {
 
-	private static final String DEFAULT_IN_MEMORY_KEYSTORE_PW = "";
-
-	private EventLoopGroup workerGroup = new NioEventLoopGroup();
-	private Bootstrap bootstrap = new Bootstrap();
+	private Bootstrap bootstrap;
 
 	private Config config = new Config();
 
 	private PeerContext server = new PeerContext();
 
-	private boolean shutdownRequested = false;
+	private List<PeerContext> connections = Collections.singletonList(this.server);
+
+	private final AtomicInteger nextConnection = new AtomicInteger();
+
+	private List<Endpoint> endpoints = Collections.emptyList();
+
+	private CompletableFuture<Void> initialProbe = CompletableFuture.completedFuture(null);
+
+	private volatile Timeout probeTimeout;
+
+	private Session session;
+
+	private OutboundJournal outboundJournal;
+
+	private Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+
+	private volatile Runnable connectionListener;
+
+	private volatile boolean shutdownRequested = false;
 
 	// ---
 
@@ -73,7 +114,8 @@ public class ClientAgent extends AbstractAgent {
 	}
 
 	/**
-	 * Returns the oject defining the context of the peer-server.
+	 * Returns the oject defining the context of the peer-server.<br />
+	 * If a connection pool is configured, this is the context of the primary connection, which carries subscriptions and the outbound journal.
 	 * 
 	 * @return
 	 */
@@ -81,12 +123,43 @@ public class ClientAgent extends AbstractAgent {
 		return server;
 	}
 
+	/**
+	 * Returns contexts of all pooled connections to the server, starting with the primary connection
+	 * 
+	 * @return
+	 */
+	public List<PeerContext> getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Returns candidate endpoints of the server with their statistics
+	 * 
+	 * @return
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * Sets a listener which is called each time a connection to the server is established.<br />
+	 * It is called like message handlers, ie. on the event loop of the connection unless dispatcher threads are configured, so it shouldn't block.
+	 * 
+	 * @param connectionListener
+	 */
+	public void setConnectionListener(Runnable connectionListener) {
+		this.connectionListener = connectionListener;
+	}
+
 	@Override
 	public void stopPeerIdentificationMode() {
 		super.stopPeerIdentificationMode();
-		if (!this.server.isTrusted()) {
-			this.server.getChannelHandlerContext().close();
-			this.server.setChannelHandlerContext(null);
+		for (PeerContext connection : this.connections) {
+			ChannelHandlerContext channelHandlerContext = connection.getChannelHandlerContext();
+			if (!connection.isTrusted() && channelHandlerContext != null) {
+				channelHandlerContext.close();
+				connection.setChannelHandlerContext(null);
+			}
 		}
 	}
 
@@ -97,29 +170,78 @@ public class ClientAgent extends AbstractAgent {
 		this.shutdownRequested = false;
 
 		buildSSLContextIfEnabled();
+		openOutboundJournalIfEnabled();
 
-		this.bootstrap.group(workerGroup);
-		this.bootstrap.channel(NioSocketChannel.class);
+		AgentRuntime runtime = getRuntime();
+		Transport transport = runtime.getTransport();
+
+		this.bootstrap = new Bootstrap();
+		this.bootstrap.group(runtime.getWorkerGroup());
+		this.bootstrap.channel(transport.getChannelClass());
 		this.bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
-		this.bootstrap.handler(new ClientChannelInitializer());
-		this.bootstrap.remoteAddress(new InetSocketAddress(config.getRemoteHost(), config.getRemotePort()));
+		this.bootstrap.option(ChannelOption.ALLOCATOR, runtime.getAllocator());
+		transport.applyOptions(this.bootstrap, this.config);
+		this.bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()));
+		this.bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMillis());
+
+		List<Endpoint> endpoints = new ArrayList<>(config.getEndpoints());
+		if (endpoints.isEmpty()) {
+			endpoints.add(new Endpoint(config.getRemoteHost(), config.getRemotePort()));
+		}
+		this.endpoints = Collections.unmodifiableList(endpoints);
+		if (endpoints.size() > 1) {
+			this.initialProbe = probeEndpoints(endpoints);
+			scheduleProbe();
+		}
+
+		List<PeerContext> connections = new ArrayList<>();
+		connections.add(this.server);
+		for (int i = 1; i < config.getPoolSize(); i++) {
+			connections.add(new PeerContext());
+		}
+		this.connections = Collections.unmodifiableList(connections);
+
+		this.session = config.isSessionResumptionEnabled() ? new Session(UUID.randomUUID().toString()) : null;
+		for (PeerContext peer : connections) {
+			peer.setSession(this.session);
+		}
 
-		new Thread(() -> maintainConnection()).start();
+		for (PeerContext peer : connections) {
+			Connection connection = new Connection(peer);
+			this.initialProbe.whenComplete((result, e) -> connect(connection));
+		}
 	}
 
+	@Override
 	public void shutdown() {
 		try {
 			this.shutdownRequested = true;
 
-			this.workerGroup.shutdownGracefully();
+			Timeout probeTimeout = this.probeTimeout;
+			if (probeTimeout != null) {
+				probeTimeout.cancel();
+			}
+
+			for (PeerContext connection : this.connections) {
+				ChannelHandlerContext channelHandlerContext = connection.getChannelHandlerContext();
+				if (channelHandlerContext != null) {
+					channelHandlerContext.close();
+				}
+			}
 
-			ChannelHandlerContext channelHandlerContext = this.server.getChannelHandlerContext();
-			if (channelHandlerContext != null) {
-				channelHandlerContext.close();
+			if (this.session != null) {
+				this.session.close();
+			}
+
+			if (this.outboundJournal != null) {
+				this.outboundJournal.close();
+				this.outboundJournal = null;
 			}
 		} catch (Exception e) {
 			logger.warn(e.getLocalizedMessage(), e);
 		}
+
+		super.shutdown();
 	}
 
 	/**
@@ -129,9 +251,11 @@ public class ClientAgent extends AbstractAgent {
 	 * @param <TResp>
 	 * @param request
 	 * @return
+	 * @throws OverloadedException
+	 *           if the server rejected the request because it is overloaded
 	 */
 	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request) {
-		return getContext().getMessageSender().doRequest(request, this.server);
+		return getContext().getMessageSender().doRequest(request, selectConnection());
 	}
 
 	/**
@@ -142,73 +266,406 @@ public class ClientAgent extends AbstractAgent {
 	 * @param request
 	 * @param timeoutSec
 	 * @return
+	 * @throws OverloadedException
+	 *           if the server rejected the request because it is overloaded
 	 */
 	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request, int timeoutSec) {
-		return getContext().getMessageSender().doRequest(request, this.server, timeoutSec);
+		return getContext().getMessageSender().doRequest(request, selectConnection(), timeoutSec);
 	}
 
 	/**
-	 * Sends a message to the server without waiting a response
+	 * Sends a request to the server without blocking
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param timeoutSec
+	 * @return future of the response, completed exceptionally on timeout, overload of the server or failure
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<TResp> doRequestAsync(TReq request, int timeoutSec) {
+		return getContext().getMessageSender().doRequestAsync(request, selectConnection(), timeoutSec);
+	}
+
+	/**
+	 * Sends a message to the server without waiting a response.<br />
+	 * If the outbound journal is enabled, the message is appended to the journal and forwarded when the connection is available.
 	 * 
 	 * @param message
 	 */
 	public void sendMessage(AbstractMessage message) {
-		getContext().getMessageSender().sendMessage(message, this.server);
+		if (!appendToOutboundJournal(message, null)) {
+			getContext().getMessageSender().sendMessage(message, selectConnection());
+		}
+	}
+
+	/**
+	 * Sends a message to the server through the specified priority lane without waiting a response
+	 * 
+	 * @param message
+	 * @param priority
+	 */
+	public void sendMessage(AbstractMessage message, Priority priority) {
+		if (!appendToOutboundJournal(message, priority)) {
+			getContext().getMessageSender().sendMessage(message, selectConnection(), priority);
+		}
+	}
+
+	/**
+	 * Sends a message to the server without blocking and tracks its delivery
+	 * 
+	 * @param message
+	 * @param deliveryMode
+	 *          Specifies whether the returned future is completed when the message was written or acknowledged by the server
+	 * @return
+	 */
+	public CompletableFuture<Void> sendMessageTracked(AbstractMessage message, DeliveryMode deliveryMode) {
+		return getContext().getMessageSender().sendMessageTracked(message, selectConnection(), deliveryMode);
+	}
+
+	/**
+	 * Subscribes to messages published by the server on a topic. Topic patterns may contain wildcards (see {@link org.opentoolset.nettyagents.TopicIndex}). Subscriptions are renewed automatically after reconnecting.<br />
+	 * Published messages are handled by the message handlers of their types.
+	 * 
+	 * @param topic
+	 */
+	public void subscribe(String topic) {
+		if (this.subscriptions.add(topic) && this.server.getChannelHandlerContext() != null) {
+			getContext().getMessageSender().sendMessage(new SubscribeMessage(topic), this.server);
+		}
+	}
+
+	public void unsubscribe(String topic) {
+		if (this.subscriptions.remove(topic) && this.server.getChannelHandlerContext() != null) {
+			getContext().getMessageSender().sendMessage(new UnsubscribeMessage(topic), this.server);
+		}
 	}
 
 	// ---
 
-	private void maintainConnection() {
-		while (!this.shutdownRequested) {
-			try {
-				ChannelFuture channelFuture = null;
-				while (!this.shutdownRequested && (channelFuture = connectSafe()) == null) {
-					TimeUnit.SECONDS.sleep(1);
+	/**
+	 * Selects one of the pooled connections according to the load balancing strategy
+	 * 
+	 * @return an active connection, or the primary connection if none of them is active
+	 */
+	private PeerContext selectConnection() {
+		PeerContext selected = selectConnection(this.connections, this.nextConnection.getAndIncrement(), this.config.getLoadBalancing());
+		return selected != null ? selected : this.server;
+	}
+
+	/**
+	 * Selects one of the connections according to the load balancing strategy. Connections are scanned starting from the given rotating position, so ties of least pending strategy are balanced too.
+	 * 
+	 * @param connections
+	 * @param position
+	 * @param loadBalancing
+	 * @return an active connection, the only connection if there is one, or null if none of them is active
+	 */
+	static PeerContext selectConnection(List<PeerContext> connections, int position, LoadBalancing loadBalancing) {
+		int size = connections.size();
+		if (size == 1) {
+			return connections.get(0);
+		}
+
+		int start = Math.floorMod(position, size);
+		boolean roundRobin = loadBalancing == LoadBalancing.ROUND_ROBIN;
+		PeerContext selected = null;
+		for (int i = 0; i < size; i++) {
+			PeerContext connection = connections.get((start + i) % size);
+			if (connection.getChannelHandlerContext() != null) {
+				if (roundRobin) {
+					return connection;
+				} else if (selected == null || connection.getPendingRequests() < selected.getPendingRequests()) {
+					selected = connection;
 				}
+			}
+		}
+
+		return selected;
+	}
 
-				if (channelFuture != null) {
-					channelFuture.channel().closeFuture().sync();
+	/**
+	 * Makes a connection attempt to the best endpoint without blocking. When the attempt fails or the connection is lost later, another attempt is scheduled on the event loop (see {@link #scheduleReconnect}).
+	 * 
+	 * @param connection
+	 */
+	private void connect(Connection connection) {
+		if (this.shutdownRequested) {
+			return;
+		}
+
+		Endpoint endpoint = selectEndpoint();
+		connection.endpoint = endpoint;
+		long startTime = System.nanoTime();
+		connection.bootstrap.connect(endpoint.getHost(), endpoint.getPort()).addListener((ChannelFutureListener) future -> {
+			if (!future.isSuccess()) {
+				logger.debug(future.cause().getLocalizedMessage(), future.cause());
+				endpoint.onFailure();
+				scheduleReconnect(connection);
+				return;
+			}
+
+			Channel channel = future.channel();
+			if (this.shutdownRequested) {
+				channel.close();
+				return;
+			}
+
+			endpoint.onSuccess(System.nanoTime() - startTime);
+			channel.closeFuture().addListener(closeFuture -> {
+				if (!this.shutdownRequested) {
+					endpoint.onFailure();
+					scheduleReconnect(connection);
 				}
+			});
+
+			SslHandler sslHandler = channel.pipeline().get(SslHandler.class);
+			if (sslHandler != null) {
+				sslHandler.handshakeFuture().addListener(handshakeFuture -> {
+					// The channel is closed after handshake if the server isn't trusted
+					if (handshakeFuture.isSuccess() && channel.isActive()) {
+						onConnected(connection, channel);
+					}
+				});
+			} else {
+				onConnected(connection, channel);
+			}
+		});
+	}
+
+	/**
+	 * Schedules the next connection attempt. If there is an endpoint which has not failed, the attempt is made at once to fail over; otherwise it is delayed by exponential backoff with full jitter, so clients of a restarted server
+	 * don't reconnect in lockstep.
+	 * 
+	 * @param connection
+	 */
+	private void scheduleReconnect(Connection connection) {
+		if (this.shutdownRequested) {
+			return;
+		}
+
+		EventLoopGroup workerGroup = getRuntime().getWorkerGroup();
+		if (!this.endpoints.stream().allMatch(Endpoint::isFailed)) {
+			workerGroup.execute(() -> connect(connection));
+		} else {
+			long delayMillis = getReconnectDelayMillis(connection.attempts++, this.config.getReconnectBaseDelayMillis(), this.config.getReconnectMaxDelayMillis());
+			workerGroup.schedule(() -> connect(connection), delayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Returns delay of the n-th consecutive reconnect attempt, a random duration between zero and min(max, base * 2^n)
+	 * 
+	 * @param attempt
+	 * @param baseDelayMillis
+	 * @param maxDelayMillis
+	 * @return
+	 */
+	static long getReconnectDelayMillis(int attempt, int baseDelayMillis, int maxDelayMillis) {
+		long upperBoundMillis = Math.min(maxDelayMillis, (long) baseDelayMillis << Math.min(attempt, 30));
+		return ThreadLocalRandom.current().nextLong(upperBoundMillis + 1);
+	}
+
+	/**
+	 * Called on the event loop when a connection is ready to be used, ie. after TLS handshake if enabled.<br />
+	 * Control messages are written to the channel directly, since blocking sends of the message sender must not be used on the event loop.
+	 * 
+	 * @param connection
+	 * @param channel
+	 */
+	private void onConnected(Connection connection, Channel channel) {
+		connection.attempts = 0;
+		boolean trustNegotiationMode = getContext().isTrustNegotiationMode();
+		if (this.session != null && !trustNegotiationMode) {
+			channel.writeAndFlush(MessageWrapper.create(new SessionMessage(this.session.getToken())));
+			int resent = getContext().getMessageSender().resendPendings(connection.peer);
+			if (resent > 0) {
+				logger.debug("{} pending requests and messages were resent after reconnecting", resent);
+			}
+		}
+		if (connection.peer == this.server) {
+			if (!trustNegotiationMode) {
+				renewSubscriptions(channel);
+			}
+			forwardOutboundJournal(channel);
+		}
+		getRuntime().getInboundDispatcher().dispatch(Priority.HIGH, () -> notifyConnectionListener());
+	}
+
+	private void notifyConnectionListener() {
+		Runnable connectionListener = this.connectionListener;
+		if (connectionListener != null) {
+			try {
+				connectionListener.run();
 			} catch (Exception e) {
+				logger.warn(e.getLocalizedMessage(), e);
+			}
+		}
+	}
+
+	private void renewSubscriptions(Channel channel) {
+		for (String topic : this.subscriptions) {
+			channel.write(MessageWrapper.create(new SubscribeMessage(topic)));
+		}
+		channel.flush();
+	}
+
+	/**
+	 * Selects the endpoint with the best score among the ones which have not failed, or among all of them if all have failed
+	 * 
+	 * @return
+	 */
+	private Endpoint selectEndpoint() {
+		return selectEndpoint(this.endpoints);
+	}
+
+	static Endpoint selectEndpoint(List<Endpoint> endpoints) {
+		Endpoint selected = null;
+		for (Endpoint endpoint : endpoints) {
+			if (selected == null || isBetter(endpoint, selected)) {
+				selected = endpoint;
+			}
+		}
+		return selected;
+	}
+
+	private static boolean isBetter(Endpoint endpoint, Endpoint other) {
+		if (endpoint.isFailed() != other.isFailed()) {
+			return other.isFailed();
+		}
+		return endpoint.getScore() < other.getScore();
+	}
+
+	/**
+	 * Schedules probing of the endpoints which failed, and of the idle ones whose round trip times were not refreshed by heartbeats of a connection since the last probe, so that their scores don't go stale
+	 */
+	private void scheduleProbe() {
+		if (!this.shutdownRequested) {
+			long intervalNanos = TimeUnit.SECONDS.toNanos(Constants.DEFAULT_ENDPOINT_PROBE_INTERVAL_SEC);
+			this.probeTimeout = getRuntime().getTimer().newTimeout(timeout -> {
+				List<Endpoint> probedEndpoints = new ArrayList<>();
+				this.endpoints.stream().filter(endpoint -> endpoint.isFailed() || endpoint.isStale(intervalNanos)).forEach(probedEndpoints::add);
+				probeEndpoints(probedEndpoints);
+				scheduleProbe();
+			}, Constants.DEFAULT_ENDPOINT_PROBE_INTERVAL_SEC, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Probes the endpoints by opening a connection and closing it immediately, which measures round trip times and detects endpoints which recovered
+	 * 
+	 * @param endpoints
+	 * @return future completed when all probes are completed
+	 */
+	private CompletableFuture<Void> probeEndpoints(List<Endpoint> endpoints) {
+		CompletableFuture<?>[] probes = new CompletableFuture<?>[endpoints.size()];
+		for (int i = 0; i < probes.length; i++) {
+			Endpoint endpoint = endpoints.get(i);
+			CompletableFuture<Void> probe = new CompletableFuture<>();
+			long startTime = System.nanoTime();
+			this.bootstrap.clone().handler(new ChannelInboundHandlerAdapter()).connect(endpoint.getHost(), endpoint.getPort()).addListener((ChannelFutureListener) future -> {
+				if (future.isSuccess()) {
+					endpoint.onSuccess(System.nanoTime() - startTime);
+					future.channel().close();
+				} else {
+					endpoint.onFailure();
+				}
+				probe.complete(null);
+			});
+			probes[i] = probe;
+		}
+		return CompletableFuture.allOf(probes);
+	}
+
+	private void openOutboundJournalIfEnabled() {
+		String directory = getConfig().getOutboundJournalDirectory();
+		if (directory != null && this.outboundJournal == null) {
+			try {
+				this.outboundJournal = new OutboundJournal(Paths.get(directory), getConfig().getOutboundJournalSegmentSize());
+			} catch (IOException e) {
 				logger.error(e.getLocalizedMessage(), e);
 			}
 		}
 	}
 
-	private ChannelFuture connectSafe() throws InterruptedException {
+	/**
+	 * Appends the message to the outbound journal if it is enabled. The message is only serialized here if it is journaled.
+	 * 
+	 * @param message
+	 * @param priority
+	 *          Priority of the message, or null for the default priority of its type
+	 * @return true if the message was appended
+	 */
+	private boolean appendToOutboundJournal(AbstractMessage message, Priority priority) {
+		OutboundJournal outboundJournal = this.outboundJournal;
+		if (outboundJournal == null || getContext().isTrustNegotiationMode()) {
+			return false;
+		}
+
 		try {
-			if (!this.shutdownRequested) {
-				return this.bootstrap.connect().sync();
+			outboundJournal.append(priority != null ? MessageWrapper.create(message, priority) : MessageWrapper.create(message));
+			return true;
+		} catch (IOException e) {
+			logger.error(e.getLocalizedMessage(), e);
+			return false;
+		}
+	}
+
+	private void forwardOutboundJournal(Channel channel) {
+		OutboundJournal outboundJournal = this.outboundJournal;
+		if (outboundJournal != null) {
+			outboundJournal.rewind();
+			forwardOutboundJournal(outboundJournal, channel);
+		}
+	}
+
+	/**
+	 * Forwards the journal batch by batch without blocking, as long as the channel is active. Each batch is forwarded when there are unread messages, on the event loop of the channel.
+	 * 
+	 * @param outboundJournal
+	 * @param channel
+	 */
+	private void forwardOutboundJournal(OutboundJournal outboundJournal, Channel channel) {
+		if (this.shutdownRequested || !channel.isActive()) {
+			return;
+		}
+
+		if (getContext().isTrustNegotiationMode()) {
+			channel.eventLoop().schedule(() -> forwardOutboundJournal(outboundJournal, channel), 1, TimeUnit.SECONDS);
+			return;
+		}
+
+		outboundJournal.whenUnread().thenComposeAsync(v -> forwardOutboundJournalBatch(outboundJournal, channel), channel.eventLoop()).whenComplete((count, e) -> {
+			if (e != null) {
+				logger.debug(e.getLocalizedMessage(), e);
+			} else {
+				forwardOutboundJournal(outboundJournal, channel);
 			}
-		} catch (Exception e) {
-			logger.debug(e.getLocalizedMessage(), e);
+		});
+	}
+
+	private CompletableFuture<Integer> forwardOutboundJournalBatch(OutboundJournal outboundJournal, Channel channel) {
+		if (!channel.isActive()) {
+			return CompletableFuture.completedFuture(0);
 		}
 
-		return null;
+		CompletableFuture<Integer> future = outboundJournal.forwardBatchAsync(getContext().getMessageSender(), this.server, Constants.DEFAULT_JOURNAL_BATCH_SIZE);
+		ScheduledFuture<?> timeout = channel.eventLoop().schedule(() -> {
+			future.completeExceptionally(new TimeoutException("Journal batch was not acknowledged in " + Constants.DEFAULT_REQUEST_TIMEOUT_SEC + " seconds"));
+		}, Constants.DEFAULT_REQUEST_TIMEOUT_SEC, TimeUnit.SECONDS);
+		future.whenComplete((count, e) -> timeout.cancel(false));
+		return future;
 	}
 
 	private void buildSSLContextIfEnabled() {
 		if (getConfig().isTlsEnabled()) {
 			try {
-				KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-				{
-					KeyStore keystore = KeyStore.getInstance("JKS");
-					{
-						PrivateKey key = getConfig().getPriKey();
-						Certificate cert = getConfig().getCert();
-
-						keystore.load(null);
-						keystore.setCertificateEntry("my-cert", cert);
-						keystore.setKeyEntry("my-key", key, DEFAULT_IN_MEMORY_KEYSTORE_PW.toCharArray(), new Certificate[] { cert });
-					}
-
-					keyManagerFactory.init(keystore, DEFAULT_IN_MEMORY_KEYSTORE_PW.toCharArray());
-				}
+				PrivateKey key = getConfig().getPriKey();
+				X509Certificate cert = getConfig().getCert();
 
 				SslContextBuilder builder = SslContextBuilder.forClient();
-				builder.keyManager(keyManagerFactory);
+				builder.keyManager(key, cert);
 				builder.trustManager(new TrustManager(() -> getContext()));
-				SslContext sslContext = builder.build();
+				SslContext sslContext = buildSslContext(builder);
 				setSslContext(sslContext);
 			} catch (IOException | GeneralSecurityException e) {
 				logger.error(e.getLocalizedMessage(), e);
@@ -222,6 +679,15 @@ public class ClientAgent extends AbstractAgent {
 
 		private String remoteHost = Constants.DEFAULT_SERVER_HOST;
 		private int remotePort = Constants.DEFAULT_SERVER_PORT;
+		private String outboundJournalDirectory;
+		private int outboundJournalSegmentSize = Constants.DEFAULT_JOURNAL_SEGMENT_SIZE;
+		private int poolSize = Constants.DEFAULT_CONNECTIONS;
+		private List<Endpoint> endpoints = new ArrayList<>();
+		private int connectTimeoutMillis = Constants.DEFAULT_CONNECT_TIMEOUT_MS;
+		private int reconnectBaseDelayMillis = Constants.DEFAULT_RECONNECT_BASE_DELAY_MS;
+		private int reconnectMaxDelayMillis = Constants.DEFAULT_RECONNECT_MAX_DELAY_MS;
+		private boolean sessionResumptionEnabled = Constants.DEFAULT_SESSION_RESUMPTION_ENABLED;
+		private LoadBalancing loadBalancing = Constants.DEFAULT_LOAD_BALANCING;
 
 		public String getRemoteHost() {
 			return remoteHost;
@@ -231,6 +697,42 @@ public class ClientAgent extends AbstractAgent {
 			return remotePort;
 		}
 
+		public String getOutboundJournalDirectory() {
+			return outboundJournalDirectory;
+		}
+
+		public int getOutboundJournalSegmentSize() {
+			return outboundJournalSegmentSize;
+		}
+
+		public int getPoolSize() {
+			return poolSize;
+		}
+
+		public LoadBalancing getLoadBalancing() {
+			return loadBalancing;
+		}
+
+		public List<Endpoint> getEndpoints() {
+			return endpoints;
+		}
+
+		public int getConnectTimeoutMillis() {
+			return connectTimeoutMillis;
+		}
+
+		public int getReconnectBaseDelayMillis() {
+			return reconnectBaseDelayMillis;
+		}
+
+		public int getReconnectMaxDelayMillis() {
+			return reconnectMaxDelayMillis;
+		}
+
+		public boolean isSessionResumptionEnabled() {
+			return sessionResumptionEnabled;
+		}
+
 		public Config setRemoteHost(String remoteHost) {
 			this.remoteHost = remoteHost;
 			return this;
@@ -240,28 +742,133 @@ public class ClientAgent extends AbstractAgent {
 			this.remotePort = remotePort;
 			return this;
 		}
+
+		/**
+		 * Enables the durable outbound journal in the given directory. Messages sent by this agent are appended to the journal and survive disconnects and restarts until the server acknowledges them.
+		 * 
+		 * @param outboundJournalDirectory
+		 * @return
+		 */
+		public Config setOutboundJournalDirectory(String outboundJournalDirectory) {
+			this.outboundJournalDirectory = outboundJournalDirectory;
+			return this;
+		}
+
+		public Config setOutboundJournalSegmentSize(int outboundJournalSegmentSize) {
+			this.outboundJournalSegmentSize = outboundJournalSegmentSize;
+			return this;
+		}
+
+		/**
+		 * Sets number of connections kept open to the server. Messages and requests are distributed over the connections, so messages sent one after another may arrive out of order when there are more than one.<br />
+		 * Each connection is maintained on its own, enabling heartbeats (see {@link AbstractConfig#setHeartbeatIntervalSec}) lets a connection which stopped responding be replaced.
+		 * 
+		 * @param poolSize
+		 * @return
+		 */
+		public Config setPoolSize(int poolSize) {
+			this.poolSize = Math.max(1, poolSize);
+			return this;
+		}
+
+		public Config setLoadBalancing(LoadBalancing loadBalancing) {
+			this.loadBalancing = loadBalancing;
+			return this;
+		}
+
+		/**
+		 * Adds a candidate endpoint of the server. If endpoints are added, remote host and port are not used.<br />
+		 * Each connection is made to the endpoint with the lowest round trip time penalized by its error rate. When a connection is lost, the endpoint is considered failed and the connection is made to the next best endpoint at
+		 * once; failed endpoints are probed periodically and used again after they recover.
+		 * 
+		 * @param host
+		 * @param port
+		 * @return
+		 */
+		public Config addEndpoint(String host, int port) {
+			this.endpoints.add(new Endpoint(host, port));
+			return this;
+		}
+
+		public Config setConnectTimeoutMillis(int connectTimeoutMillis) {
+			this.connectTimeoutMillis = connectTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Enables session resumption (see {@link Session}). Requests waiting for a response and messages sent with {@link DeliveryMode#ACKNOWLEDGED} survive a lost connection and are resent after reconnecting, and the server
+		 * deduplicates them, so they are neither lost nor handled twice. The ones issued while the connection is down are sent once it is back, instead of failing.
+		 * 
+		 * @param sessionResumptionEnabled
+		 * @return
+		 */
+		public Config setSessionResumptionEnabled(boolean sessionResumptionEnabled) {
+			this.sessionResumptionEnabled = sessionResumptionEnabled;
+			return this;
+		}
+
+		/**
+		 * Sets the backoff of reconnect attempts when all endpoints have failed. The n-th consecutive attempt is delayed by a random duration between zero and min(max, base * 2^n).
+		 * 
+		 * @param reconnectBaseDelayMillis
+		 * @param reconnectMaxDelayMillis
+		 * @return
+		 */
+		public Config setReconnectBackoff(int reconnectBaseDelayMillis, int reconnectMaxDelayMillis) {
+			this.reconnectBaseDelayMillis = reconnectBaseDelayMillis;
+			this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+			return this;
+		}
 	}
 
 	// ---
 
+	/**
+	 * One of the pooled connections, which is made to the endpoint selected at each connection attempt
+	 */
+	private final class Connection {
+
+		private final PeerContext peer;
+
+		private final Bootstrap bootstrap;
+
+		private volatile Endpoint endpoint;
+
+		private int attempts = 0;
+
+		public Connection(PeerContext peer) {
+			this.peer = peer;
+			this.bootstrap = ClientAgent.this.bootstrap.clone().handler(new ClientChannelInitializer(this));
+		}
+	}
+
 	private final class ClientChannelInitializer extends ChannelInitializer<SocketChannel> implements InboundMessageHandler.Provider {
 
+		private final Connection connection;
+
 		private SslHandler sslHandler;
 
+		public ClientChannelInitializer(Connection connection) {
+			this.connection = connection;
+		}
+
 		@Override
 		public void initChannel(SocketChannel channel) throws Exception {
 			try {
 				ChannelPipeline pipeline = channel.pipeline();
 
+				Endpoint endpoint = this.connection.endpoint;
 				SslContext sslContext = getSslContext();
 				if (sslContext != null) {
-					this.sslHandler = sslContext.newHandler(channel.alloc(), ClientAgent.this.getConfig().getRemoteHost(), ClientAgent.this.getConfig().getRemotePort());
+					this.sslHandler = sslContext.newHandler(channel.alloc(), endpoint.getHost(), endpoint.getPort(), getTlsExecutor());
 					this.sslHandler.setHandshakeTimeout(Constants.DEFAULT_TLS_HANDSHAKE_TIMEOUT_SEC, TimeUnit.SECONDS);
 					pipeline.addLast(this.sslHandler);
 				}
 
-				pipeline.addLast(new MessageEncoder(), new MessageDecoder(), new InboundMessageHandler(this));
-				pipeline.addLast(new ClientChannelHandler(this.sslHandler));
+				AbstractConfig config = getConfig();
+				OutboundPriorityHandler outboundPriorityHandler = new OutboundPriorityHandler(config.getOutboundQueueCapacity(), config.getOverflowPolicy(), config.newFlowControl());
+				pipeline.addLast(new MessageEncoder(), new MessageDecoder(), new HeartbeatHandler(config.getHeartbeatIntervalSec(), endpoint::onRoundTrip), new AcknowledgementHandler(), outboundPriorityHandler, new InboundMessageHandler(this));
+				pipeline.addLast(new ClientChannelHandler(this.connection.peer, this.sslHandler));
 			} catch (Exception e) {
 				logger.debug(e.getLocalizedMessage(), e);
 			}
@@ -279,18 +886,20 @@ public class ClientAgent extends AbstractAgent {
 
 		@Override
 		public boolean verifyChannelHandlerContext(ChannelHandlerContext ctx) {
-			boolean result = true;
-			result = result || getContext().isTrustNegotiationMode();
-			result = result || Utils.verifyChannelHandlerContext(ctx, ClientAgent.this.server);
+			boolean result = getContext().isTrustNegotiationMode();
+			result = result || Utils.verifyChannelHandlerContext(ctx, this.connection.peer);
 			return result;
 		}
 	}
 
 	private final class ClientChannelHandler implements ChannelHandler {
 
+		private final PeerContext connection;
+
 		private SslHandler sslHandler;
 
-		public ClientChannelHandler(SslHandler sslHandler) {
+		public ClientChannelHandler(PeerContext connection, SslHandler sslHandler) {
+			this.connection = connection;
 			this.sslHandler = sslHandler;
 		}
 
@@ -299,14 +908,18 @@ public class ClientAgent extends AbstractAgent {
 			if (getConfig().isTlsEnabled()) {
 				sslHandler.handshakeFuture().addListener(future -> onHandshakeCompleted(ctx));
 			} else {
-				ClientAgent.this.server.setChannelHandlerContext(ctx);
+				ctx.channel().attr(PeerContext.KEY).set(this.connection);
+				this.connection.setChannelHandlerContext(ctx);
 			}
 		}
 
 		@Override
 		public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
 			ctx.close();
-			ClientAgent.this.server.setChannelHandlerContext(null);
+			// The connection may already be replaced by a new channel, eg. after failing over to another endpoint
+			if (this.connection.getChannelHandlerContext() == ctx) {
+				this.connection.setChannelHandlerContext(null);
+			}
 		}
 
 		@Override
@@ -322,15 +935,17 @@ public class ClientAgent extends AbstractAgent {
 
 				Certificate peerCert = peerCerts[0];
 				if (peerCert instanceof X509Certificate) {
-					PeerContext server = ClientAgent.this.server;
-					server.setCert((X509Certificate) peerCert);
-					server.setChannelHandlerContext(ctx);
+					PeerContext connection = this.connection;
+					connection.setCert((X509Certificate) peerCert);
+					ctx.channel().attr(PeerContext.KEY).set(connection);
+					connection.setChannelHandlerContext(ctx);
 					if (!getContext().isTrustNegotiationMode()) {
-						server.setTrusted(true);
+						connection.setTrusted(true);
 					}
 				}
 			} catch (Exception e) {
-				logger.debug(e.getLocalizedMessage(), e);
+				logger.warn("Closing connection of untrusted peer {}: {}", ctx.channel().remoteAddress(), e.getLocalizedMessage());
+				ctx.close();
 			}
 		}
 	}
@@ -0,0 +1,218 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents.agents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opentoolset.nettyagents.AbstractMessage;
+import org.opentoolset.nettyagents.Priority;
+import org.opentoolset.nettyagents.Routable;
+
+/**
+ * Defines messages exchanged between nodes of a cluster (see {@link ClusterNode})
+ */
+public interface ClusterMessages {
+
+	/**
+	 * Full list of peer IDs connected to a node, sent on each connection to another node
+	 */
+	public static class DirectorySnapshot extends AbstractMessage implements Routable {
+
+		private String nodeId;
+
+		private List<String> peerIds = new ArrayList<>();
+
+		public DirectorySnapshot() {
+			// Required for deserialization
+		}
+
+		public DirectorySnapshot(String nodeId, List<String> peerIds) {
+			this();
+			this.nodeId = nodeId;
+			this.peerIds = peerIds;
+		}
+
+		public String getNodeId() {
+			return nodeId;
+		}
+
+		public List<String> getPeerIds() {
+			return peerIds;
+		}
+
+		@Override
+		public String getRoutingKey() {
+			return nodeId;
+		}
+	}
+
+	/**
+	 * Incremental change in the list of peer IDs connected to a node
+	 */
+	public static class DirectoryUpdate extends AbstractMessage implements Routable {
+
+		private String nodeId;
+
+		private String peerId;
+
+		private boolean added;
+
+		public DirectoryUpdate() {
+			// Required for deserialization
+		}
+
+		public DirectoryUpdate(String nodeId, String peerId, boolean added) {
+			this();
+			this.nodeId = nodeId;
+			this.peerId = peerId;
+			this.added = added;
+		}
+
+		public String getNodeId() {
+			return nodeId;
+		}
+
+		public String getPeerId() {
+			return peerId;
+		}
+
+		public boolean isAdded() {
+			return added;
+		}
+
+		@Override
+		public String getRoutingKey() {
+			return nodeId;
+		}
+	}
+
+	/**
+	 * Envelope of a message forwarded to the node owning the target peer. The payload is carried in its serialized form.
+	 */
+	public static class ForwardedMessage extends AbstractMessage implements Routable {
+
+		private String targetPeerId;
+
+		private String classOfMessage;
+
+		private String serializedMessage;
+
+		private Priority priority;
+
+		private String routingKey;
+
+		public ForwardedMessage() {
+			// Required for deserialization
+		}
+
+		public ForwardedMessage(String targetPeerId, String classOfMessage, String serializedMessage, Priority priority, String routingKey) {
+			this();
+			this.targetPeerId = targetPeerId;
+			this.classOfMessage = classOfMessage;
+			this.serializedMessage = serializedMessage;
+			this.priority = priority;
+			this.routingKey = routingKey;
+		}
+
+		public String getTargetPeerId() {
+			return targetPeerId;
+		}
+
+		public String getClassOfMessage() {
+			return classOfMessage;
+		}
+
+		public String getSerializedMessage() {
+			return serializedMessage;
+		}
+
+		public Priority getPriority() {
+			return priority;
+		}
+
+		@Override
+		public String getRoutingKey() {
+			return routingKey != null ? routingKey : targetPeerId;
+		}
+	}
+
+	/**
+	 * Envelope of a request forwarded to the node owning the target peer. Its response is sent back to the origin node as a {@link ForwardedResponse}.
+	 */
+	public static class ForwardedRequest extends ForwardedMessage {
+
+		private String forwardId;
+
+		private String originNodeId;
+
+		private int timeoutSec;
+
+		public ForwardedRequest() {
+			// Required for deserialization
+		}
+
+		public ForwardedRequest(String forwardId, String originNodeId, int timeoutSec, String targetPeerId, String classOfMessage, String serializedMessage, Priority priority, String routingKey) {
+			super(targetPeerId, classOfMessage, serializedMessage, priority, routingKey);
+			this.forwardId = forwardId;
+			this.originNodeId = originNodeId;
+			this.timeoutSec = timeoutSec;
+		}
+
+		public String getForwardId() {
+			return forwardId;
+		}
+
+		public String getOriginNodeId() {
+			return originNodeId;
+		}
+
+		public int getTimeoutSec() {
+			return timeoutSec;
+		}
+	}
+
+	/**
+	 * Response of a forwarded request, carried in its serialized form, or the error occured on the owning node
+	 */
+	public static class ForwardedResponse extends AbstractMessage {
+
+		private String forwardId;
+
+		private String classOfMessage;
+
+		private String serializedMessage;
+
+		private String error;
+
+		public ForwardedResponse() {
+			// Required for deserialization
+		}
+
+		public ForwardedResponse(String forwardId, String classOfMessage, String serializedMessage, String error) {
+			this();
+			this.forwardId = forwardId;
+			this.classOfMessage = classOfMessage;
+			this.serializedMessage = serializedMessage;
+			this.error = error;
+		}
+
+		public String getForwardId() {
+			return forwardId;
+		}
+
+		public String getClassOfMessage() {
+			return classOfMessage;
+		}
+
+		public String getSerializedMessage() {
+			return serializedMessage;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+}
@@ -0,0 +1,372 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents.agents;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.opentoolset.nettyagents.AbstractAgent;
+import org.opentoolset.nettyagents.AbstractAgent.AbstractConfig;
+import org.opentoolset.nettyagents.AbstractMessage;
+import org.opentoolset.nettyagents.Context;
+import org.opentoolset.nettyagents.DeliveryMode;
+import org.opentoolset.nettyagents.MessageWrapper;
+import org.opentoolset.nettyagents.PeerContext;
+import org.opentoolset.nettyagents.PeerIndex;
+import org.opentoolset.nettyagents.Priority;
+import org.opentoolset.nettyagents.Utils;
+import org.opentoolset.nettyagents.agents.ClusterMessages.DirectorySnapshot;
+import org.opentoolset.nettyagents.agents.ClusterMessages.DirectoryUpdate;
+import org.opentoolset.nettyagents.agents.ClusterMessages.ForwardedMessage;
+import org.opentoolset.nettyagents.agents.ClusterMessages.ForwardedRequest;
+import org.opentoolset.nettyagents.agents.ClusterMessages.ForwardedResponse;
+import org.slf4j.Logger;
+
+import io.netty.util.Timeout;
+
+/**
+ * Cluster node connects a server agent to the other server agents of a cluster, so that a peer connected to any node can be reached from every node.<br />
+ * Each node listens on its cluster port and connects to the cluster port of every other member. Nodes replicate a directory of peer IDs and their owning nodes: a full snapshot on each connection, and incremental updates when peer
+ * IDs are added or removed. Messages and requests to peers of other nodes are forwarded to the owning node in their serialized form.<br />
+ * Cluster membership is static; directory entries of a node which went down are kept until it comes back and sends a new snapshot, and forwarding to it fails in the meantime.<br />
+ * Only configured members can connect to the cluster port: with TLS, cluster connections trust the member certificates given in the configuration instead of the certificates trusted for clients; without TLS, connections are
+ * accepted only from the hosts of members.
+ */
+public class ClusterNode implements PeerIndex.Listener {
+
+	private static Logger logger = Context.getLogger();
+
+	private final ServerAgent serverAgent;
+
+	private final String nodeId;
+
+	private final ServerAgent listener = new ServerAgent();
+
+	private final Map<String, ClientAgent> members = new LinkedHashMap<>();
+
+	private final Map<String, String> directory = new ConcurrentHashMap<>();
+
+	private final Map<String, CompletableFuture<MessageWrapper>> forwardedRequests = new ConcurrentHashMap<>();
+
+	private final Set<InetAddress> memberAddresses = new HashSet<>();
+
+	// ---
+
+	ClusterNode(ServerAgent serverAgent) {
+		this.serverAgent = serverAgent;
+		this.nodeId = serverAgent.getConfig().getClusterNodeId();
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Returns the replicated directory of peers connected to other nodes, with peer ID as key and node ID as value
+	 * 
+	 * @return
+	 */
+	public Map<String, String> getDirectory() {
+		return Collections.unmodifiableMap(directory);
+	}
+
+	/**
+	 * Returns ID of the node owning the peer
+	 * 
+	 * @param peerId
+	 * @return node ID, or null if the peer is not known in the cluster
+	 */
+	public String getOwnerNode(String peerId) {
+		return this.serverAgent.getClientById(peerId) != null ? this.nodeId : this.directory.get(peerId);
+	}
+
+	// ---
+
+	@Override
+	public synchronized void onIdAdded(String id, PeerContext peer) {
+		sendToMembers(new DirectoryUpdate(this.nodeId, id, true));
+	}
+
+	@Override
+	public synchronized void onIdRemoved(String id, PeerContext peer) {
+		sendToMembers(new DirectoryUpdate(this.nodeId, id, false));
+	}
+
+	// ---
+
+	void startup() {
+		ServerAgent.Config config = this.serverAgent.getConfig();
+
+		copyTlsConfig(config, this.listener.getConfig());
+		this.listener.getConfig().setLocalPort(config.getClusterPort());
+		this.listener.setRuntime(this.serverAgent.getRuntime());
+		if (config.isTlsEnabled()) {
+			for (Entry<String, InetSocketAddress> entry : config.getClusterMembers().entrySet()) {
+				trustMember(this.listener, config, entry.getKey());
+			}
+		} else {
+			resolveMemberAddresses(config);
+			this.listener.setConnectionFilter(this::isMemberAddress);
+		}
+		this.listener.setMessageHandler(DirectorySnapshot.class, this::onDirectorySnapshot);
+		this.listener.setMessageHandler(DirectoryUpdate.class, this::onDirectoryUpdate);
+		this.listener.setMessageHandler(ForwardedMessage.class, this::onForwardedMessage);
+		this.listener.setMessageHandler(ForwardedRequest.class, this::onForwardedRequest);
+		this.listener.setMessageHandler(ForwardedResponse.class, this::onForwardedResponse);
+		this.listener.startup();
+
+		for (Entry<String, InetSocketAddress> entry : config.getClusterMembers().entrySet()) {
+			if (!entry.getKey().equals(this.nodeId)) {
+				ClientAgent member = new ClientAgent();
+				copyTlsConfig(config, member.getConfig());
+				member.getConfig().setRemoteHost(entry.getValue().getHostString()).setRemotePort(entry.getValue().getPort());
+				member.setRuntime(this.serverAgent.getRuntime());
+				if (config.isTlsEnabled()) {
+					trustMember(member, config, entry.getKey());
+				}
+				member.setConnectionListener(() -> sendSnapshot(member));
+				this.members.put(entry.getKey(), member);
+				member.startup();
+			}
+		}
+
+		this.serverAgent.getClientIndex().setListener(this);
+	}
+
+	void shutdown() {
+		this.serverAgent.getClientIndex().setListener(null);
+		for (ClientAgent member : this.members.values()) {
+			member.shutdown();
+		}
+		this.members.clear();
+		this.listener.shutdown();
+
+		for (CompletableFuture<MessageWrapper> future : this.forwardedRequests.values()) {
+			future.completeExceptionally(new ClosedChannelException());
+		}
+	}
+
+	/**
+	 * Forwards a message to the node owning the target peer
+	 * 
+	 * @param messageWrapper
+	 * @param peerId
+	 * @return future which is completed when the message was written to the owning node
+	 */
+	CompletableFuture<Void> forwardMessage(MessageWrapper messageWrapper, String peerId) {
+		ClientAgent member = getMemberOwning(peerId);
+		if (member == null) {
+			return failedFuture(new IllegalArgumentException("Peer is not known in the cluster: " + peerId));
+		}
+
+		ForwardedMessage forwardedMessage = new ForwardedMessage(peerId, messageWrapper.getClassOfMessage().getName(), messageWrapper.getSerializedMessage(), messageWrapper.getPriorityOrDefault(), messageWrapper.getRoutingKey());
+		return member.sendMessageTracked(forwardedMessage, DeliveryMode.WRITTEN);
+	}
+
+	/**
+	 * Forwards a request to the node owning the target peer
+	 * 
+	 * @param requestWrapper
+	 * @param peerId
+	 * @param timeoutSec
+	 * @return future of the wrapped response
+	 */
+	CompletableFuture<MessageWrapper> forwardRequest(MessageWrapper requestWrapper, String peerId, int timeoutSec) {
+		ClientAgent member = getMemberOwning(peerId);
+		if (member == null) {
+			return failedFuture(new IllegalArgumentException("Peer is not known in the cluster: " + peerId));
+		}
+
+		String forwardId = UUID.randomUUID().toString();
+		CompletableFuture<MessageWrapper> future = new CompletableFuture<>();
+		this.forwardedRequests.put(forwardId, future);
+
+		Timeout timeout = this.serverAgent.getRuntime().getTimer().newTimeout(t -> future.completeExceptionally(new TimeoutException("Forwarded request timed out after " + timeoutSec + " seconds")), timeoutSec, TimeUnit.SECONDS);
+		future.whenComplete((responseWrapper, e) -> {
+			this.forwardedRequests.remove(forwardId);
+			timeout.cancel();
+		});
+
+		ForwardedRequest forwardedRequest = new ForwardedRequest(forwardId, this.nodeId, timeoutSec, peerId, requestWrapper.getClassOfMessage().getName(), requestWrapper.getSerializedMessage(), requestWrapper.getPriorityOrDefault(), requestWrapper.getRoutingKey());
+		member.sendMessageTracked(forwardedRequest, DeliveryMode.WRITTEN).whenComplete((v, e) -> {
+			if (e != null) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	// ---
+
+	private void onDirectorySnapshot(DirectorySnapshot snapshot) {
+		String ownerNodeId = snapshot.getNodeId();
+		this.directory.values().removeIf(ownerNodeId::equals);
+		for (String peerId : snapshot.getPeerIds()) {
+			this.directory.put(peerId, ownerNodeId);
+		}
+	}
+
+	private void onDirectoryUpdate(DirectoryUpdate update) {
+		if (update.isAdded()) {
+			this.directory.put(update.getPeerId(), update.getNodeId());
+		} else {
+			this.directory.remove(update.getPeerId(), update.getNodeId());
+		}
+	}
+
+	private void onForwardedMessage(ForwardedMessage forwardedMessage) {
+		PeerContext peer = this.serverAgent.getClientById(forwardedMessage.getTargetPeerId());
+		Class<? extends AbstractMessage> classOfMessage = resolveClass(forwardedMessage.getClassOfMessage());
+		if (peer == null || classOfMessage == null) {
+			logger.debug("Forwarded message was dropped, peer is not connected to this node: {}", forwardedMessage.getTargetPeerId());
+			return;
+		}
+
+		MessageWrapper messageWrapper = MessageWrapper.create(classOfMessage, forwardedMessage.getSerializedMessage(), forwardedMessage.getPriority(), forwardedMessage.getRoutingKey());
+		this.serverAgent.getContext().getMessageSender().sendMessage(messageWrapper, peer);
+	}
+
+	private void onForwardedRequest(ForwardedRequest forwardedRequest) {
+		String forwardId = forwardedRequest.getForwardId();
+		String originNodeId = forwardedRequest.getOriginNodeId();
+		PeerContext peer = this.serverAgent.getClientById(forwardedRequest.getTargetPeerId());
+		Class<? extends AbstractMessage> classOfMessage = resolveClass(forwardedRequest.getClassOfMessage());
+		if (peer == null || classOfMessage == null) {
+			reply(originNodeId, new ForwardedResponse(forwardId, null, null, "Peer is not connected to node " + this.nodeId + ": " + forwardedRequest.getTargetPeerId()));
+			return;
+		}
+
+		MessageWrapper template = MessageWrapper.create(classOfMessage, forwardedRequest.getSerializedMessage(), forwardedRequest.getPriority(), forwardedRequest.getRoutingKey());
+		MessageWrapper requestWrapper = MessageWrapper.createRequest(template);
+		this.serverAgent.getContext().getMessageSender().doRequestAsync(requestWrapper, peer, forwardedRequest.getTimeoutSec()).whenComplete((responseWrapper, e) -> {
+			if (e != null) {
+				reply(originNodeId, new ForwardedResponse(forwardId, null, null, String.valueOf(e.getLocalizedMessage())));
+			} else {
+				reply(originNodeId, new ForwardedResponse(forwardId, responseWrapper.getClassOfMessage().getName(), responseWrapper.getSerializedMessage(), null));
+			}
+		});
+	}
+
+	private void onForwardedResponse(ForwardedResponse forwardedResponse) {
+		CompletableFuture<MessageWrapper> future = this.forwardedRequests.get(forwardedResponse.getForwardId());
+		if (future == null) {
+			logger.warn("Forwarded response was ignored because of timeout");
+			return;
+		}
+
+		Class<? extends AbstractMessage> classOfMessage = forwardedResponse.getError() == null ? resolveClass(forwardedResponse.getClassOfMessage()) : null;
+		if (classOfMessage != null) {
+			future.complete(MessageWrapper.create(classOfMessage, forwardedResponse.getSerializedMessage(), Priority.NORMAL, null));
+		} else {
+			future.completeExceptionally(new IllegalStateException(forwardedResponse.getError() != null ? forwardedResponse.getError() : "Response type couldn't be resolved"));
+		}
+	}
+
+	private void reply(String originNodeId, ForwardedResponse forwardedResponse) {
+		ClientAgent member = this.members.get(originNodeId);
+		if (member != null) {
+			member.sendMessageTracked(forwardedResponse, DeliveryMode.WRITTEN);
+		}
+	}
+
+	private void sendSnapshot(ClientAgent member) {
+		// The listener is also called for other pooled connections; the snapshot is sent once the server connection is ready
+		if (member.getServer().getChannelHandlerContext() == null) {
+			return;
+		}
+
+		// Snapshot is taken and written while holding the lock, so that no update is written before the snapshot it isn't included in
+		synchronized (this) {
+			List<String> peerIds = new ArrayList<>();
+			for (PeerContext client : this.serverAgent.getClients().values()) {
+				if (client.getId() != null) {
+					peerIds.add(client.getId());
+				}
+			}
+
+			member.sendMessageTracked(new DirectorySnapshot(this.nodeId, peerIds), DeliveryMode.WRITTEN);
+		}
+	}
+
+	private void sendToMembers(AbstractMessage message) {
+		for (ClientAgent member : this.members.values()) {
+			member.sendMessageTracked(message, DeliveryMode.WRITTEN);
+		}
+	}
+
+	private static void trustMember(AbstractAgent agent, ServerAgent.Config config, String nodeId) {
+		X509Certificate cert = config.getClusterMemberCerts().get(nodeId);
+		if (cert != null) {
+			agent.getContext().getTrustedCerts().put(Utils.getFingerprintAsHex(cert), cert);
+		} else {
+			logger.warn("Cluster member has no certificate, its connections won't be trusted: {}", nodeId);
+		}
+	}
+
+	private void resolveMemberAddresses(ServerAgent.Config config) {
+		for (InetSocketAddress memberAddress : config.getClusterMembers().values()) {
+			try {
+				Collections.addAll(this.memberAddresses, InetAddress.getAllByName(memberAddress.getHostString()));
+			} catch (UnknownHostException e) {
+				logger.warn("Cluster member host couldn't be resolved: {}", memberAddress.getHostString());
+			}
+		}
+	}
+
+	private boolean isMemberAddress(SocketAddress remoteAddress) {
+		return remoteAddress instanceof InetSocketAddress && this.memberAddresses.contains(((InetSocketAddress) remoteAddress).getAddress());
+	}
+
+	private ClientAgent getMemberOwning(String peerId) {
+		String ownerNodeId = this.directory.get(peerId);
+		return ownerNodeId != null ? this.members.get(ownerNodeId) : null;
+	}
+
+	private static void copyTlsConfig(AbstractConfig source, AbstractConfig target) {
+		target.setTlsEnabled(source.isTlsEnabled());
+		if (source.isTlsEnabled()) {
+			target.setPriKey(source.getPriKey());
+			target.setCert(source.getCert());
+			target.setTlsSessionCache(source.getTlsSessionCacheSize(), source.getTlsSessionTimeoutSec());
+			target.setTlsSessionTicketsEnabled(source.isTlsSessionTicketsEnabled());
+			target.setTlsProvider(source.getTlsProvider());
+			target.setTlsHandshakeOffloadEnabled(source.isTlsHandshakeOffloadEnabled());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends AbstractMessage> resolveClass(String className) {
+		try {
+			Class<?> type = Class.forName(className);
+			return AbstractMessage.class.isAssignableFrom(type) ? (Class<? extends AbstractMessage>) type : null;
+		} catch (ClassNotFoundException | RuntimeException e) {
+			logger.warn("Forwarded message type couldn't be resolved: {}", className);
+			return null;
+		}
+	}
+
+	private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+}
@@ -5,43 +5,73 @@
 package org.opentoolset.nettyagents.agents;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import org.opentoolset.nettyagents.AbstractAgent;
 import org.opentoolset.nettyagents.AbstractMessage;
+import org.opentoolset.nettyagents.AgentRuntime;
 import org.opentoolset.nettyagents.AbstractRequest;
+import org.opentoolset.nettyagents.AcknowledgementHandler;
 import org.opentoolset.nettyagents.Constants;
 import org.opentoolset.nettyagents.Context;
+import org.opentoolset.nettyagents.DeliveryMode;
+import org.opentoolset.nettyagents.GatherResult;
+import org.opentoolset.nettyagents.HeartbeatHandler;
 import org.opentoolset.nettyagents.InboundMessageHandler;
+import org.opentoolset.nettyagents.InboundRateLimitHandler;
 import org.opentoolset.nettyagents.MessageDecoder;
 import org.opentoolset.nettyagents.MessageEncoder;
+import org.opentoolset.nettyagents.MessageWrapper;
+import org.opentoolset.nettyagents.OutboundPriorityHandler;
+import org.opentoolset.nettyagents.OverloadedException;
 import org.opentoolset.nettyagents.PeerContext;
+import org.opentoolset.nettyagents.PeerIndex;
+import org.opentoolset.nettyagents.Priority;
+import org.opentoolset.nettyagents.RateLimit;
+import org.opentoolset.nettyagents.SessionHandler;
+import org.opentoolset.nettyagents.SessionRegistry;
+import org.opentoolset.nettyagents.SubscriptionHandler;
+import org.opentoolset.nettyagents.TokenBucket;
+import org.opentoolset.nettyagents.TopicIndex;
+import org.opentoolset.nettyagents.Transport;
 import org.opentoolset.nettyagents.Utils;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.Timeout;
 
 /**
  * Server Agent is a type of agent which makes listens incoming connection requests to this agent, and maintain communication with each connected peer.
@@ -50,15 +80,33 @@ import io.netty.handler.ssl.SslHandler;
  */
 public class ServerAgent extends AbstractAgent {
 
-	private EventLoopGroup bossGroup = new NioEventLoopGroup();
-	private EventLoopGroup workerGroup = new NioEventLoopGroup();
-	private ServerBootstrap bootstrap = new ServerBootstrap();
+	private ServerBootstrap bootstrap;
+
+	private List<Channel> acceptorChannels = new CopyOnWriteArrayList<>();
+
+	private int acceptorCount = 1;
 
 	private Config config = new Config();
 
 	private Map<SocketAddress, PeerContext> clients = new ConcurrentHashMap<>();
 
-	private boolean shutdownRequested = false;
+	private PeerIndex clientIndex = new PeerIndex();
+
+	private TopicIndex topicIndex = new TopicIndex();
+
+	private SessionRegistry sessionRegistry = new SessionRegistry(Constants.DEFAULT_SESSION_TIMEOUT_SEC);
+
+	private volatile Timeout sessionExpiryTimeout;
+
+	private ClusterNode clusterNode;
+
+	private volatile Predicate<SocketAddress> connectionFilter;
+
+	private volatile boolean shutdownRequested = false;
+
+	private TokenBucket globalMessageBucket;
+
+	private TokenBucket globalByteBucket;
 
 	// ---
 
@@ -76,6 +124,62 @@ public class ServerAgent extends AbstractAgent {
 		return clients;
 	}
 
+	/**
+	 * Returns the connected client with the given ID (see {@link PeerContext#setId})
+	 * 
+	 * @param id
+	 * @return client, or null if there is no connected client with this ID
+	 */
+	public PeerContext getClientById(String id) {
+		return this.clientIndex.getById(id);
+	}
+
+	/**
+	 * Returns the connected client with the given certificate fingerprint
+	 * 
+	 * @param fingerprint
+	 * @return client, or null if there is no connected client with this fingerprint
+	 */
+	public PeerContext getClientByFingerprint(String fingerprint) {
+		return this.clientIndex.getByFingerprint(fingerprint);
+	}
+
+	/**
+	 * Returns the node of this agent in its cluster
+	 * 
+	 * @return cluster node, or null if cluster mode is not enabled
+	 */
+	public ClusterNode getClusterNode() {
+		return clusterNode;
+	}
+
+	/**
+	 * Sets a filter of remote addresses which connections are accepted from. Connections from other addresses are closed as soon as they are accepted.
+	 * 
+	 * @param connectionFilter
+	 */
+	void setConnectionFilter(Predicate<SocketAddress> connectionFilter) {
+		this.connectionFilter = connectionFilter;
+	}
+
+	/**
+	 * Returns index of topic subscriptions of connected clients
+	 * 
+	 * @return
+	 */
+	public TopicIndex getTopicIndex() {
+		return topicIndex;
+	}
+
+	/**
+	 * Returns sessions of clients which enabled session resumption
+	 * 
+	 * @return
+	 */
+	public SessionRegistry getSessionRegistry() {
+		return sessionRegistry;
+	}
+
 	@Override
 	public void stopPeerIdentificationMode() {
 		super.stopPeerIdentificationMode();
@@ -85,6 +189,7 @@ public class ServerAgent extends AbstractAgent {
 			PeerContext client = entry.getValue();
 			if (!client.isTrusted()) {
 				clients.remove(key);
+				onClientRemoved(client);
 				client.getChannelHandlerContext().close();
 				client.setChannelHandlerContext(null);
 			}
@@ -99,22 +204,68 @@ public class ServerAgent extends AbstractAgent {
 
 		buildSSLContextIfEnabled();
 
-		this.bootstrap.group(this.bossGroup, this.workerGroup);
-		this.bootstrap.channel(NioServerSocketChannel.class);
+		RateLimit globalRateLimit = this.config.getGlobalRateLimit();
+		this.globalMessageBucket = globalRateLimit != null ? globalRateLimit.newMessageBucket() : null;
+		this.globalByteBucket = globalRateLimit != null ? globalRateLimit.newByteBucket() : null;
+
+		this.sessionRegistry = new SessionRegistry(this.config.getSessionTimeoutSec());
+
+		AgentRuntime runtime = getRuntime();
+		Transport transport = runtime.getTransport();
+
+		this.bootstrap = new ServerBootstrap();
+		this.bootstrap.group(runtime.getBossGroup(), runtime.getWorkerGroup());
+		this.bootstrap.channel(transport.getServerChannelClass());
 		this.bootstrap.childHandler(new ServerChannelInitializer());
-		this.bootstrap.option(ChannelOption.SO_BACKLOG, 128);
+		this.bootstrap.option(ChannelOption.SO_BACKLOG, this.config.getBacklog());
+		this.acceptorCount = getAcceptorCount(transport);
+		if (this.acceptorCount > 1) {
+			this.bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+		}
 		this.bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
+		this.bootstrap.childOption(ChannelOption.ALLOCATOR, runtime.getAllocator());
+		this.bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(this.config.getWriteBufferLowWaterMark(), this.config.getWriteBufferHighWaterMark()));
+		transport.applyOptions(this.bootstrap, this.config);
 		// this.bootstrap.localAddress(new InetSocketAddress(CVApiConstants.DEFAULT_MANAGER_HOST, CVApiConstants.DEFAULT_MANAGER_PORT));
-		new Thread(() -> maintainConnection()).start();
+		for (int i = 0; i < this.acceptorCount; i++) {
+			bindAcceptor(false);
+		}
+		scheduleSessionExpiry();
+
+		if (this.config.isClustered()) {
+			this.clusterNode = new ClusterNode(this);
+			this.clusterNode.startup();
+		}
 	}
 
+	@Override
 	public void shutdown() {
 		this.shutdownRequested = true;
 
-		this.bossGroup.shutdownGracefully();
-		this.workerGroup.shutdownGracefully();
+		Timeout sessionExpiryTimeout = this.sessionExpiryTimeout;
+		if (sessionExpiryTimeout != null) {
+			sessionExpiryTimeout.cancel();
+		}
+
+		if (this.clusterNode != null) {
+			this.clusterNode.shutdown();
+			this.clusterNode = null;
+		}
+
+		for (Channel acceptorChannel : this.acceptorChannels) {
+			acceptorChannel.close();
+		}
+
+		for (PeerContext client : this.clients.values()) {
+			ChannelHandlerContext channelHandlerContext = client.getChannelHandlerContext();
+			if (channelHandlerContext != null) {
+				channelHandlerContext.close();
+			}
+		}
 
 		getContext().getMessageSender().shutdown();
+
+		super.shutdown();
 	}
 
 	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request, PeerContext peerContext) {
@@ -125,27 +276,258 @@ public class ServerAgent extends AbstractAgent {
 		return getContext().getMessageSender().doRequest(request, peerContext, timeoutSec);
 	}
 
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<TResp> doRequestAsync(TReq request, PeerContext peerContext, int timeoutSec) {
+		return getContext().getMessageSender().doRequestAsync(request, peerContext, timeoutSec);
+	}
+
+	/**
+	 * Sends a request to many clients in parallel and gathers all their responses, errors and timeouts
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerContexts
+	 * @param timeoutSec
+	 * @return
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<GatherResult<TResp>> doRequestAll(TReq request, Collection<PeerContext> peerContexts, int timeoutSec) {
+		return doRequestAll(request, peerContexts, timeoutSec, Integer.MAX_VALUE, null);
+	}
+
+	/**
+	 * Sends a request to many clients in parallel and completes as soon as the required number of responses arrives (eg. first response or a quorum), or all clients have answered, failed or timed out
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerContexts
+	 * @param timeoutSec
+	 * @param required
+	 * @return
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<GatherResult<TResp>> doRequestAll(TReq request, Collection<PeerContext> peerContexts, int timeoutSec, int required) {
+		return doRequestAll(request, peerContexts, timeoutSec, required, null);
+	}
+
+	/**
+	 * Sends a request to many clients in parallel, passes each response to the listener as it arrives and completes as soon as the required number of responses arrives, or all clients have answered, failed or timed out
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerContexts
+	 * @param timeoutSec
+	 * @param required
+	 * @param listener
+	 * @return
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<GatherResult<TResp>> doRequestAll(TReq request, Collection<PeerContext> peerContexts, int timeoutSec, int required, BiConsumer<PeerContext, TResp> listener) {
+		return getContext().getMessageSender().doRequestAll(request, peerContexts, timeoutSec, required, listener);
+	}
+
+	/**
+	 * Sends a request to the client with the given ID and waits until receiving the response or reaching to the specified timeout duration. In cluster mode, the request is forwarded to the node the client is connected to.
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerId
+	 * @param timeoutSec
+	 * @return response, or null if the request couldn't be sent or timed out
+	 * @throws OverloadedException
+	 *           if the client rejected the request because it is overloaded
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request, String peerId, int timeoutSec) {
+		try {
+			return doRequestAsync(request, peerId, timeoutSec).get();
+		} catch (InterruptedException e) {
+			logger.error("Interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof OverloadedException) {
+				throw (OverloadedException) e.getCause();
+			}
+			logger.debug(e.getLocalizedMessage(), e);
+		}
+		return null;
+	}
+
+	/**
+	 * Sends a request to the client with the given ID without blocking. In cluster mode, the request is forwarded to the node the client is connected to.
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param peerId
+	 * @param timeoutSec
+	 * @return future of the response
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<TResp> doRequestAsync(TReq request, String peerId, int timeoutSec) {
+		PeerContext client = getClientById(peerId);
+		if (client != null || this.clusterNode == null) {
+			return client != null ? doRequestAsync(request, client, timeoutSec) : unknownPeer(peerId);
+		}
+
+		return this.clusterNode.forwardRequest(MessageWrapper.createRequest(request), peerId, timeoutSec).thenApply(responseWrapper -> responseWrapper.deserializeResponse(request.getResponseClass()));
+	}
+
+	/**
+	 * Sends a message to the client with the given ID without blocking. In cluster mode, the message is forwarded to the node the client is connected to.
+	 * 
+	 * @param message
+	 * @param peerId
+	 * @return future which is completed when the message was written
+	 */
+	public CompletableFuture<Void> sendMessage(AbstractMessage message, String peerId) {
+		PeerContext client = getClientById(peerId);
+		if (client != null || this.clusterNode == null) {
+			return client != null ? sendMessageTracked(message, client, DeliveryMode.WRITTEN) : unknownPeer(peerId);
+		}
+
+		return this.clusterNode.forwardMessage(MessageWrapper.create(message), peerId);
+	}
+
 	public void sendMessage(AbstractMessage message, PeerContext peerContext) {
 		getContext().getMessageSender().sendMessage(message, peerContext);
 	}
 
+	public void sendMessage(AbstractMessage message, PeerContext peerContext, Priority priority) {
+		getContext().getMessageSender().sendMessage(message, peerContext, priority);
+	}
+
+	public CompletableFuture<Void> sendMessageTracked(AbstractMessage message, PeerContext peerContext, DeliveryMode deliveryMode) {
+		return getContext().getMessageSender().sendMessageTracked(message, peerContext, deliveryMode);
+	}
+
+	/**
+	 * Sends a message to all connected clients, serializing it only once. Clients which are not writable at the moment are skipped.
+	 * 
+	 * @param message
+	 * @return future of the number of clients the message was written to
+	 */
+	public CompletableFuture<Integer> broadcast(AbstractMessage message) {
+		return getContext().getMessageSender().multicast(message, this.clients.values());
+	}
+
+	/**
+	 * Sends a message to the connected clients matching the filter, serializing it only once. Clients which are not writable at the moment are skipped.
+	 * 
+	 * @param message
+	 * @param filter
+	 * @return future of the number of clients the message was written to
+	 */
+	public CompletableFuture<Integer> multicast(AbstractMessage message, Predicate<PeerContext> filter) {
+		return getContext().getMessageSender().multicast(message, this.clients.values().stream().filter(filter).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Publishes a message to the clients subscribed to the topic (see {@link TopicIndex} for topic patterns), serializing it only once. Subscribers which are not writable at the moment are skipped.
+	 * 
+	 * @param topic
+	 * @param message
+	 * @return future of the number of subscribers the message was written to
+	 */
+	public CompletableFuture<Integer> publish(String topic, AbstractMessage message) {
+		return getContext().getMessageSender().multicast(message, this.topicIndex.getSubscribers(topic));
+	}
+
 	// ---
 
-	private void maintainConnection() {
-		try {
-			while (!this.shutdownRequested) {
-				ChannelFuture channelFuture = this.bootstrap.bind(this.config.getLocalPort()).sync();
-				channelFuture.channel().closeFuture().sync();
+	/**
+	 * Binds a listening socket without blocking the caller. An acceptor which is closed while the agent is running is bound again after a delay, since the port may not be released right away.
+	 * 
+	 * @param rebind
+	 *          true if an acceptor closed while running is being replaced, in which case failed attempts are retried
+	 */
+	private void bindAcceptor(boolean rebind) {
+		this.bootstrap.bind(this.config.getLocalPort()).addListener((ChannelFutureListener) future -> {
+			if (!future.isSuccess()) {
+				if (rebind && !this.shutdownRequested) {
+					logger.warn("Rebinding acceptor failed, retrying: {}", future.cause().getLocalizedMessage());
+					scheduleRebind();
+				} else {
+					logger.error(future.cause().getLocalizedMessage(), future.cause());
+				}
+				return;
+			}
+
+			Channel acceptorChannel = future.channel();
+			this.acceptorChannels.add(acceptorChannel);
+			if (this.shutdownRequested) {
+				acceptorChannel.close();
 			}
-		} catch (Exception e) {
-			logger.error(e.getLocalizedMessage(), e);
+			acceptorChannel.closeFuture().addListener(closeFuture -> {
+				this.acceptorChannels.remove(acceptorChannel);
+				if (!this.shutdownRequested) {
+					scheduleRebind();
+				}
+			});
+		});
+	}
+
+	private void scheduleRebind() {
+		getRuntime().getBossGroup().schedule(() -> {
+			if (!this.shutdownRequested) {
+				bindAcceptor(true);
+			}
+		}, Constants.DEFAULT_REBIND_DELAY_MS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns number of listening sockets to bind. Multiple acceptors require SO_REUSEPORT, so they are only used with epoll transport.<br />
+	 * Called once on startup, so that a configuration which is not applicable to the transport is warned about only once.
+	 * 
+	 * @param transport
+	 * @return
+	 */
+	private int getAcceptorCount(Transport transport) {
+		int acceptors = this.config.getAcceptors();
+		if (acceptors > 1 && transport != Transport.EPOLL) {
+			logger.warn("Multiple acceptors require epoll transport, binding a single acceptor");
+			return 1;
+		}
+		return Math.max(acceptors, 1);
+	}
+
+	@Override
+	protected AgentRuntime createRuntime() {
+		int bossThreads = Math.max(this.config.getBossThreads(), this.config.getAcceptors());
+		return new AgentRuntime(this.config.getTransport(), bossThreads, this.config.getWorkerThreads(), this.config.getDispatcherThreads());
+	}
+
+	PeerIndex getClientIndex() {
+		return clientIndex;
+	}
+
+	List<Channel> getAcceptorChannels() {
+		return acceptorChannels;
+	}
+
+	private static <T> CompletableFuture<T> unknownPeer(String peerId) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(new IllegalArgumentException("Peer is not connected: " + peerId));
+		return future;
+	}
+
+	private void scheduleSessionExpiry() {
+		if (!this.shutdownRequested) {
+			this.sessionExpiryTimeout = getRuntime().getTimer().newTimeout(timeout -> {
+				this.sessionRegistry.expire();
+				scheduleSessionExpiry();
+			}, this.config.getSessionTimeoutSec(), TimeUnit.SECONDS);
 		}
 	}
 
+	private void onClientRemoved(PeerContext client) {
+		this.clientIndex.remove(client);
+		this.topicIndex.unsubscribeAll(client);
+	}
+
 	private PeerContext addOrUpdateClientContext(SocketAddress key, PeerContext peerContext, ChannelHandlerContext channelHandlerContext, X509Certificate peerCert) {
 		peerContext = peerContext != null ? peerContext : new PeerContext();
 		peerContext.setCert(peerCert);
 		peerContext.setChannelHandlerContext(channelHandlerContext);
+		channelHandlerContext.channel().attr(PeerContext.KEY).set(peerContext);
+		this.clientIndex.add(peerContext);
 		return peerContext;
 	}
 
@@ -158,7 +540,7 @@ public class ServerAgent extends AbstractAgent {
 				SslContextBuilder builder = SslContextBuilder.forServer(key, cert);
 				builder.trustManager(new TrustManager(() -> getContext()));
 				builder.clientAuth(ClientAuth.REQUIRE);
-				SslContext sslContext = builder.build();
+				SslContext sslContext = buildSslContext(builder);
 				setSslContext(sslContext);
 			} catch (IOException | GeneralSecurityException e) {
 				logger.error(e.getLocalizedMessage(), e);
@@ -171,15 +553,242 @@ public class ServerAgent extends AbstractAgent {
 	public static class Config extends AbstractConfig {
 
 		private int localPort = Constants.DEFAULT_SERVER_PORT;
+		private RateLimit peerRateLimit;
+		private Map<String, RateLimit> peerRateLimitsByFingerprint = new HashMap<>();
+		private RateLimit globalRateLimit;
+		private RateLimit.Action rateLimitAction = RateLimit.Action.PAUSE_READS;
+		private int bossThreads = Constants.DEFAULT_BOSS_THREADS;
+		private int workerThreads = Constants.DEFAULT_WORKER_THREADS;
+		private int backlog = Constants.DEFAULT_SO_BACKLOG;
+		private int acceptors = Constants.DEFAULT_ACCEPTORS;
+		private int sessionTimeoutSec = Constants.DEFAULT_SESSION_TIMEOUT_SEC;
+		private String clusterNodeId;
+		private int clusterPort = Constants.DEFAULT_CLUSTER_PORT;
+		private Map<String, InetSocketAddress> clusterMembers = new LinkedHashMap<>();
+		private Map<String, X509Certificate> clusterMemberCerts = new LinkedHashMap<>();
 
 		public int getLocalPort() {
 			return localPort;
 		}
 
+		public String getClusterNodeId() {
+			return clusterNodeId;
+		}
+
+		public int getClusterPort() {
+			return clusterPort;
+		}
+
+		public Map<String, InetSocketAddress> getClusterMembers() {
+			return clusterMembers;
+		}
+
+		/**
+		 * Returns certificates of cluster members with node ID as key
+		 * 
+		 * @return
+		 */
+		public Map<String, X509Certificate> getClusterMemberCerts() {
+			return clusterMemberCerts;
+		}
+
+		public boolean isClustered() {
+			return this.clusterNodeId != null;
+		}
+
+		public int getBossThreads() {
+			return bossThreads;
+		}
+
+		public int getWorkerThreads() {
+			return workerThreads;
+		}
+
+		public int getBacklog() {
+			return backlog;
+		}
+
+		public int getAcceptors() {
+			return acceptors;
+		}
+
+		public int getSessionTimeoutSec() {
+			return sessionTimeoutSec;
+		}
+
+		public RateLimit getPeerRateLimit() {
+			return peerRateLimit;
+		}
+
+		/**
+		 * Returns inbound rate limits of the peer with the given certificate fingerprint, or the default limits of peers if there are no specific limits for it
+		 * 
+		 * @param fingerprint
+		 * @return
+		 */
+		public RateLimit getPeerRateLimit(String fingerprint) {
+			RateLimit rateLimit = fingerprint != null ? this.peerRateLimitsByFingerprint.get(fingerprint) : null;
+			return rateLimit != null ? rateLimit : this.peerRateLimit;
+		}
+
+		public RateLimit getGlobalRateLimit() {
+			return globalRateLimit;
+		}
+
+		public RateLimit.Action getRateLimitAction() {
+			return rateLimitAction;
+		}
+
+		public boolean isRateLimited() {
+			return this.peerRateLimit != null || this.globalRateLimit != null || !this.peerRateLimitsByFingerprint.isEmpty();
+		}
+
 		public Config setLocalPort(int localPort) {
 			this.localPort = localPort;
 			return this;
 		}
+
+		/**
+		 * Enables cluster mode (see {@link ClusterNode}) with the given ID of this node, listening other nodes on the given port
+		 * 
+		 * @param clusterNodeId
+		 * @param clusterPort
+		 * @return
+		 */
+		public Config setCluster(String clusterNodeId, int clusterPort) {
+			this.clusterNodeId = clusterNodeId;
+			this.clusterPort = clusterPort;
+			return this;
+		}
+
+		/**
+		 * Adds a member node to the cluster. Members can be the same list on all nodes, since a node doesn't connect to itself.
+		 * 
+		 * @param nodeId
+		 * @param host
+		 * @param clusterPort
+		 * @return
+		 */
+		public Config addClusterMember(String nodeId, String host, int clusterPort) {
+			this.clusterMembers.put(nodeId, InetSocketAddress.createUnresolved(host, clusterPort));
+			return this;
+		}
+
+		/**
+		 * Adds a member node to the cluster with its certificate. If TLS is enabled, cluster connections trust only the certificates of members, not the certificates trusted for clients of this agent.
+		 * 
+		 * @param nodeId
+		 * @param host
+		 * @param clusterPort
+		 * @param cert
+		 * @return
+		 */
+		public Config addClusterMember(String nodeId, String host, int clusterPort, X509Certificate cert) {
+			addClusterMember(nodeId, host, clusterPort);
+			this.clusterMemberCerts.put(nodeId, cert);
+			return this;
+		}
+
+		/**
+		 * Sets number of threads accepting connections. It is raised to the number of acceptors if it is lower. Ignored if a shared runtime is set.
+		 * 
+		 * @param bossThreads
+		 * @return
+		 */
+		public Config setBossThreads(int bossThreads) {
+			this.bossThreads = bossThreads;
+			return this;
+		}
+
+		/**
+		 * Sets number of I/O threads serving connected peers, zero means the default of Netty (twice the number of cores). Ignored if a shared runtime is set.
+		 * 
+		 * @param workerThreads
+		 * @return
+		 */
+		public Config setWorkerThreads(int workerThreads) {
+			this.workerThreads = workerThreads;
+			return this;
+		}
+
+		/**
+		 * Sets length of the accept queue (SO_BACKLOG). Operating system limits such as net.core.somaxconn may cap this value.
+		 * 
+		 * @param backlog
+		 * @return
+		 */
+		public Config setBacklog(int backlog) {
+			this.backlog = backlog;
+			return this;
+		}
+
+		/**
+		 * Sets number of listening sockets bound to the local port with SO_REUSEPORT, so that the kernel spreads incoming connections over boss threads.<br />
+		 * Only applies to epoll transport; a single acceptor is bound otherwise.
+		 * 
+		 * @param acceptors
+		 * @return
+		 */
+		public Config setAcceptors(int acceptors) {
+			this.acceptors = acceptors;
+			return this;
+		}
+
+		/**
+		 * Sets how long a session of a client is kept after its last connection is lost, so that requests and messages it resends after reconnecting are deduplicated
+		 * 
+		 * @param sessionTimeoutSec
+		 * @return
+		 */
+		public Config setSessionTimeoutSec(int sessionTimeoutSec) {
+			this.sessionTimeoutSec = sessionTimeoutSec;
+			return this;
+		}
+
+		/**
+		 * Sets default inbound rate limits of each peer
+		 * 
+		 * @param peerRateLimit
+		 * @return
+		 */
+		public Config setPeerRateLimit(RateLimit peerRateLimit) {
+			this.peerRateLimit = peerRateLimit;
+			return this;
+		}
+
+		/**
+		 * Sets inbound rate limits of the peer identified by the given certificate fingerprint
+		 * 
+		 * @param fingerprint
+		 * @param peerRateLimit
+		 * @return
+		 */
+		public Config setPeerRateLimit(String fingerprint, RateLimit peerRateLimit) {
+			this.peerRateLimitsByFingerprint.put(fingerprint, peerRateLimit);
+			return this;
+		}
+
+		/**
+		 * Sets inbound rate limits of all peers together
+		 * 
+		 * @param globalRateLimit
+		 * @return
+		 */
+		public Config setGlobalRateLimit(RateLimit globalRateLimit) {
+			this.globalRateLimit = globalRateLimit;
+			return this;
+		}
+
+		/**
+		 * Sets the action taken when a peer exceeds its rate limits
+		 * 
+		 * @param rateLimitAction
+		 * @return
+		 */
+		public Config setRateLimitAction(RateLimit.Action rateLimitAction) {
+			this.rateLimitAction = rateLimitAction;
+			return this;
+		}
 	}
 
 	// ---
@@ -195,12 +804,18 @@ public class ServerAgent extends AbstractAgent {
 
 				SslContext sslContext = getSslContext();
 				if (sslContext != null) {
-					this.sslHandler = sslContext.newHandler(channel.alloc());
+					this.sslHandler = sslContext.newHandler(channel.alloc(), getTlsExecutor());
 					this.sslHandler.setHandshakeTimeout(Constants.DEFAULT_TLS_HANDSHAKE_TIMEOUT_SEC, TimeUnit.SECONDS);
 					pipeline.addLast(this.sslHandler);
 				}
 
-				pipeline.addLast(new MessageEncoder(), new MessageDecoder(), new InboundMessageHandler(this));
+				AbstractConfig config = getConfig();
+				OutboundPriorityHandler outboundPriorityHandler = new OutboundPriorityHandler(config.getOutboundQueueCapacity(), config.getOverflowPolicy(), config.newFlowControl());
+				pipeline.addLast(new MessageEncoder(), new MessageDecoder(), new HeartbeatHandler(config.getHeartbeatIntervalSec()), new AcknowledgementHandler());
+				if (ServerAgent.this.config.isRateLimited()) {
+					pipeline.addLast(new InboundRateLimitHandler(ServerAgent.this.config::getPeerRateLimit, ServerAgent.this.globalMessageBucket, ServerAgent.this.globalByteBucket, ServerAgent.this.config.getRateLimitAction()));
+				}
+				pipeline.addLast(outboundPriorityHandler, new SessionHandler(ServerAgent.this.sessionRegistry, config.isTlsEnabled()), new SubscriptionHandler(ServerAgent.this.topicIndex, config.isTlsEnabled()), new InboundMessageHandler(this));
 				pipeline.addLast(new ServerChannelHandler(this.sslHandler));
 			} catch (Exception e) {
 				logger.debug(e.getLocalizedMessage(), e);
@@ -219,9 +834,8 @@ public class ServerAgent extends AbstractAgent {
 
 		@Override
 		public boolean verifyChannelHandlerContext(ChannelHandlerContext ctx) {
-			boolean result = true;
-			result = result || getContext().isTrustNegotiationMode();
-			result = result || ServerAgent.this.clients.values().stream().anyMatch(client -> Utils.verifyChannelHandlerContext(ctx, client));
+			boolean result = getContext().isTrustNegotiationMode();
+			result = result || Utils.verifyChannelHandlerContext(ctx, PeerContext.of(ctx.channel()));
 			return result;
 		}
 	}
@@ -238,6 +852,13 @@ public class ServerAgent extends AbstractAgent {
 		public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
 			SocketAddress remoteAddress = ctx.channel().remoteAddress();
 
+			Predicate<SocketAddress> connectionFilter = ServerAgent.this.connectionFilter;
+			if (connectionFilter != null && !connectionFilter.test(remoteAddress)) {
+				logger.warn("Connection from {} was refused", remoteAddress);
+				ctx.close();
+				return;
+			}
+
 			if (getConfig().isTlsEnabled()) {
 				this.sslHandler.handshakeFuture().addListener(future -> onHandshakeCompleted(ctx, remoteAddress));
 			} else {
@@ -248,7 +869,10 @@ public class ServerAgent extends AbstractAgent {
 		@Override
 		public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
 			SocketAddress remoteAddress = ctx.channel().remoteAddress();
-			ServerAgent.this.clients.remove(remoteAddress);
+			PeerContext client = ServerAgent.this.clients.remove(remoteAddress);
+			if (client != null) {
+				onClientRemoved(client);
+			}
 		}
 
 		@Override
@@ -271,7 +895,8 @@ public class ServerAgent extends AbstractAgent {
 					}
 				}
 			} catch (Exception e) {
-				logger.debug(e.getLocalizedMessage(), e);
+				logger.warn("Closing connection of untrusted peer {}: {}", ctx.channel().remoteAddress(), e.getLocalizedMessage());
+				ctx.close();
 			}
 		}
 	}
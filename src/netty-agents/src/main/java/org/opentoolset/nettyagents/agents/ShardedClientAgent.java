@@ -0,0 +1,309 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents.agents;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.opentoolset.nettyagents.AbstractMessage;
+import org.opentoolset.nettyagents.AbstractRequest;
+import org.opentoolset.nettyagents.AgentRuntime;
+import org.opentoolset.nettyagents.Constants;
+import org.opentoolset.nettyagents.HashRing;
+import org.opentoolset.nettyagents.OverloadedException;
+import org.opentoolset.nettyagents.Routable;
+
+/**
+ * Sharded Client Agent connects to a set of server-peers (shards) and routes each message and request to one of them by a key, using consistent hashing with virtual nodes (see {@link HashRing}). So the same key always reaches
+ * the same shard, and adding or removing a shard moves only a minimal share of keys.<br />
+ * Each shard is served by its own {@link ClientAgent} which maintains its connection independently; all shards share one runtime.
+ */
+public class ShardedClientAgent {
+
+	private Config config = new Config();
+
+	private List<Consumer<ClientAgent>> shardInitializers = new CopyOnWriteArrayList<>();
+
+	private volatile HashRing<ClientAgent> ring;
+
+	private AgentRuntime runtime;
+
+	private boolean privateRuntime;
+
+	// ---
+
+	/**
+	 * Configuration object including configuration parameters for this agent.<br />
+	 * All configuration adjustments should be made before calling the method "startup".
+	 * 
+	 * @return Configuration object
+	 */
+	public Config getConfig() {
+		return config;
+	}
+
+	/**
+	 * Sets a runtime shared with other agents. Must be called before startup.
+	 * 
+	 * @param runtime
+	 */
+	public void setRuntime(AgentRuntime runtime) {
+		this.runtime = runtime;
+		this.privateRuntime = false;
+	}
+
+	/**
+	 * Adds an initializer which is applied to the client agent of each shard before its startup, eg. to configure TLS
+	 * 
+	 * @param shardInitializer
+	 */
+	public void addShardInitializer(Consumer<ClientAgent> shardInitializer) {
+		this.shardInitializers.add(shardInitializer);
+	}
+
+	/**
+	 * Creates a request handler for a specific request type on all shards
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param classOfRequest
+	 * @param function
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> void setRequestHandler(Class<TReq> classOfRequest, Function<TReq, TResp> function) {
+		applyToShards(shard -> shard.setRequestHandler(classOfRequest, function));
+	}
+
+	/**
+	 * Creates a message handler for a specific message type on all shards
+	 * 
+	 * @param <T>
+	 * @param classOfMessage
+	 * @param consumer
+	 */
+	public <T extends AbstractMessage> void setMessageHandler(Class<T> classOfMessage, Consumer<T> consumer) {
+		applyToShards(shard -> shard.setMessageHandler(classOfMessage, consumer));
+	}
+
+	/**
+	 * Starts client agents of the configured shards. Calling it again while the agent is running has no effect.
+	 */
+	public synchronized void startup() {
+		if (this.ring != null) {
+			return;
+		}
+
+		if (this.runtime == null) {
+			this.runtime = new AgentRuntime();
+			this.privateRuntime = true;
+		}
+
+		HashRing<ClientAgent> ring = new HashRing<>(this.config.getVirtualNodes());
+		for (Entry<String, InetSocketAddress> entry : this.config.getShards().entrySet()) {
+			ring = ring.with(entry.getKey(), startShard(entry.getValue()));
+		}
+		this.ring = ring;
+	}
+
+	public synchronized void shutdown() {
+		HashRing<ClientAgent> ring = this.ring;
+		if (ring != null) {
+			for (ClientAgent shard : ring.getNodes().values()) {
+				shard.shutdown();
+			}
+			this.ring = null;
+		}
+
+		if (this.privateRuntime && this.runtime != null) {
+			this.runtime.release();
+			this.runtime = null;
+		}
+	}
+
+	/**
+	 * Adds a shard while the agent is running. Only the keys falling between the points of the new shard and their predecessors on the ring move to it.
+	 * 
+	 * @param shardId
+	 * @param host
+	 * @param port
+	 * @throws IllegalArgumentException
+	 *           if a shard with the same ID exists; it should be removed first
+	 */
+	public synchronized void addShard(String shardId, String host, int port) {
+		if (this.config.getShards().containsKey(shardId)) {
+			throw new IllegalArgumentException("Shard already exists: " + shardId);
+		}
+
+		this.config.addShard(shardId, host, port);
+		if (this.ring != null) {
+			this.ring = this.ring.with(shardId, startShard(this.config.getShards().get(shardId)));
+		}
+	}
+
+	/**
+	 * Removes a shard while the agent is running. Only the keys of the removed shard move to other shards.
+	 * 
+	 * @param shardId
+	 */
+	public synchronized void removeShard(String shardId) {
+		this.config.getShards().remove(shardId);
+		if (this.ring != null) {
+			ClientAgent shard = this.ring.getNodes().get(shardId);
+			this.ring = this.ring.without(shardId);
+			if (shard != null) {
+				shard.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Returns the client agent of the shard owning the key
+	 * 
+	 * @param key
+	 * @return client agent of the shard
+	 * @throws IllegalStateException
+	 *           if the agent is not started or has no shards
+	 */
+	public ClientAgent getShard(String key) {
+		HashRing<ClientAgent> ring = this.ring;
+		ClientAgent shard = ring != null ? ring.get(key) : null;
+		if (shard == null) {
+			throw new IllegalStateException("There are no shards to route to");
+		}
+		return shard;
+	}
+
+	/**
+	 * Returns client agents of all shards by their IDs
+	 * 
+	 * @return
+	 */
+	public Map<String, ClientAgent> getShards() {
+		HashRing<ClientAgent> ring = this.ring;
+		return ring != null ? ring.getNodes() : new LinkedHashMap<>();
+	}
+
+	/**
+	 * Sends a message to the shard owning the key without waiting a response
+	 * 
+	 * @param message
+	 * @param key
+	 */
+	public void sendMessage(AbstractMessage message, String key) {
+		getShard(key).sendMessage(message);
+	}
+
+	/**
+	 * Sends a message to the shard owning its routing key (see {@link Routable}) without waiting a response
+	 * 
+	 * @param message
+	 */
+	public void sendMessage(AbstractMessage message) {
+		sendMessage(message, getRoutingKey(message));
+	}
+
+	/**
+	 * Sends a request to the shard owning the key and waits until receiving the response
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @param key
+	 * @return
+	 * @throws OverloadedException
+	 *           if the shard rejected the request because it is overloaded
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request, String key) {
+		return getShard(key).doRequest(request);
+	}
+
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request, String key, int timeoutSec) {
+		return getShard(key).doRequest(request, timeoutSec);
+	}
+
+	/**
+	 * Sends a request to the shard owning its routing key (see {@link Routable}) and waits until receiving the response
+	 * 
+	 * @param <TReq>
+	 * @param <TResp>
+	 * @param request
+	 * @return
+	 */
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> TResp doRequest(TReq request) {
+		return doRequest(request, getRoutingKey(request));
+	}
+
+	public <TReq extends AbstractRequest<TResp>, TResp extends AbstractMessage> CompletableFuture<TResp> doRequestAsync(TReq request, String key, int timeoutSec) {
+		return getShard(key).doRequestAsync(request, timeoutSec);
+	}
+
+	// ---
+
+	private ClientAgent startShard(InetSocketAddress address) {
+		ClientAgent shard = new ClientAgent();
+		shard.getConfig().setRemoteHost(address.getHostString()).setRemotePort(address.getPort());
+		shard.setRuntime(this.runtime);
+		for (Consumer<ClientAgent> shardInitializer : this.shardInitializers) {
+			shardInitializer.accept(shard);
+		}
+		shard.startup();
+		return shard;
+	}
+
+	private synchronized void applyToShards(Consumer<ClientAgent> shardInitializer) {
+		this.shardInitializers.add(shardInitializer);
+		if (this.ring != null) {
+			for (ClientAgent shard : this.ring.getNodes().values()) {
+				shardInitializer.accept(shard);
+			}
+		}
+	}
+
+	private static String getRoutingKey(AbstractMessage message) {
+		String routingKey = message instanceof Routable ? ((Routable) message).getRoutingKey() : null;
+		if (routingKey == null) {
+			throw new IllegalArgumentException("Message has no routing key: " + message.getClass().getName());
+		}
+		return routingKey;
+	}
+
+	// ---
+
+	public static class Config {
+
+		private Map<String, InetSocketAddress> shards = new LinkedHashMap<>();
+		private int virtualNodes = Constants.DEFAULT_VIRTUAL_NODES;
+
+		public Map<String, InetSocketAddress> getShards() {
+			return shards;
+		}
+
+		public int getVirtualNodes() {
+			return virtualNodes;
+		}
+
+		public Config addShard(String shardId, String host, int port) {
+			this.shards.put(shardId, InetSocketAddress.createUnresolved(host, port));
+			return this;
+		}
+
+		/**
+		 * Sets number of points of each shard on the hash ring. More points spread keys more evenly at the cost of a larger ring.
+		 * 
+		 * @param virtualNodes
+		 * @return
+		 */
+		public Config setVirtualNodes(int virtualNodes) {
+			this.virtualNodes = virtualNodes;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class AcknowledgementHandlerTest {
+
+	@Test
+	public void testAcknowledgement() throws Exception {
+		EmbeddedChannel sender = new EmbeddedChannel(new AcknowledgementHandler());
+		EmbeddedChannel receiver = new EmbeddedChannel(new AcknowledgementHandler());
+
+		CompletableFuture<Void> first = sendTracked(sender, receiver, "first");
+		CompletableFuture<Void> second = sendTracked(sender, receiver, "second");
+		Assert.assertFalse(first.isDone());
+
+		transferAcks(receiver, sender);
+		Assert.assertTrue(first.isDone() && !first.isCompletedExceptionally());
+		Assert.assertTrue(second.isDone() && !second.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testRejectedMessageIsNotAcknowledged() throws Exception {
+		EmbeddedChannel sender = new EmbeddedChannel(new AcknowledgementHandler());
+		InboundRateLimitHandler rateLimitHandler = new InboundRateLimitHandler(fingerprint -> new RateLimit(1, 0), null, null, RateLimit.Action.REJECT);
+		EmbeddedChannel receiver = new EmbeddedChannel(new AcknowledgementHandler(), rateLimitHandler);
+
+		CompletableFuture<Void> accepted = sendTracked(sender, receiver, "accepted");
+		CompletableFuture<Void> rejected = sendTracked(sender, receiver, "rejected");
+		Assert.assertNotNull(receiver.readInbound());
+		Assert.assertNull(receiver.readInbound());
+
+		// An ack after the rejected message must not complete it
+		TimeUnit.MILLISECONDS.sleep(1100);
+		CompletableFuture<Void> later = sendTracked(sender, receiver, "later");
+		transferAcks(receiver, sender);
+
+		Assert.assertTrue(accepted.isDone() && !accepted.isCompletedExceptionally());
+		Assert.assertTrue(later.isDone() && !later.isCompletedExceptionally());
+		Assert.assertTrue(rejected.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testControlFramesAreNotLimited() {
+		InboundRateLimitHandler rateLimitHandler = new InboundRateLimitHandler(fingerprint -> new RateLimit(1, 0), null, null, RateLimit.Action.REJECT);
+		EmbeddedChannel receiver = new EmbeddedChannel(rateLimitHandler);
+
+		receiver.writeInbound(MessageWrapper.create(new SampleMessage("message")));
+		for (int i = 0; i < 10; i++) {
+			receiver.writeInbound(MessageWrapper.createAck(i), MessageWrapper.createPing(i), MessageWrapper.createCredit(1, i));
+		}
+
+		int count = 0;
+		while (receiver.readInbound() != null) {
+			count++;
+		}
+		Assert.assertEquals(31, count);
+	}
+
+	// ---
+
+	private static CompletableFuture<Void> sendTracked(EmbeddedChannel sender, EmbeddedChannel receiver, String text) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		sender.writeAndFlush(MessageWrapper.createTracked(new SampleMessage(text), Priority.NORMAL, future));
+		receiver.writeInbound((Object) sender.readOutbound());
+		return future;
+	}
+
+	private static void transferAcks(EmbeddedChannel receiver, EmbeddedChannel sender) throws InterruptedException {
+		TimeUnit.MILLISECONDS.sleep(Constants.DEFAULT_ACK_DELAY_MS * 2);
+		receiver.runScheduledPendingTasks();
+
+		Object frame;
+		while ((frame = receiver.readOutbound()) != null) {
+			sender.writeInbound(frame);
+		}
+	}
+}
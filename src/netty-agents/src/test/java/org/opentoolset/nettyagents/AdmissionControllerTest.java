@@ -0,0 +1,131 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleProvider;
+import org.opentoolset.nettyagents.TestData.SampleRequest;
+import org.opentoolset.nettyagents.TestData.SampleResponse;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+
+public class AdmissionControllerTest {
+
+	private static final long MIN_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	public void testTryAcquireAndRelease() {
+		AdmissionController admissionController = new AdmissionController(2, 1, 10);
+		Assert.assertTrue(admissionController.tryAcquire());
+		Assert.assertTrue(admissionController.tryAcquire());
+		Assert.assertFalse(admissionController.tryAcquire());
+		Assert.assertEquals(2, admissionController.getInFlight());
+		Assert.assertEquals(1, admissionController.getRejectedCount());
+
+		admissionController.release(MIN_RTT_NANOS);
+		Assert.assertEquals(1, admissionController.getInFlight());
+		Assert.assertTrue(admissionController.tryAcquire());
+	}
+
+	@Test
+	public void testLimitGrowsWhileLatencyIsFlat() {
+		AdmissionController admissionController = new AdmissionController(10, 1, 100);
+		for (int i = 0; i < 200; i++) {
+			admissionController.tryAcquire();
+			admissionController.release(MIN_RTT_NANOS);
+		}
+		Assert.assertEquals(100, admissionController.getLimit());
+	}
+
+	@Test
+	public void testLimitConvergesWhenLatencyGrows() {
+		AdmissionController admissionController = new AdmissionController(50, 1, 100);
+		admissionController.tryAcquire();
+		admissionController.release(MIN_RTT_NANOS);
+
+		// Latency of ten times the minimum means requests are mostly queued
+		for (int i = 0; i < 200; i++) {
+			admissionController.tryAcquire();
+			admissionController.release(10 * MIN_RTT_NANOS);
+		}
+		int limit = admissionController.getLimit();
+		Assert.assertTrue("Limit: " + limit, limit < 10);
+
+		for (int i = 0; i < 200; i++) {
+			admissionController.tryAcquire();
+			admissionController.release(10 * MIN_RTT_NANOS);
+			Assert.assertTrue(Math.abs(admissionController.getLimit() - limit) <= 1);
+		}
+	}
+
+	@Test
+	public void testLimitStaysWithinBounds() {
+		AdmissionController admissionController = new AdmissionController(20, 10, 20);
+		admissionController.tryAcquire();
+		admissionController.release(MIN_RTT_NANOS);
+		for (int i = 0; i < 100; i++) {
+			admissionController.tryAcquire();
+			admissionController.release(100 * MIN_RTT_NANOS);
+		}
+		Assert.assertEquals(10, admissionController.getLimit());
+
+		for (int i = 0; i < 100; i++) {
+			admissionController.tryAcquire();
+			admissionController.release(MIN_RTT_NANOS);
+		}
+		Assert.assertEquals(20, admissionController.getLimit());
+	}
+
+	@Test
+	public void testOverloadedRequest() throws Exception {
+		SampleProvider serverProvider = new SampleProvider();
+		serverProvider.getContext().getMessageReceiver().setRequestHandler(SampleRequest.class, request -> new SampleResponse(request.getText(), request.getNumber() + 1));
+		AdmissionController admissionController = new AdmissionController(1, 1, 1);
+		serverProvider.getContext().setAdmissionController(admissionController);
+
+		SampleProvider clientProvider = new SampleProvider();
+		MessageSender messageSender = clientProvider.getContext().getMessageSender();
+
+		try (LocalChannels channels = new LocalChannels(() -> new ChannelHandler[] { new InboundMessageHandler(serverProvider) })) {
+			Channel channel = channels.connect(new InboundMessageHandler(clientProvider));
+			PeerContext server = new PeerContext();
+			server.setChannelHandlerContext(channel.pipeline().lastContext());
+
+			// The only slot is taken, so the request is rejected
+			Assert.assertTrue(admissionController.tryAcquire());
+			try {
+				messageSender.doRequest(new SampleRequest("request", 1), server, 5);
+				Assert.fail();
+			} catch (OverloadedException e) {
+				Assert.assertEquals(1, admissionController.getRejectedCount());
+			}
+
+			CompletableFuture<SampleResponse> future = messageSender.doRequestAsync(new SampleRequest("request", 1), server, 5);
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				Assert.fail();
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof OverloadedException);
+			}
+
+			admissionController.release(MIN_RTT_NANOS);
+			SampleResponse response = messageSender.doRequest(new SampleRequest("request", 1), server, 5);
+			Assert.assertEquals(2, response.getNumber());
+
+			// The slot is released after the response is written
+			long deadline = System.currentTimeMillis() + 5000;
+			while (admissionController.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(0, admissionController.getInFlight());
+		}
+	}
+}
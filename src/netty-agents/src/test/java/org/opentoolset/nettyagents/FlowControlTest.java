@@ -0,0 +1,133 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+import org.opentoolset.nettyagents.TestData.SampleProvider;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class FlowControlTest {
+
+	private static final int WINDOW = 4;
+
+	private static final int COUNT = 10;
+
+	@Test
+	public void testWindowExhaustionAndRecovery() {
+		AtomicInteger handled = new AtomicInteger();
+		SampleProvider provider = new SampleProvider();
+		provider.getContext().getMessageReceiver().setMessageHandler(SampleMessage.class, message -> handled.incrementAndGet());
+
+		EmbeddedChannel receiver = newChannel(new InboundMessageHandler(provider));
+		EmbeddedChannel sender = newChannel(new ChannelInboundHandlerAdapter());
+		List<CompletableFuture<Void>> futures = send(sender, COUNT);
+
+		// Only a window of messages is written until the receiver grants credits back
+		transfer(sender, receiver);
+		Assert.assertEquals(WINDOW, handled.get());
+		Assert.assertEquals(0, sender.attr(FlowControl.KEY).get().getSendCredits());
+
+		pump(sender, receiver);
+		Assert.assertEquals(COUNT, handled.get());
+		assertAllWritten(futures);
+	}
+
+	@Test
+	public void testCreditsOfRejectedMessagesAreGranted() {
+		AtomicInteger handled = new AtomicInteger();
+		SampleProvider provider = new SampleProvider();
+		provider.getContext().getMessageReceiver().setMessageHandler(SampleMessage.class, message -> handled.incrementAndGet());
+
+		InboundRateLimitHandler rateLimitHandler = new InboundRateLimitHandler(fingerprint -> new RateLimit(1, 0), null, null, RateLimit.Action.REJECT);
+		EmbeddedChannel receiver = newChannel(rateLimitHandler, new InboundMessageHandler(provider));
+		EmbeddedChannel sender = newChannel(new ChannelInboundHandlerAdapter());
+		List<CompletableFuture<Void>> futures = send(sender, COUNT);
+
+		pump(sender, receiver);
+		Assert.assertEquals(1, handled.get());
+		assertAllWritten(futures);
+	}
+
+	@Test
+	public void testCreditsOfUnverifiedMessagesAreGranted() {
+		SampleProvider provider = new SampleProvider() {
+
+			@Override
+			public boolean verifyChannelHandlerContext(ChannelHandlerContext ctx) {
+				return false;
+			}
+		};
+		provider.getConfig().setTlsEnabled(true);
+
+		EmbeddedChannel receiver = newChannel(new InboundMessageHandler(provider));
+		EmbeddedChannel sender = newChannel(new ChannelInboundHandlerAdapter());
+		List<CompletableFuture<Void>> futures = send(sender, COUNT);
+
+		pump(sender, receiver);
+		assertAllWritten(futures);
+	}
+
+	// ---
+
+	private static EmbeddedChannel newChannel(ChannelHandler... handlers) {
+		EmbeddedChannel channel = new EmbeddedChannel(new OutboundPriorityHandler(COUNT, OverflowPolicy.FUTURE, new FlowControl(WINDOW, 1, 16)));
+		channel.pipeline().addLast(handlers);
+		return channel;
+	}
+
+	private static List<CompletableFuture<Void>> send(EmbeddedChannel sender, int count) {
+		MessageSender messageSender = new MessageSender(new Context());
+		PeerContext peerContext = new PeerContext();
+		peerContext.setChannelHandlerContext(sender.pipeline().lastContext());
+
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			futures.add(messageSender.sendMessageTracked(new SampleMessage(String.valueOf(i)), peerContext, DeliveryMode.WRITTEN));
+		}
+		return futures;
+	}
+
+	/**
+	 * Moves frames between the channels until both are idle
+	 */
+	private static void pump(EmbeddedChannel sender, EmbeddedChannel receiver) {
+		while (transfer(sender, receiver) + transfer(receiver, sender) > 0) {
+		}
+	}
+
+	/**
+	 * Moves written frames from one channel to the other
+	 * 
+	 * @return number of frames moved
+	 */
+	private static int transfer(EmbeddedChannel from, EmbeddedChannel to) {
+		from.runPendingTasks();
+		int count = 0;
+		Object frame;
+		while ((frame = from.readOutbound()) != null) {
+			count++;
+			to.writeInbound(frame);
+			to.runPendingTasks();
+		}
+		return count;
+	}
+
+	private static void assertAllWritten(List<CompletableFuture<Void>> futures) {
+		for (CompletableFuture<Void> future : futures) {
+			Assert.assertTrue(future.isDone() && !future.isCompletedExceptionally());
+		}
+	}
+}
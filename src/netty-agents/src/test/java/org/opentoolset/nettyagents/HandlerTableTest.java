@@ -0,0 +1,70 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HandlerTableTest {
+
+	private interface Audited {
+	}
+
+	private interface Urgent extends Audited {
+	}
+
+	private static class BaseMessage extends AbstractMessage {
+	}
+
+	private static class AuditedMessage extends BaseMessage implements Urgent {
+	}
+
+	private static class SpecialMessage extends AuditedMessage {
+	}
+
+	@Test
+	public void testExactTypeIsPreferred() {
+		HandlerTable<String> table = HandlerTable.<String> empty().with(BaseMessage.class, "base").with(SpecialMessage.class, "special");
+
+		Assert.assertEquals("special", table.get(SpecialMessage.class));
+		Assert.assertEquals("base", table.get(AuditedMessage.class));
+		Assert.assertEquals("base", table.get(BaseMessage.class));
+		Assert.assertNull(table.get(AbstractMessage.class));
+	}
+
+	@Test
+	public void testSuperclassesArePreferredToInterfaces() {
+		HandlerTable<String> table = HandlerTable.<String> empty().with(Urgent.class, "urgent").with(BaseMessage.class, "base");
+		Assert.assertEquals("base", table.get(SpecialMessage.class));
+
+		table = table.without(BaseMessage.class);
+		Assert.assertEquals("urgent", table.get(SpecialMessage.class));
+	}
+
+	@Test
+	public void testSuperinterfacesAreResolved() {
+		HandlerTable<String> table = HandlerTable.<String> empty().with(Audited.class, "audited");
+
+		Assert.assertEquals("audited", table.get(SpecialMessage.class));
+		Assert.assertNull(table.get(BaseMessage.class));
+	}
+
+	@Test
+	public void testRegistrationsCopyTheTable() {
+		HandlerTable<String> empty = HandlerTable.empty();
+		HandlerTable<String> table = empty.with(BaseMessage.class, "base");
+		Assert.assertEquals("base", table.get(SpecialMessage.class));
+
+		HandlerTable<String> replaced = table.with(BaseMessage.class, "replaced");
+		HandlerTable<String> removed = table.without(BaseMessage.class);
+		Assert.assertEquals("replaced", replaced.get(SpecialMessage.class));
+		Assert.assertNull(removed.get(SpecialMessage.class));
+
+		// Earlier tables and their resolved handlers are not affected
+		Assert.assertEquals("base", table.get(SpecialMessage.class));
+		Assert.assertNull(empty.get(SpecialMessage.class));
+		Assert.assertSame(table, table.without(SpecialMessage.class));
+	}
+}
@@ -0,0 +1,85 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HashRingTest {
+
+	private static final int KEYS = 20000;
+
+	@Test
+	public void testKeysAreSpreadEvenly() {
+		HashRing<String> ring = newRing(5);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			counts.merge(ring.getId("key-" + i), 1, Integer::sum);
+		}
+
+		Assert.assertEquals(5, counts.size());
+		int mean = KEYS / 5;
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			Assert.assertTrue(entry.getKey() + ": " + entry.getValue(), Math.abs(entry.getValue() - mean) < mean * 0.3);
+		}
+	}
+
+	@Test
+	public void testAddingNodeMovesKeysOnlyToIt() {
+		HashRing<String> ring = newRing(4);
+		HashRing<String> grown = ring.with("node-4", "node-4");
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String key = "key-" + i;
+			String before = ring.getId(key);
+			String after = grown.getId(key);
+			if (!before.equals(after)) {
+				Assert.assertEquals("node-4", after);
+				moved++;
+			}
+		}
+
+		// About 1/5 of keys move to the new node
+		Assert.assertTrue("Moved: " + moved, Math.abs(moved - KEYS / 5) < KEYS / 5 * 0.3);
+	}
+
+	@Test
+	public void testRemovingNodeMovesOnlyItsKeys() {
+		HashRing<String> ring = newRing(5);
+		HashRing<String> shrunk = ring.without("node-2");
+		Assert.assertFalse(shrunk.getNodes().containsKey("node-2"));
+		for (int i = 0; i < KEYS; i++) {
+			String key = "key-" + i;
+			String before = ring.getId(key);
+			String after = shrunk.getId(key);
+			if (before.equals("node-2")) {
+				Assert.assertNotEquals("node-2", after);
+			} else {
+				Assert.assertEquals(before, after);
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyRing() {
+		HashRing<String> ring = new HashRing<>(Constants.DEFAULT_VIRTUAL_NODES);
+		Assert.assertNull(ring.get("key"));
+		Assert.assertNull(ring.getId("key"));
+		Assert.assertEquals("node-0", ring.with("node-0", "node-0").get("key"));
+	}
+
+	// ---
+
+	private static HashRing<String> newRing(int size) {
+		HashRing<String> ring = new HashRing<>(Constants.DEFAULT_VIRTUAL_NODES);
+		for (int i = 0; i < size; i++) {
+			ring = ring.with("node-" + i, "node-" + i);
+		}
+		return ring;
+	}
+}
@@ -0,0 +1,40 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class HeartbeatHandlerTest {
+
+	@Test
+	public void testPingIsAnswered() {
+		EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(0));
+
+		channel.writeInbound(MessageWrapper.createPing(42L));
+		Assert.assertNull(channel.readInbound());
+		MessageWrapper pong = channel.readOutbound();
+		Assert.assertEquals(Long.valueOf(42), pong.getPong());
+	}
+
+	@Test
+	public void testRoundTripIsRecorded() {
+		Endpoint endpoint = new Endpoint("localhost", 4444);
+		PeerContext peerContext = new PeerContext();
+		EmbeddedChannel channel = new EmbeddedChannel(new HeartbeatHandler(0, endpoint::onRoundTrip));
+		channel.attr(PeerContext.KEY).set(peerContext);
+
+		long sentAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+		channel.writeInbound(MessageWrapper.createPong(sentAt));
+		Assert.assertNull(channel.readInbound());
+		Assert.assertTrue(endpoint.getRoundTripNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+		Assert.assertEquals(endpoint.getRoundTripNanos(), peerContext.getRoundTripNanos());
+		Assert.assertFalse(endpoint.isStale(TimeUnit.SECONDS.toNanos(10)));
+	}
+}
@@ -0,0 +1,103 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InboundDispatcherTest {
+
+	@Test
+	public void testSameKeyWithMixedPriorities() throws Exception {
+		InboundDispatcher dispatcher = new InboundDispatcher();
+		dispatcher.startup(1);
+		try {
+			List<String> handled = new CopyOnWriteArrayList<>();
+			CountDownLatch blocker = blockLane(dispatcher);
+			CountDownLatch done = new CountDownLatch(5);
+
+			dispatcher.dispatch(Priority.LOW, "key-1", record(handled, done, "key-1/low"));
+			dispatcher.dispatch(Priority.NORMAL, "key-1", record(handled, done, "key-1/normal"));
+			dispatcher.dispatch(Priority.HIGH, "key-1", record(handled, done, "key-1/high"));
+			dispatcher.dispatch(Priority.HIGH, "key-2", record(handled, done, "key-2/high"));
+			dispatcher.dispatch(Priority.HIGH, null, record(handled, done, "none/high"));
+			blocker.countDown();
+
+			Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals(Arrays.asList("key-1/low", "key-1/normal", "key-1/high"), filter(handled, "key-1/"));
+
+			// Tasks with other keys still overtake lower priority ones
+			Assert.assertTrue(handled.indexOf("key-2/high") < handled.indexOf("key-1/low"));
+			Assert.assertTrue(handled.indexOf("none/high") < handled.indexOf("key-1/low"));
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testSameKeyInOrderAcrossLanes() throws Exception {
+		InboundDispatcher dispatcher = new InboundDispatcher();
+		dispatcher.startup(4);
+		try {
+			Priority[] priorities = Priority.values();
+			List<Integer> handled = new CopyOnWriteArrayList<>();
+			CountDownLatch done = new CountDownLatch(1000);
+			for (int i = 0; i < 1000; i++) {
+				int number = i;
+				dispatcher.dispatch(priorities[i % priorities.length], "key", () -> {
+					handled.add(number);
+					done.countDown();
+				});
+			}
+
+			Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 1000; i++) {
+				Assert.assertEquals(i, (int) handled.get(i));
+			}
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	// ---
+
+	private static CountDownLatch blockLane(InboundDispatcher dispatcher) throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch blocker = new CountDownLatch(1);
+		dispatcher.dispatch(Priority.HIGH, () -> {
+			started.countDown();
+			try {
+				blocker.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		return blocker;
+	}
+
+	private static Runnable record(List<String> handled, CountDownLatch done, String name) {
+		return () -> {
+			handled.add(name);
+			done.countDown();
+		};
+	}
+
+	private static List<String> filter(List<String> handled, String prefix) {
+		List<String> result = new CopyOnWriteArrayList<>();
+		for (String name : handled) {
+			if (name.startsWith(prefix)) {
+				result.add(name);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,129 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+import org.opentoolset.nettyagents.TestData.SampleRequest;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class InboundRateLimitHandlerTest {
+
+	@Test
+	public void testRejectedRequestIsAnswered() {
+		EmbeddedChannel channel = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(1, 0), null, null, RateLimit.Action.REJECT));
+
+		channel.writeInbound(MessageWrapper.create(new SampleMessage("accepted")));
+		MessageWrapper requestWrapper = MessageWrapper.createRequest(new SampleRequest("rejected", 1));
+		channel.writeInbound(requestWrapper);
+		Assert.assertNotNull(channel.readInbound());
+		Assert.assertNull(channel.readInbound());
+
+		MessageWrapper responseWrapper = channel.readOutbound();
+		Assert.assertEquals(requestWrapper.getId(), responseWrapper.getCorrelationId());
+		try {
+			responseWrapper.deserializeResponse(TestData.SampleResponse.class);
+			Assert.fail();
+		} catch (OverloadedException e) {
+			Assert.assertTrue(e.getRetryAfterMillis() > 0 && e.getRetryAfterMillis() <= 1001);
+		}
+
+		// Messages are dropped without an answer
+		channel.writeInbound(MessageWrapper.create(new SampleMessage("rejected")));
+		Assert.assertNull(channel.readInbound());
+		Assert.assertNull(channel.readOutbound());
+	}
+
+	@Test
+	public void testPeerLimits() {
+		EmbeddedChannel first = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(2, 0), null, null, RateLimit.Action.REJECT));
+		EmbeddedChannel second = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(2, 0), null, null, RateLimit.Action.REJECT));
+
+		Assert.assertEquals(2, writeMessages(first, 5, 0));
+		Assert.assertEquals(2, writeMessages(second, 5, 0));
+	}
+
+	@Test
+	public void testPeerByteLimit() {
+		EmbeddedChannel channel = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(0, 1000), null, null, RateLimit.Action.REJECT));
+
+		Assert.assertEquals(2, writeMessages(channel, 5, 400));
+	}
+
+	@Test
+	public void testGlobalLimits() {
+		TokenBucket globalMessageBucket = new RateLimit(3, 0).newMessageBucket();
+		EmbeddedChannel first = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> null, globalMessageBucket, null, RateLimit.Action.REJECT));
+		EmbeddedChannel second = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> null, globalMessageBucket, null, RateLimit.Action.REJECT));
+
+		Assert.assertEquals(2, writeMessages(first, 2, 0));
+		Assert.assertEquals(1, writeMessages(second, 5, 0));
+		Assert.assertEquals(0, writeMessages(first, 5, 0));
+	}
+
+	@Test
+	public void testRejectedMessageKeepsTokens() {
+		TokenBucket globalMessageBucket = new RateLimit(3, 0).newMessageBucket();
+		EmbeddedChannel channel = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(2, 1000), globalMessageBucket, null, RateLimit.Action.REJECT));
+
+		// A message over the byte limit takes no message tokens of the peer or global limits
+		Assert.assertEquals(0, writeMessages(channel, 1, 2000));
+		Assert.assertEquals(2, writeMessages(channel, 5, 100));
+		Assert.assertTrue(globalMessageBucket.tryConsume(1));
+	}
+
+	@Test
+	public void testResponsesAreNotLimited() {
+		EmbeddedChannel channel = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(1, 0), null, null, RateLimit.Action.REJECT));
+
+		Assert.assertEquals(1, writeMessages(channel, 2, 0));
+		for (int i = 0; i < 5; i++) {
+			channel.writeInbound(MessageWrapper.createResponse(new TestData.SampleResponse("response", i), String.valueOf(i)));
+		}
+		for (int i = 0; i < 5; i++) {
+			Assert.assertNotNull(channel.readInbound());
+		}
+		Assert.assertNull(channel.readOutbound());
+	}
+
+	@Test
+	public void testPauseAndResumeReads() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(new InboundRateLimitHandler(fingerprint -> new RateLimit(10, 0), null, null, RateLimit.Action.PAUSE_READS));
+
+		// Paused messages are not dropped, the peer is held back instead
+		Assert.assertEquals(10, writeMessages(channel, 10, 0));
+		Assert.assertTrue(channel.config().isAutoRead());
+
+		Assert.assertEquals(1, writeMessages(channel, 1, 0));
+		Assert.assertFalse(channel.config().isAutoRead());
+
+		TimeUnit.MILLISECONDS.sleep(150);
+		channel.runScheduledPendingTasks();
+		Assert.assertTrue(channel.config().isAutoRead());
+	}
+
+	// ---
+
+	/**
+	 * @return number of messages passed by the rate limiter
+	 */
+	private static int writeMessages(EmbeddedChannel channel, int count, int frameLength) {
+		for (int i = 0; i < count; i++) {
+			MessageWrapper messageWrapper = MessageWrapper.create(new SampleMessage(String.valueOf(i)));
+			messageWrapper.setFrameLength(frameLength);
+			channel.writeInbound(messageWrapper);
+		}
+
+		int passed = 0;
+		while (channel.readInbound() != null) {
+			passed++;
+		}
+		return passed;
+	}
+}
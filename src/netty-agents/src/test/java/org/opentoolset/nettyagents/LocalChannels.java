@@ -0,0 +1,88 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+
+/**
+ * Connects pipelines of handlers over the in-VM transport of Netty, so that handlers can be tested with real event loops and without sockets. Messages are passed as objects, so encoders are not needed.
+ */
+public class LocalChannels implements AutoCloseable {
+
+	private final EventLoopGroup group = new DefaultEventLoopGroup(2);
+
+	private final LocalAddress address = new LocalAddress(UUID.randomUUID().toString());
+
+	private final Channel serverChannel;
+
+	private volatile CompletableFuture<Channel> accepted = new CompletableFuture<>();
+
+	// ---
+
+	/**
+	 * @param serverHandlers
+	 *          Supplies handlers of each accepted channel
+	 */
+	public LocalChannels(Supplier<ChannelHandler[]> serverHandlers) throws InterruptedException {
+		ServerBootstrap serverBootstrap = new ServerBootstrap().group(this.group).channel(LocalServerChannel.class).childHandler(new ChannelInitializer<LocalChannel>() {
+
+			@Override
+			protected void initChannel(LocalChannel channel) {
+				channel.pipeline().addLast(serverHandlers.get());
+				LocalChannels.this.accepted.complete(channel);
+			}
+		});
+		this.serverChannel = serverBootstrap.bind(this.address).sync().channel();
+	}
+
+	/**
+	 * Connects a client channel with the given handlers
+	 * 
+	 * @param clientHandlers
+	 * @return client channel
+	 */
+	public Channel connect(ChannelHandler... clientHandlers) throws Exception {
+		this.accepted = new CompletableFuture<>();
+		Bootstrap bootstrap = new Bootstrap().group(this.group).channel(LocalChannel.class).handler(new ChannelInitializer<LocalChannel>() {
+
+			@Override
+			protected void initChannel(LocalChannel channel) {
+				channel.pipeline().addLast(clientHandlers);
+			}
+		});
+		Channel channel = bootstrap.connect(this.address).sync().channel();
+		this.accepted.get(5, TimeUnit.SECONDS);
+		return channel;
+	}
+
+	/**
+	 * Returns the server side of the last connected channel
+	 * 
+	 * @return
+	 */
+	public Channel getAccepted() throws Exception {
+		return this.accepted.get(5, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void close() {
+		this.serverChannel.close().syncUninterruptibly();
+		this.group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+	}
+}
@@ -0,0 +1,100 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+import org.opentoolset.nettyagents.TestData.SampleRequest;
+import org.opentoolset.nettyagents.TestData.SampleResponse;
+import org.opentoolset.nettyagents.agents.ClientAgent;
+import org.opentoolset.nettyagents.agents.ServerAgent;
+
+public class MTCluster {
+
+	private static ServerAgent serverAgentA;
+	private static ServerAgent serverAgentB;
+	private static ClientAgent clientAgent1;
+	private static ClientAgent clientAgent2;
+
+	// ---
+
+	@Test
+	public void test() throws Exception {
+		serverAgentA.startup();
+		serverAgentB.startup();
+		clientAgent1.startup();
+		clientAgent2.startup();
+
+		waitForClient(serverAgentA).setId("client-1");
+		waitForClient(serverAgentB).setId("client-2");
+
+		while (serverAgentA.getClusterNode().getOwnerNode("client-2") == null || serverAgentB.getClusterNode().getOwnerNode("client-1") == null) {
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+
+		Assert.assertEquals("node-b", serverAgentA.getClusterNode().getOwnerNode("client-2"));
+		Assert.assertEquals("node-a", serverAgentB.getClusterNode().getOwnerNode("client-1"));
+
+		{
+			serverAgentA.sendMessage(new SampleMessage("Sample message from node-a to client-2"), "client-2").get(5, TimeUnit.SECONDS);
+			serverAgentB.sendMessage(new SampleMessage("Sample message from node-b to client-1"), "client-1").get(5, TimeUnit.SECONDS);
+
+			{
+				SampleResponse response = serverAgentA.doRequest(new SampleRequest("Sample request from node-a to client-2", 3), "client-2", 5);
+				System.out.printf("Response received from client-2 through node-b: %s\n", response);
+				Assert.assertNotNull(response);
+				Assert.assertEquals(5, response.getNumber());
+			}
+
+			{
+				SampleResponse response = serverAgentB.doRequest(new SampleRequest("Sample request from node-b to client-1", 1), "client-1", 5);
+				System.out.printf("Response received from client-1 through node-a: %s\n", response);
+				Assert.assertNotNull(response);
+				Assert.assertEquals(2, response.getNumber());
+			}
+		}
+
+		clientAgent2.shutdown();
+		while (serverAgentA.getClusterNode().getOwnerNode("client-2") != null) {
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+
+		clientAgent1.shutdown();
+		serverAgentA.shutdown();
+		serverAgentB.shutdown();
+	}
+
+	// ---
+
+	@BeforeClass
+	public static void beforeClass() throws Exception {
+		serverAgentA = new ServerAgent();
+		serverAgentA.getConfig().setLocalPort(4444).setCluster("node-a", 5444).addClusterMember("node-a", "localhost", 5444).addClusterMember("node-b", "localhost", 5445);
+
+		serverAgentB = new ServerAgent();
+		serverAgentB.getConfig().setLocalPort(4445).setCluster("node-b", 5445).addClusterMember("node-a", "localhost", 5444).addClusterMember("node-b", "localhost", 5445);
+
+		clientAgent1 = new ClientAgent();
+		clientAgent1.getConfig().setRemotePort(4444);
+		clientAgent1.setMessageHandler(SampleMessage.class, message -> System.out.printf("Message received on client1: %s\n", message));
+		clientAgent1.setRequestHandler(SampleRequest.class, request -> new SampleResponse("Sample response from client1 (increment by 1)", request.getNumber() + 1));
+
+		clientAgent2 = new ClientAgent();
+		clientAgent2.getConfig().setRemotePort(4445);
+		clientAgent2.setMessageHandler(SampleMessage.class, message -> System.out.printf("Message received on client2: %s\n", message));
+		clientAgent2.setRequestHandler(SampleRequest.class, request -> new SampleResponse("Sample response from client2 (increment by 2)", request.getNumber() + 2));
+	}
+
+	private static PeerContext waitForClient(ServerAgent serverAgent) throws InterruptedException {
+		while (serverAgent.getClients().isEmpty()) {
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		return serverAgent.getClients().values().iterator().next();
+	}
+}
@@ -0,0 +1,54 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleProvider;
+import org.opentoolset.nettyagents.TestData.SampleRequest;
+import org.opentoolset.nettyagents.TestData.SampleResponse;
+
+import io.netty.channel.ChannelHandler;
+
+public class MessageSenderTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRequiredResponsesMustBePositive() {
+		MessageSender messageSender = new SampleProvider().getContext().getMessageSender();
+		messageSender.doRequestAll(new SampleRequest("request", 1), Collections.singleton(new PeerContext()), 1, 0, null);
+	}
+
+	@Test
+	public void testGatheringCompletesWithRequiredResponses() throws Exception {
+		SampleProvider serverProvider = new SampleProvider();
+		serverProvider.getContext().getMessageReceiver().setRequestHandler(SampleRequest.class, request -> new SampleResponse(request.getText(), request.getNumber() + 1));
+
+		SampleProvider clientProvider = new SampleProvider();
+		MessageSender messageSender = clientProvider.getContext().getMessageSender();
+
+		try (LocalChannels channels = new LocalChannels(() -> new ChannelHandler[] { new InboundMessageHandler(serverProvider) })) {
+			PeerContext answering = new PeerContext();
+			answering.setChannelHandlerContext(channels.connect(new InboundMessageHandler(clientProvider)).pipeline().lastContext());
+
+			// Requests to this peer are never answered, since the server side has no handlers
+			LocalChannels silentChannels = new LocalChannels(() -> new ChannelHandler[0]);
+			try {
+				PeerContext silent = new PeerContext();
+				silent.setChannelHandlerContext(silentChannels.connect(new InboundMessageHandler(clientProvider)).pipeline().lastContext());
+
+				GatherResult<SampleResponse> result = messageSender.doRequestAll(new SampleRequest("request", 1), Arrays.asList(silent, answering), 30, 1, null).get(5, TimeUnit.SECONDS);
+				Assert.assertTrue(result.isSatisfied());
+				Assert.assertEquals(2, result.getResponses().get(answering).getNumber());
+				Assert.assertEquals(Collections.singleton(silent), result.getPending());
+			} finally {
+				silentChannels.close();
+			}
+		}
+	}
+}
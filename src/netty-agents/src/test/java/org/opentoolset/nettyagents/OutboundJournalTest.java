@@ -0,0 +1,175 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class OutboundJournalTest {
+
+	private Path directory;
+
+	private EmbeddedChannel channel;
+
+	private PeerContext peerContext;
+
+	private MessageSender messageSender;
+
+	@Before
+	public void setUp() throws IOException {
+		this.directory = Files.createTempDirectory("netty-agents-journal");
+		this.channel = new EmbeddedChannel(new AcknowledgementHandler(), new ChannelInboundHandlerAdapter());
+		this.peerContext = new PeerContext();
+		this.peerContext.setChannelHandlerContext(this.channel.pipeline().lastContext());
+		this.messageSender = new MessageSender(new Context());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.channel.finishAndReleaseAll();
+		try (Stream<Path> paths = Files.walk(this.directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testSegmentRollover() throws Exception {
+		OutboundJournal journal = new OutboundJournal(this.directory, 512);
+		List<String> expected = append(journal, 0, 50);
+		Assert.assertTrue(countSegments() > 1);
+
+		List<String> forwarded = new ArrayList<>();
+		while (!journal.isEmpty()) {
+			CompletableFuture<Integer> future = journal.forwardBatchAsync(this.messageSender, this.peerContext, 10);
+			forwarded.addAll(readForwarded(true));
+			Assert.assertTrue(future.isDone() && !future.isCompletedExceptionally());
+		}
+
+		Assert.assertEquals(expected, forwarded);
+		Assert.assertEquals(1, countSegments());
+		journal.close();
+	}
+
+	@Test
+	public void testCommitAndRewind() throws Exception {
+		OutboundJournal journal = new OutboundJournal(this.directory, 4096);
+		append(journal, 0, 5);
+
+		// Not acknowledged, so not committed
+		CompletableFuture<Integer> future = journal.forwardBatchAsync(this.messageSender, this.peerContext, 3);
+		Assert.assertEquals(Arrays.asList("0", "1", "2"), readForwarded(false));
+		Assert.assertFalse(future.isDone());
+
+		journal.rewind();
+		future = journal.forwardBatchAsync(this.messageSender, this.peerContext, 3);
+		Assert.assertEquals(Arrays.asList("0", "1", "2"), readForwarded(true));
+		Assert.assertEquals(3, (int) future.get());
+		journal.close();
+
+		// Only uncommitted messages are forwarded after a restart
+		journal = new OutboundJournal(this.directory, 4096);
+		journal.forwardBatchAsync(this.messageSender, this.peerContext, 10);
+		Assert.assertEquals(Arrays.asList("3", "4"), readForwarded(true));
+		Assert.assertTrue(journal.isEmpty());
+		journal.close();
+	}
+
+	@Test
+	public void testRecoveryOfPartiallyWrittenRecord() throws Exception {
+		OutboundJournal journal = new OutboundJournal(this.directory, 4096);
+		append(journal, 0, 3);
+		journal.close();
+
+		// Simulate a crash while writing the next record: its content is written but its length is not
+		Path segment = lastSegment();
+		int end = endOfRecords(segment);
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.seek(end + Integer.BYTES);
+			file.write("{\"partial\":".getBytes(Constants.DEFAULT_CHARSET));
+		}
+
+		journal = new OutboundJournal(this.directory, 4096);
+		append(journal, 3, 1);
+		journal.forwardBatchAsync(this.messageSender, this.peerContext, 10);
+		Assert.assertEquals(Arrays.asList("0", "1", "2", "3"), readForwarded(true));
+		journal.close();
+	}
+
+	// ---
+
+	private static List<String> append(OutboundJournal journal, int from, int count) throws IOException {
+		List<String> texts = new ArrayList<>();
+		for (int i = from; i < from + count; i++) {
+			journal.append(MessageWrapper.create(new SampleMessage(String.valueOf(i))));
+			texts.add(String.valueOf(i));
+		}
+		return texts;
+	}
+
+	private List<String> readForwarded(boolean acknowledge) {
+		List<String> texts = new ArrayList<>();
+		long lastSeq = 0;
+		MessageWrapper messageWrapper;
+		while ((messageWrapper = this.channel.readOutbound()) != null) {
+			texts.add(messageWrapper.deserializeMessage(SampleMessage.class).getText());
+			lastSeq = messageWrapper.getSeq();
+		}
+
+		if (acknowledge && lastSeq > 0) {
+			this.channel.writeInbound(MessageWrapper.createAck(lastSeq));
+		}
+		return texts;
+	}
+
+	private long countSegments() throws IOException {
+		try (Stream<Path> paths = Files.list(this.directory)) {
+			return paths.filter(path -> path.toString().endsWith(".seg")).count();
+		}
+	}
+
+	private Path lastSegment() throws IOException {
+		Path result = null;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*.seg")) {
+			for (Path path : stream) {
+				if (result == null || path.compareTo(result) > 0) {
+					result = path;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static int endOfRecords(Path segment) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "r")) {
+			int offset = 0;
+			while (true) {
+				file.seek(offset);
+				int length = file.readInt();
+				if (length <= 0) {
+					return offset;
+				}
+				offset += Integer.BYTES + length;
+			}
+		}
+	}
+}
@@ -0,0 +1,155 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+import org.opentoolset.nettyagents.TestData.SampleResponse;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class OutboundPriorityHandlerTest {
+
+	private static final int CAPACITY = 2;
+
+	private EmbeddedChannel channel;
+
+	private OutboundPriorityHandler handler;
+
+	private PeerContext peerContext;
+
+	private MessageSender messageSender = new MessageSender(new Context());
+
+	@Test
+	public void testFailFast() {
+		setUp(OverflowPolicy.FAIL_FAST);
+		fillQueue();
+
+		CompletableFuture<Void> future = send("2");
+		Assert.assertTrue(future.isCompletedExceptionally());
+
+		grantCredits(3);
+		Assert.assertEquals(Arrays.asList("0", "1"), readWritten());
+	}
+
+	@Test
+	public void testFuture() {
+		setUp(OverflowPolicy.FUTURE);
+		fillQueue();
+
+		CompletableFuture<Void> future = send("2");
+		Assert.assertFalse(future.isDone());
+
+		grantCredits(3);
+		Assert.assertEquals(Arrays.asList("0", "1", "2"), readWritten());
+		Assert.assertTrue(future.isDone() && !future.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testBlockOnEventLoopDoesNotExceedCapacity() {
+		setUp(OverflowPolicy.BLOCK);
+		fillQueue();
+
+		// Embedded channel runs everything on its event loop, where sends can't block and must not bypass the bound
+		CompletableFuture<Void> future = send("2");
+		Assert.assertFalse(future.isDone());
+		Assert.assertFalse(this.handler.hasCapacity());
+
+		grantCredits(3);
+		Assert.assertEquals(Arrays.asList("0", "1", "2"), readWritten());
+	}
+
+	@Test
+	public void testBlockTimesOut() throws Exception {
+		setUp(OverflowPolicy.BLOCK);
+		fillQueue();
+
+		Assert.assertFalse(this.handler.awaitCapacity(50));
+	}
+
+	@Test
+	public void testDropOldest() {
+		setUp(OverflowPolicy.DROP_OLDEST);
+		List<CompletableFuture<Void>> futures = fillQueue();
+
+		send("2");
+		Assert.assertTrue(futures.get(0).isCompletedExceptionally());
+
+		grantCredits(3);
+		Assert.assertEquals(Arrays.asList("1", "2"), readWritten());
+	}
+
+	@Test
+	public void testResponsesAreBounded() {
+		setUp(OverflowPolicy.FAIL_FAST);
+		fillQueue();
+
+		this.messageSender.writeResponse(this.peerContext.getChannelHandlerContext(), MessageWrapper.createResponse(new SampleResponse("response", 0), "request-id"));
+
+		grantCredits(3);
+		Assert.assertEquals(Arrays.asList("0", "1"), readWritten());
+	}
+
+	@Test
+	public void testHighPriorityIsNotBounded() {
+		setUp(OverflowPolicy.FAIL_FAST);
+		fillQueue();
+
+		CompletableFuture<Void> future = this.messageSender.sendMessage(MessageWrapper.create(new SampleMessage("high"), Priority.HIGH), this.peerContext);
+		Assert.assertTrue(future.isDone() && !future.isCompletedExceptionally());
+		Assert.assertEquals(Arrays.asList("high"), readWritten());
+	}
+
+	// ---
+
+	private void setUp(OverflowPolicy overflowPolicy) {
+		this.handler = new OutboundPriorityHandler(CAPACITY, overflowPolicy, new FlowControl(0, 0, 16));
+		this.channel = new EmbeddedChannel(this.handler, new ChannelInboundHandlerAdapter());
+		this.peerContext = new PeerContext();
+		this.peerContext.setChannelHandlerContext(this.channel.pipeline().lastContext());
+	}
+
+	/**
+	 * Fills the queue with messages which are held back by flow control until credits are granted
+	 * 
+	 * @return
+	 */
+	private List<CompletableFuture<Void>> fillQueue() {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int i = 0; i < CAPACITY; i++) {
+			futures.add(send(String.valueOf(i)));
+		}
+		Assert.assertFalse(this.handler.hasCapacity());
+		return futures;
+	}
+
+	private CompletableFuture<Void> send(String text) {
+		return this.messageSender.sendMessageTracked(new SampleMessage(text), this.peerContext, DeliveryMode.WRITTEN);
+	}
+
+	private void grantCredits(int credits) {
+		this.channel.writeInbound(MessageWrapper.createCredit(credits, 1));
+	}
+
+	private List<String> readWritten() {
+		List<String> texts = new ArrayList<>();
+		MessageWrapper messageWrapper;
+		while ((messageWrapper = this.channel.readOutbound()) != null) {
+			if (messageWrapper.getClassOfMessage() == SampleMessage.class) {
+				texts.add(messageWrapper.deserializeMessage(SampleMessage.class).getText());
+			} else if (messageWrapper.getClassOfMessage() != null) {
+				texts.add(messageWrapper.getClassOfMessage().getSimpleName());
+			}
+		}
+		return texts;
+	}
+}
@@ -0,0 +1,92 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleCerts;
+
+public class PeerIndexTest {
+
+	@Test
+	public void testIdChangesAreIndexed() {
+		PeerIndex index = new PeerIndex();
+		List<String> events = new ArrayList<>();
+		index.setListener(new PeerIndex.Listener() {
+
+			@Override
+			public void onIdAdded(String id, PeerContext peer) {
+				events.add("+" + id);
+			}
+
+			@Override
+			public void onIdRemoved(String id, PeerContext peer) {
+				events.add("-" + id);
+			}
+		});
+
+		PeerContext peer = new PeerContext();
+		peer.setId("first");
+		index.add(peer);
+		Assert.assertSame(peer, index.getById("first"));
+
+		peer.setId("second");
+		Assert.assertNull(index.getById("first"));
+		Assert.assertSame(peer, index.getById("second"));
+
+		index.remove(peer);
+		Assert.assertNull(index.getById("second"));
+
+		// Removed peers don't update the index anymore
+		peer.setId("third");
+		Assert.assertNull(index.getById("third"));
+		Assert.assertEquals(Arrays.asList("+first", "-first", "+second", "-second"), events);
+	}
+
+	@Test
+	public void testFingerprintChangesAreIndexed() throws Exception {
+		X509Certificate clientCert = SampleCerts.cert("client");
+		X509Certificate otherCert = SampleCerts.cert("other");
+		String clientFingerprint = Utils.getFingerprintAsHex(clientCert);
+		String otherFingerprint = Utils.getFingerprintAsHex(otherCert);
+
+		PeerIndex index = new PeerIndex();
+		PeerContext peer = new PeerContext();
+		index.add(peer);
+		Assert.assertNull(index.getByFingerprint(clientFingerprint));
+
+		peer.setCert(clientCert);
+		Assert.assertSame(peer, index.getByFingerprint(clientFingerprint));
+
+		peer.setCert(otherCert);
+		Assert.assertNull(index.getByFingerprint(clientFingerprint));
+		Assert.assertSame(peer, index.getByFingerprint(otherFingerprint));
+
+		index.remove(peer);
+		Assert.assertNull(index.getByFingerprint(otherFingerprint));
+	}
+
+	@Test
+	public void testReplacedPeerIsNotRemovedByPreviousOne() {
+		PeerIndex index = new PeerIndex();
+		PeerContext previous = new PeerContext();
+		PeerContext current = new PeerContext();
+		previous.setId("peer");
+		current.setId("peer");
+		index.add(previous);
+		index.add(current);
+		Assert.assertSame(current, index.getById("peer"));
+
+		// eg. the previous connection of a reconnected peer is closed later
+		index.remove(previous);
+		Assert.assertSame(current, index.getById("peer"));
+		Assert.assertNull(index.getById(null));
+	}
+}
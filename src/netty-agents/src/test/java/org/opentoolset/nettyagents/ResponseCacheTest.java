@@ -0,0 +1,101 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.CacheableSampleRequest;
+import org.opentoolset.nettyagents.TestData.SampleProvider;
+import org.opentoolset.nettyagents.TestData.SampleResponse;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class ResponseCacheTest {
+
+	@Test
+	public void testExpiry() throws Exception {
+		ResponseCache cache = new ResponseCache();
+		cache.put(CacheableSampleRequest.class, "a", response("a"), 1);
+		Assert.assertNotNull(cache.get(CacheableSampleRequest.class, "a"));
+
+		TimeUnit.MILLISECONDS.sleep(1100);
+		Assert.assertNull(cache.get(CacheableSampleRequest.class, "a"));
+		Assert.assertEquals(0, cache.getSize());
+		Assert.assertEquals(0, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testEvictionBySize() {
+		ResponseCache cache = new ResponseCache();
+		cache.put(CacheableSampleRequest.class, "a", response("a"), 60);
+		long entryBytes = cache.getCurrentBytes();
+		cache.setMaxBytes(entryBytes * 2);
+
+		cache.put(CacheableSampleRequest.class, "b", response("b"), 60);
+		Assert.assertNotNull(cache.get(CacheableSampleRequest.class, "a"));
+		cache.put(CacheableSampleRequest.class, "c", response("c"), 60);
+
+		// "b" is the least recently used one since "a" was read after it was put
+		Assert.assertNull(cache.get(CacheableSampleRequest.class, "b"));
+		Assert.assertNotNull(cache.get(CacheableSampleRequest.class, "a"));
+		Assert.assertNotNull(cache.get(CacheableSampleRequest.class, "c"));
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertTrue(cache.getCurrentBytes() <= cache.getMaxBytes());
+
+		cache.setMaxBytes(entryBytes);
+		Assert.assertEquals(1, cache.getSize());
+		Assert.assertNotNull(cache.get(CacheableSampleRequest.class, "c"));
+	}
+
+	@Test
+	public void testInvalidation() {
+		ResponseCache cache = new ResponseCache();
+		CacheableSampleRequest request = new CacheableSampleRequest("a", 1);
+		String serializedRequest = Context.getSerializer().serialize(request);
+		cache.put(CacheableSampleRequest.class, serializedRequest, response("a"), 60);
+		cache.put(CacheableSampleRequest.class, "b", response("b"), 60);
+
+		cache.invalidate(request);
+		Assert.assertNull(cache.get(CacheableSampleRequest.class, serializedRequest));
+		Assert.assertNotNull(cache.get(CacheableSampleRequest.class, "b"));
+
+		cache.invalidate(CacheableSampleRequest.class);
+		Assert.assertEquals(0, cache.getSize());
+
+		cache.put(CacheableSampleRequest.class, "c", response("c"), 60);
+		cache.invalidateAll();
+		Assert.assertEquals(0, cache.getSize());
+		Assert.assertEquals(0, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void testCacheHitBypassesAdmission() {
+		SampleProvider provider = new SampleProvider();
+		Context context = provider.getContext();
+		AdmissionController admissionController = new AdmissionController(1, 1, 1);
+		context.setAdmissionController(admissionController);
+		Assert.assertTrue(admissionController.tryAcquire());
+
+		MessageWrapper requestWrapper = MessageWrapper.createRequest(new CacheableSampleRequest("a", 1));
+		context.getResponseCache().put(CacheableSampleRequest.class, requestWrapper.getSerializedMessage(), response("cached"), 60);
+
+		EmbeddedChannel channel = new EmbeddedChannel(new InboundMessageHandler(provider));
+		channel.writeInbound(requestWrapper);
+
+		MessageWrapper responseWrapper = channel.readOutbound();
+		Assert.assertEquals(requestWrapper.getId(), responseWrapper.getCorrelationId());
+		Assert.assertEquals("cached", responseWrapper.deserializeMessage(SampleResponse.class).getText());
+		Assert.assertEquals(0, admissionController.getRejectedCount());
+		Assert.assertEquals(1, admissionController.getInFlight());
+	}
+
+	// ---
+
+	private static MessageWrapper response(String text) {
+		return MessageWrapper.createResponse(new SampleResponse(text, 0), null);
+	}
+}
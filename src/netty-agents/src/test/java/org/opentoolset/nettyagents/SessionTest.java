@@ -0,0 +1,152 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleMessage;
+import org.opentoolset.nettyagents.TestData.SampleProvider;
+import org.opentoolset.nettyagents.TestData.SampleRequest;
+import org.opentoolset.nettyagents.TestData.SampleResponse;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+public class SessionTest {
+
+	private final AtomicInteger handled = new AtomicInteger();
+
+	private final CountDownLatch entered = new CountDownLatch(1);
+
+	private final CountDownLatch proceed = new CountDownLatch(1);
+
+	private final SampleProvider serverProvider = new SampleProvider();
+
+	private final SampleProvider clientProvider = new SampleProvider();
+
+	private final SessionRegistry sessionRegistry = new SessionRegistry(60);
+
+	private final Session session = new Session(UUID.randomUUID().toString());
+
+	private final PeerContext server = new PeerContext();
+
+	@Before
+	public void setUp() {
+		this.serverProvider.getContext().getMessageReceiver().setRequestHandler(SampleRequest.class, request -> {
+			this.handled.incrementAndGet();
+			this.entered.countDown();
+			try {
+				this.proceed.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new SampleResponse(request.getText(), request.getNumber() + 1);
+		});
+		this.server.setSession(this.session);
+	}
+
+	@Test
+	public void testRequestInFlightIsHandledOnceAfterReconnect() throws Exception {
+		try (LocalChannels channels = newChannels()) {
+			connect(channels);
+			CompletableFuture<SampleResponse> future = this.clientProvider.getContext().getMessageSender().doRequestAsync(new SampleRequest("request", 1), this.server, 10);
+			Assert.assertTrue(this.entered.await(5, TimeUnit.SECONDS));
+
+			// The connection drops while the request is being handled, and the request is resent through a new one
+			disconnect();
+			connect(channels);
+			Assert.assertEquals(1, this.clientProvider.getContext().getMessageSender().resendPendings(this.server));
+
+			this.proceed.countDown();
+			Assert.assertEquals(2, future.get(5, TimeUnit.SECONDS).getNumber());
+			Assert.assertEquals(1, this.handled.get());
+			Assert.assertTrue(this.session.getPendings(this.server).isEmpty());
+		}
+	}
+
+	@Test
+	public void testLostResponseIsWrittenAfterReconnect() throws Exception {
+		try (LocalChannels channels = newChannels()) {
+			connect(channels);
+			CompletableFuture<SampleResponse> future = this.clientProvider.getContext().getMessageSender().doRequestAsync(new SampleRequest("request", 1), this.server, 10);
+			Assert.assertTrue(this.entered.await(5, TimeUnit.SECONDS));
+
+			// The request is handled after the connection dropped, so its response is lost with it
+			disconnect();
+			this.proceed.countDown();
+			Thread.sleep(100);
+			Assert.assertFalse(future.isDone());
+
+			connect(channels);
+			Assert.assertEquals(1, this.clientProvider.getContext().getMessageSender().resendPendings(this.server));
+			Assert.assertEquals(2, future.get(5, TimeUnit.SECONDS).getNumber());
+			Assert.assertEquals(1, this.handled.get());
+		}
+	}
+
+	@Test
+	public void testRequestIssuedWhileDisconnectedIsSentAfterReconnect() throws Exception {
+		try (LocalChannels channels = newChannels()) {
+			this.proceed.countDown();
+			CompletableFuture<SampleResponse> future = this.clientProvider.getContext().getMessageSender().doRequestAsync(new SampleRequest("request", 1), this.server, 10);
+			CompletableFuture<Void> deliveryFuture = this.clientProvider.getContext().getMessageSender().sendMessageTracked(new SampleMessage("message"), this.server, DeliveryMode.ACKNOWLEDGED);
+			Thread.sleep(100);
+			Assert.assertFalse(future.isDone());
+			Assert.assertFalse(deliveryFuture.isDone());
+			Assert.assertEquals(2, this.session.getPendings(this.server).size());
+
+			connect(channels);
+			Assert.assertEquals(2, this.clientProvider.getContext().getMessageSender().resendPendings(this.server));
+			Assert.assertEquals(2, future.get(5, TimeUnit.SECONDS).getNumber());
+			Assert.assertEquals(1, this.handled.get());
+		}
+	}
+
+	@Test
+	public void testRequestWithoutSessionFailsWhileDisconnected() throws Exception {
+		PeerContext peer = new PeerContext();
+		CompletableFuture<SampleResponse> future = this.clientProvider.getContext().getMessageSender().doRequestAsync(new SampleRequest("request", 1), peer, 10);
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof ClosedChannelException);
+		}
+	}
+
+	// ---
+
+	private LocalChannels newChannels() throws InterruptedException {
+		return new LocalChannels(() -> new ChannelHandler[] { new ChannelInboundHandlerAdapter() {
+
+			@Override
+			public void handlerAdded(ChannelHandlerContext ctx) {
+				ctx.channel().attr(PeerContext.KEY).set(new PeerContext());
+			}
+		}, new SessionHandler(this.sessionRegistry, false), new InboundMessageHandler(this.serverProvider) });
+	}
+
+	private void connect(LocalChannels channels) throws Exception {
+		Channel channel = channels.connect(new InboundMessageHandler(this.clientProvider));
+		channel.writeAndFlush(MessageWrapper.create(new SessionMessage(this.session.getToken())));
+		this.server.setChannelHandlerContext(channel.pipeline().lastContext());
+	}
+
+	private void disconnect() {
+		this.server.getChannelHandlerContext().channel().close().syncUninterruptibly();
+		this.server.setChannelHandlerContext(null);
+	}
+}
@@ -0,0 +1,39 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.agents.ClientAgent;
+import org.opentoolset.nettyagents.agents.ShardedClientAgent;
+
+public class ShardedClientAgentTest {
+
+	@Test
+	public void testDuplicateShardIsRejected() {
+		ShardedClientAgent agent = new ShardedClientAgent();
+		agent.addShard("shard-0", "localhost", 4444);
+		try {
+			agent.addShard("shard-0", "localhost", 4445);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(4444, agent.getConfig().getShards().get("shard-0").getPort());
+		}
+	}
+
+	@Test
+	public void testStartupIsIdempotent() {
+		ShardedClientAgent agent = new ShardedClientAgent();
+		agent.getConfig().addShard("shard-0", "localhost", 4444);
+		agent.startup();
+		try {
+			ClientAgent shard = agent.getShards().get("shard-0");
+			agent.startup();
+			Assert.assertSame(shard, agent.getShards().get("shard-0"));
+		} finally {
+			agent.shutdown();
+		}
+	}
+}
@@ -4,6 +4,15 @@
 // ---
 package org.opentoolset.nettyagents;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.cert.X509Certificate;
+
+import org.opentoolset.nettyagents.AbstractAgent.AbstractConfig;
+
+import io.netty.channel.ChannelHandlerContext;
+
 public interface TestData {
 
 	public static class SampleMessage extends AbstractMessage {
@@ -78,4 +87,72 @@ public interface TestData {
 			return number;
 		}
 	}
+
+	@Cacheable(ttlSec = 1)
+	public static class CacheableSampleRequest extends SampleRequest {
+
+		public CacheableSampleRequest() {
+			// Required for deserialization
+		}
+
+		public CacheableSampleRequest(String text, int number) {
+			super(text, number);
+		}
+	}
+
+	/**
+	 * Provider of handlers which are tested on an embedded channel without an agent
+	 */
+	public static class SampleProvider implements InboundMessageHandler.Provider {
+
+		private AbstractConfig config = new AbstractConfig();
+
+		private Context context = new Context();
+
+		@Override
+		public AbstractConfig getConfig() {
+			return config;
+		}
+
+		@Override
+		public Context getContext() {
+			return context;
+		}
+
+		@Override
+		public boolean verifyChannelHandlerContext(ChannelHandlerContext ctx) {
+			return true;
+		}
+	}
+
+	/**
+	 * Keys and certificates of test resources, since self-signed certificates can't be generated on every JDK
+	 */
+	public static class SampleCerts {
+
+		/**
+		 * Enables TLS with the key and certificate of the given name, ie. server, client or other
+		 * 
+		 * @param config
+		 * @param name
+		 */
+		public static void configureTls(AbstractConfig config, String name) throws Exception {
+			config.setTlsEnabled(true);
+			config.setPriKey(resource("tls/" + name + ".key"));
+			config.setCert(resource("tls/" + name + ".crt"));
+		}
+
+		public static X509Certificate cert(String name) throws Exception {
+			return Utils.buildCert(resource("tls/" + name + ".crt"));
+		}
+
+		public static void trust(AbstractAgent agent, X509Certificate cert) {
+			agent.getContext().getTrustedCerts().put(Utils.getFingerprintAsHex(cert), cert);
+		}
+
+		private static String resource(String name) throws Exception {
+			byte[] bytes = Files.readAllBytes(Paths.get(SampleCerts.class.getClassLoader().getResource(name).toURI()));
+			return new String(bytes, StandardCharsets.US_ASCII).trim();
+		}
+	}
 }
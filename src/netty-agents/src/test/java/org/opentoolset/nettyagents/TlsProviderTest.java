@@ -0,0 +1,105 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleCerts;
+import org.opentoolset.nettyagents.agents.ClientAgent;
+import org.opentoolset.nettyagents.agents.ServerAgent;
+
+import io.netty.handler.ssl.JdkSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.ImmediateExecutor;
+
+public class TlsProviderTest {
+
+	private ServerAgent serverAgent;
+
+	private ClientAgent clientAgent;
+
+	@Before
+	public void setUp() throws Exception {
+		this.serverAgent = new ServerAgent();
+		this.clientAgent = new ClientAgent();
+		SampleCerts.configureTls(this.serverAgent.getConfig(), "server");
+		SampleCerts.configureTls(this.clientAgent.getConfig(), "client");
+		SampleCerts.trust(this.serverAgent, this.clientAgent.getConfig().getCert());
+		SampleCerts.trust(this.clientAgent, this.serverAgent.getConfig().getCert());
+
+		try (ServerSocket socket = new ServerSocket(0)) {
+			this.serverAgent.getConfig().setLocalPort(socket.getLocalPort());
+		}
+		this.clientAgent.getConfig().setRemoteHost("localhost").setRemotePort(this.serverAgent.getConfig().getLocalPort());
+	}
+
+	@After
+	public void tearDown() {
+		this.clientAgent.shutdown();
+		this.serverAgent.shutdown();
+	}
+
+	@Test
+	public void testOpenSslFallsBackToJdkIfUnavailable() throws Exception {
+		Assume.assumeFalse(OpenSsl.isAvailable());
+
+		this.serverAgent.getConfig().setTlsProvider(SslProvider.OPENSSL);
+		this.clientAgent.getConfig().setTlsProvider(SslProvider.OPENSSL_REFCNT);
+		startup();
+
+		Assert.assertTrue(this.serverAgent.getSslContext() instanceof JdkSslContext);
+		Assert.assertTrue(this.clientAgent.getSslContext() instanceof JdkSslContext);
+		Assert.assertTrue(awaitTrustedClient());
+	}
+
+	@Test
+	public void testOpenSslIsUsedIfAvailable() throws Exception {
+		Assume.assumeTrue(OpenSsl.isAvailable());
+
+		this.serverAgent.getConfig().setTlsProvider(SslProvider.OPENSSL);
+		this.clientAgent.getConfig().setTlsProvider(SslProvider.OPENSSL);
+		startup();
+
+		Assert.assertTrue(this.serverAgent.getSslContext().sessionContext() instanceof OpenSslSessionContext);
+		Assert.assertTrue(awaitTrustedClient());
+	}
+
+	@Test
+	public void testHandshakeOffload() throws Exception {
+		this.serverAgent.getConfig().setTlsHandshakeOffloadEnabled(true);
+		this.clientAgent.getConfig().setTlsHandshakeOffloadEnabled(false);
+		startup();
+
+		Assert.assertSame(this.serverAgent.getRuntime().getTlsExecutor(), this.serverAgent.getTlsExecutor());
+		Assert.assertSame(ImmediateExecutor.INSTANCE, this.clientAgent.getTlsExecutor());
+		Assert.assertTrue(awaitTrustedClient());
+	}
+
+	// ---
+
+	private void startup() {
+		this.serverAgent.startup();
+		this.clientAgent.startup();
+	}
+
+	private boolean awaitTrustedClient() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (System.nanoTime() < deadline) {
+			if (this.serverAgent.getClients().values().stream().anyMatch(PeerContext::isTrusted) && this.clientAgent.getServer().isTrusted()) {
+				return true;
+			}
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return false;
+	}
+}
@@ -0,0 +1,162 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.net.ServerSocket;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.opentoolset.nettyagents.TestData.SampleCerts;
+import org.opentoolset.nettyagents.agents.ClientAgent;
+import org.opentoolset.nettyagents.agents.ServerAgent;
+
+import io.netty.channel.Channel;
+import io.netty.handler.ssl.SslHandler;
+
+public class TlsSessionTest {
+
+	private ServerAgent serverAgent;
+
+	private ClientAgent clientAgent;
+
+	@Before
+	public void setUp() throws Exception {
+		this.serverAgent = new ServerAgent();
+		this.clientAgent = new ClientAgent();
+		SampleCerts.configureTls(this.serverAgent.getConfig(), "server");
+		SampleCerts.configureTls(this.clientAgent.getConfig(), "client");
+		SampleCerts.trust(this.serverAgent, this.clientAgent.getConfig().getCert());
+		SampleCerts.trust(this.clientAgent, this.serverAgent.getConfig().getCert());
+
+		this.serverAgent.getConfig().setLocalPort(freePort());
+		this.clientAgent.getConfig().setRemoteHost("localhost").setRemotePort(this.serverAgent.getConfig().getLocalPort());
+		this.clientAgent.getConfig().setReconnectBackoff(10, 100);
+		this.serverAgent.startup();
+		this.clientAgent.startup();
+	}
+
+	@After
+	public void tearDown() {
+		this.clientAgent.shutdown();
+		this.serverAgent.shutdown();
+	}
+
+	@Test
+	public void testReconnectResumesSession() throws Exception {
+		Channel first = awaitClientChannel(null);
+		byte[] sessionId = sessionOf(first).getId();
+
+		first.close();
+		Channel second = awaitClientChannel(first);
+		Assert.assertNotNull(second);
+		Assert.assertArrayEquals(sessionId, sessionOf(second).getId());
+	}
+
+	@Test
+	public void testResumedHandshakeWithUntrustedCertIsRejected() throws Exception {
+		AtomicInteger connections = new AtomicInteger();
+		this.clientAgent.setConnectionListener(() -> connections.incrementAndGet());
+		Channel first = awaitClientChannel(null);
+		awaitCount(connections, 1);
+
+		// Keeps the session of the client resumable, so the next handshake is made without calling the trust manager
+		this.clientAgent.getContext().setTrustChangeListener(null);
+		this.serverAgent.getContext().setTrustChangeListener(null);
+		X509Certificate clientCert = this.clientAgent.getConfig().getCert();
+		this.serverAgent.getContext().getTrustedCerts().remove(Utils.getFingerprintAsHex(clientCert));
+		first.close();
+
+		// Since the server requires client authentication, handshake succeeds on client side only if the session is resumed
+		Assert.assertTrue("Session was not resumed", awaitCount(connections, 2));
+		// Reconnecting means that the server closed the resumed connection
+		Assert.assertTrue("Connection was not closed", awaitCount(connections, 3));
+		Assert.assertTrue(this.serverAgent.getClients().isEmpty());
+	}
+
+	@Test
+	public void testTrustChangeInvalidatesSessions() throws Exception {
+		Channel first = awaitClientChannel(null);
+		byte[] sessionId = sessionOf(first).getId();
+		SSLSessionContext clientSessions = this.clientAgent.getSslContext().sessionContext();
+		Assert.assertEquals(1, awaitValidSessions(clientSessions));
+
+		this.clientAgent.startPeerIdentificationMode();
+		Assert.assertEquals(0, validSessionCount(clientSessions));
+		this.clientAgent.stopPeerIdentificationMode();
+
+		// A full handshake is made after reconnecting, since the session can't be resumed
+		first.close();
+		Channel second = awaitClientChannel(first);
+		Assert.assertNotNull(second);
+		Assert.assertFalse(Arrays.equals(sessionId, sessionOf(second).getId()));
+		Assert.assertEquals(1, awaitValidSessions(clientSessions));
+
+		X509Certificate serverCert = this.serverAgent.getConfig().getCert();
+		this.clientAgent.getContext().getTrustedCerts().remove(Utils.getFingerprintAsHex(serverCert));
+		Assert.assertEquals(0, validSessionCount(clientSessions));
+	}
+
+	// ---
+
+	/**
+	 * @return channel of the client which the server knows, other than the given one
+	 */
+	private Channel awaitClientChannel(Channel previous) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (System.nanoTime() < deadline) {
+			for (PeerContext client : this.serverAgent.getClients().values()) {
+				Channel channel = client.getChannelHandlerContext().channel();
+				if (channel != previous && channel.isActive() && client.isTrusted()) {
+					return channel;
+				}
+			}
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return null;
+	}
+
+	private static boolean awaitCount(AtomicInteger counter, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (counter.get() < count && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return counter.get() >= count;
+	}
+
+	private static SSLSession sessionOf(Channel channel) {
+		return channel.pipeline().get(SslHandler.class).engine().getSession();
+	}
+
+	/**
+	 * Waits for the client to cache its session, since the server completes a full handshake earlier than the client
+	 */
+	private static long awaitValidSessions(SSLSessionContext sessionContext) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (validSessionCount(sessionContext) == 0 && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return validSessionCount(sessionContext);
+	}
+
+	private static long validSessionCount(SSLSessionContext sessionContext) {
+		return Collections.list(sessionContext.getIds()).stream().map(sessionContext::getSession).filter(session -> session != null && session.isValid()).count();
+	}
+
+	private static int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TopicIndexTest {
+
+	@Test
+	public void testExactTopics() {
+		TopicIndex index = new TopicIndex();
+		PeerContext peer = new PeerContext();
+		index.subscribe("config.network.dns", peer);
+
+		Assert.assertEquals(Collections.singleton(peer), new HashSet<>(index.getSubscribers("config.network.dns")));
+		Assert.assertTrue(index.getSubscribers("config.network").isEmpty());
+		Assert.assertTrue(index.getSubscribers("config.network.dns.primary").isEmpty());
+	}
+
+	@Test
+	public void testOneWordWildcard() {
+		TopicIndex index = new TopicIndex();
+		PeerContext peer = new PeerContext();
+		index.subscribe("config.*.dns", peer);
+
+		Assert.assertTrue(index.getSubscribers("config.network.dns").contains(peer));
+		Assert.assertTrue(index.getSubscribers("config.storage.dns").contains(peer));
+		Assert.assertFalse(index.getSubscribers("config.dns").contains(peer));
+		Assert.assertFalse(index.getSubscribers("config.network.primary.dns").contains(peer));
+		Assert.assertFalse(index.getSubscribers("config.network.dns.primary").contains(peer));
+	}
+
+	@Test
+	public void testTrailingAnyWordsWildcard() {
+		TopicIndex index = new TopicIndex();
+		PeerContext peer = new PeerContext();
+		index.subscribe("config.#", peer);
+
+		Assert.assertTrue(index.getSubscribers("config.network").contains(peer));
+		Assert.assertTrue(index.getSubscribers("config.network.dns.primary").contains(peer));
+		Assert.assertFalse(index.getSubscribers("status.network").contains(peer));
+		Assert.assertFalse(index.getSubscribers("configuration").contains(peer));
+	}
+
+	@Test
+	public void testAnyWordsWildcardMatchesZeroWords() {
+		TopicIndex index = new TopicIndex();
+		PeerContext prefixed = new PeerContext();
+		PeerContext all = new PeerContext();
+		index.subscribe("config.#", prefixed);
+		index.subscribe("#", all);
+
+		Assert.assertEquals(new HashSet<>(Arrays.asList(prefixed, all)), new HashSet<>(index.getSubscribers("config")));
+		Assert.assertEquals(Collections.singleton(all), new HashSet<>(index.getSubscribers("status")));
+	}
+
+	@Test
+	public void testAnyWordsWildcardOnlyAsLastWord() {
+		TopicIndex index = new TopicIndex();
+		PeerContext peer = new PeerContext();
+		index.subscribe("config.#.dns", peer);
+
+		Assert.assertFalse(index.getSubscribers("config.network.dns").contains(peer));
+		Assert.assertFalse(index.getSubscribers("config.dns").contains(peer));
+	}
+
+	@Test
+	public void testUnsubscribe() {
+		TopicIndex index = new TopicIndex();
+		PeerContext peer = new PeerContext();
+		PeerContext other = new PeerContext();
+		index.subscribe("config.*", peer);
+		index.subscribe("config.network", peer);
+		index.subscribe("config.*", other);
+
+		index.unsubscribe("config.*", peer);
+		Assert.assertEquals(Collections.singleton("config.network"), index.getSubscriptions(peer));
+		Assert.assertEquals(new HashSet<>(Arrays.asList(peer, other)), new HashSet<>(index.getSubscribers("config.network")));
+		Assert.assertEquals(Collections.singleton(other), new HashSet<>(index.getSubscribers("config.storage")));
+
+		index.unsubscribeAll(peer);
+		Assert.assertTrue(index.getSubscriptions(peer).isEmpty());
+		Assert.assertEquals(Collections.singleton(other), new HashSet<>(index.getSubscribers("config.network")));
+	}
+}
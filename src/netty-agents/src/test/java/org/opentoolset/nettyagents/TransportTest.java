@@ -0,0 +1,46 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+public class TransportTest {
+
+	/**
+	 * The io_uring transport is not a dependency of this project, so it is never available in tests
+	 */
+	@Test
+	public void testIOUringFallsBackToNio() {
+		Assert.assertEquals(Transport.NIO, Transport.IO_URING.resolve());
+	}
+
+	@Test
+	public void testEpollFallsBackToNioIfUnavailable() {
+		Assert.assertEquals(Epoll.isAvailable() ? Transport.EPOLL : Transport.NIO, Transport.EPOLL.resolve());
+	}
+
+	@Test
+	public void testAutoSelectsBestAvailableTransport() {
+		Assert.assertEquals(Epoll.isAvailable() ? Transport.EPOLL : Transport.NIO, Transport.AUTO.resolve());
+		Assert.assertEquals(Transport.NIO, Transport.NIO.resolve());
+	}
+
+	@Test
+	public void testRuntimeUsesResolvedTransport() {
+		AgentRuntime runtime = new AgentRuntime(Transport.IO_URING, 1, 1, 1);
+		try {
+			Assert.assertEquals(Transport.NIO, runtime.getTransport());
+			Assert.assertTrue(runtime.getWorkerGroup() instanceof NioEventLoopGroup);
+			Assert.assertEquals(NioServerSocketChannel.class, runtime.getTransport().getServerChannelClass());
+		} finally {
+			runtime.release();
+		}
+	}
+}
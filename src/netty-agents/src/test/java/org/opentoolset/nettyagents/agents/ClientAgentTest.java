@@ -0,0 +1,265 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents.agents;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.Endpoint;
+import org.opentoolset.nettyagents.LoadBalancing;
+import org.opentoolset.nettyagents.MessageSender;
+import org.opentoolset.nettyagents.PeerContext;
+import org.opentoolset.nettyagents.TestData.SampleProvider;
+import org.opentoolset.nettyagents.TestData.SampleRequest;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class ClientAgentTest {
+
+	@Test
+	public void testConnectionListenerRunsOnEventLoop() throws Exception {
+		int port = ServerAgentTest.freePort();
+		ServerAgent serverAgent = new ServerAgent();
+		serverAgent.getConfig().setLocalPort(port);
+		serverAgent.startup();
+
+		ClientAgent clientAgent = new ClientAgent();
+		clientAgent.getConfig().setRemoteHost("localhost").setRemotePort(port);
+		CompletableFuture<Boolean> listenerCalled = new CompletableFuture<>();
+		clientAgent.setConnectionListener(() -> {
+			Channel channel = clientAgent.getServer().getChannelHandlerContext().channel();
+			listenerCalled.complete(channel.eventLoop().inEventLoop());
+		});
+		clientAgent.startup();
+		try {
+			Assert.assertTrue(listenerCalled.get(5, TimeUnit.SECONDS));
+		} finally {
+			clientAgent.shutdown();
+			serverAgent.shutdown();
+		}
+	}
+
+	@Test
+	public void testEndpointSelection() {
+		Endpoint slow = new Endpoint("slow", 1);
+		Endpoint fast = new Endpoint("fast", 2);
+		Endpoint unmeasured = new Endpoint("unmeasured", 3);
+		List<Endpoint> endpoints = Arrays.asList(slow, fast, unmeasured);
+
+		slow.onSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+		fast.onSuccess(TimeUnit.MILLISECONDS.toNanos(5));
+		Assert.assertSame(fast, ClientAgent.selectEndpoint(endpoints));
+
+		// Heartbeats of the active connection show that the endpoint became slower
+		for (int i = 0; i < 50; i++) {
+			fast.onRoundTrip(TimeUnit.MILLISECONDS.toNanos(40));
+		}
+		Assert.assertSame(slow, ClientAgent.selectEndpoint(endpoints));
+
+		// Failed endpoints are only selected when all of them failed
+		slow.onFailure();
+		Assert.assertSame(fast, ClientAgent.selectEndpoint(endpoints));
+		fast.onFailure();
+		unmeasured.onFailure();
+		Assert.assertSame(slow, ClientAgent.selectEndpoint(endpoints));
+	}
+
+	@Test
+	public void testFailoverToAnotherEndpoint() throws Exception {
+		ServerAgent first = newServerAgent();
+		ServerAgent second = newServerAgent();
+
+		ClientAgent clientAgent = new ClientAgent();
+		clientAgent.getConfig().addEndpoint("localhost", first.getConfig().getLocalPort()).addEndpoint("localhost", second.getConfig().getLocalPort());
+		clientAgent.startup();
+		try {
+			int connectedPort = awaitConnectedPort(clientAgent, -1);
+			ServerAgent connected = connectedPort == first.getConfig().getLocalPort() ? first : second;
+			ServerAgent other = connected == first ? second : first;
+
+			// The server closes the connections of its known clients on shutdown
+			SocketAddress clientAddress = clientAgent.getServer().getChannelHandlerContext().channel().localAddress();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (!connected.getClients().containsKey(clientAddress) && System.nanoTime() < deadline) {
+				TimeUnit.MILLISECONDS.sleep(10);
+			}
+			connected.shutdown();
+			Assert.assertEquals(other.getConfig().getLocalPort(), awaitConnectedPort(clientAgent, connectedPort));
+		} finally {
+			clientAgent.shutdown();
+			first.shutdown();
+			second.shutdown();
+		}
+	}
+
+	@Test
+	public void testRoundRobinSelectsActiveConnectionsInTurn() {
+		PeerContext first = newConnection();
+		PeerContext second = newConnection();
+		PeerContext inactive = new PeerContext();
+		List<PeerContext> connections = Arrays.asList(first, second, inactive);
+
+		Assert.assertSame(first, ClientAgent.selectConnection(connections, 0, LoadBalancing.ROUND_ROBIN));
+		Assert.assertSame(second, ClientAgent.selectConnection(connections, 1, LoadBalancing.ROUND_ROBIN));
+		Assert.assertSame(first, ClientAgent.selectConnection(connections, 2, LoadBalancing.ROUND_ROBIN));
+		Assert.assertSame(second, ClientAgent.selectConnection(connections, 4, LoadBalancing.ROUND_ROBIN));
+	}
+
+	@Test
+	public void testLeastPendingSelectsLeastLoadedConnection() {
+		PeerContext busy = newConnection();
+		PeerContext first = newConnection();
+		PeerContext second = newConnection();
+		PeerContext inactive = new PeerContext();
+		List<PeerContext> connections = Arrays.asList(busy, first, second, inactive);
+
+		MessageSender messageSender = new SampleProvider().getContext().getMessageSender();
+		messageSender.doRequestAsync(new SampleRequest("request", 1), busy, 30);
+		messageSender.doRequestAsync(new SampleRequest("request", 2), busy, 30);
+		messageSender.doRequestAsync(new SampleRequest("request", 3), first, 30);
+		messageSender.doRequestAsync(new SampleRequest("request", 4), second, 30);
+		Assert.assertEquals(2, busy.getPendingRequests());
+
+		// Ties are broken by the rotating start position
+		Assert.assertSame(first, ClientAgent.selectConnection(connections, 0, LoadBalancing.LEAST_PENDING));
+		Assert.assertSame(second, ClientAgent.selectConnection(connections, 2, LoadBalancing.LEAST_PENDING));
+		Assert.assertSame(first, ClientAgent.selectConnection(connections, 3, LoadBalancing.LEAST_PENDING));
+
+		messageSender.doRequestAsync(new SampleRequest("request", 5), first, 30);
+		Assert.assertSame(second, ClientAgent.selectConnection(connections, 0, LoadBalancing.LEAST_PENDING));
+	}
+
+	@Test
+	public void testNoActiveConnection() {
+		PeerContext primary = new PeerContext();
+		Assert.assertSame(primary, ClientAgent.selectConnection(Collections.singletonList(primary), 1, LoadBalancing.LEAST_PENDING));
+		Assert.assertNull(ClientAgent.selectConnection(Arrays.asList(primary, new PeerContext()), 1, LoadBalancing.LEAST_PENDING));
+	}
+
+	@Test
+	public void testDroppedPooledConnectionIsReplaced() throws Exception {
+		ServerAgent serverAgent = newServerAgent();
+		ClientAgent clientAgent = new ClientAgent();
+		clientAgent.getConfig().setRemoteHost("localhost").setRemotePort(serverAgent.getConfig().getLocalPort());
+		clientAgent.getConfig().setPoolSize(3);
+		clientAgent.startup();
+		try {
+			List<Channel> channels = awaitPoolChannels(clientAgent);
+			Assert.assertFalse(channels.contains(null));
+
+			channels.get(1).close().sync();
+			List<Channel> replaced = awaitPoolChannels(clientAgent);
+			Assert.assertSame(channels.get(0), replaced.get(0));
+			Assert.assertNotNull(replaced.get(1));
+			Assert.assertNotSame(channels.get(1), replaced.get(1));
+			Assert.assertSame(channels.get(2), replaced.get(2));
+		} finally {
+			clientAgent.shutdown();
+			serverAgent.shutdown();
+		}
+	}
+
+	@Test
+	public void testReconnectDelayGrowsExponentiallyUpToMax() {
+		for (int attempt = 0; attempt < 40; attempt++) {
+			long upperBound = Math.min(1000, 10L << Math.min(attempt, 30));
+			long maxDelay = 0;
+			for (int i = 0; i < 1000; i++) {
+				long delay = ClientAgent.getReconnectDelayMillis(attempt, 10, 1000);
+				Assert.assertTrue("Attempt " + attempt + ": " + delay, delay >= 0 && delay <= upperBound);
+				maxDelay = Math.max(maxDelay, delay);
+			}
+
+			// Delays are spread over the whole range by jitter
+			Assert.assertTrue("Attempt " + attempt + ": " + maxDelay, maxDelay > upperBound / 2);
+		}
+	}
+
+	@Test
+	public void testReconnectsWhenServerComesUp() throws Exception {
+		int port = ServerAgentTest.freePort();
+		ClientAgent clientAgent = new ClientAgent();
+		clientAgent.getConfig().setRemoteHost("localhost").setRemotePort(port);
+		clientAgent.getConfig().setReconnectBackoff(10, 200);
+		clientAgent.startup();
+
+		ServerAgent serverAgent = new ServerAgent();
+		serverAgent.getConfig().setLocalPort(port);
+		try {
+			// Consecutive failed attempts raise the delay up to its max
+			TimeUnit.MILLISECONDS.sleep(500);
+			serverAgent.startup();
+
+			long startTime = System.nanoTime();
+			Assert.assertEquals(port, awaitConnectedPort(clientAgent, -1));
+			Assert.assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(1000));
+		} finally {
+			clientAgent.shutdown();
+			serverAgent.shutdown();
+		}
+	}
+
+	// ---
+
+	private static PeerContext newConnection() {
+		PeerContext connection = new PeerContext();
+		connection.setChannelHandlerContext(new EmbeddedChannel(new ChannelInboundHandlerAdapter()).pipeline().firstContext());
+		return connection;
+	}
+
+	/**
+	 * @return channels of pooled connections, waiting until all of them are active
+	 */
+	private static List<Channel> awaitPoolChannels(ClientAgent clientAgent) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (true) {
+			List<Channel> channels = new ArrayList<>();
+			for (PeerContext connection : clientAgent.getConnections()) {
+				ChannelHandlerContext channelHandlerContext = connection.getChannelHandlerContext();
+				channels.add(channelHandlerContext != null && channelHandlerContext.channel().isActive() ? channelHandlerContext.channel() : null);
+			}
+			if (!channels.contains(null) || System.nanoTime() > deadline) {
+				return channels;
+			}
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+
+	private static ServerAgent newServerAgent() throws Exception {
+		ServerAgent serverAgent = new ServerAgent();
+		serverAgent.getConfig().setLocalPort(ServerAgentTest.freePort());
+		serverAgent.startup();
+		return serverAgent;
+	}
+
+	/**
+	 * @return local port of the server which the client is connected to, other than the given one
+	 */
+	private static int awaitConnectedPort(ClientAgent clientAgent, int previousPort) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (System.nanoTime() < deadline) {
+			ChannelHandlerContext channelHandlerContext = clientAgent.getServer().getChannelHandlerContext();
+			if (channelHandlerContext != null && channelHandlerContext.channel().isActive()) {
+				int port = ((InetSocketAddress) channelHandlerContext.channel().remoteAddress()).getPort();
+				if (port != previousPort) {
+					return port;
+				}
+			}
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,97 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents.agents;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opentoolset.nettyagents.DeliveryMode;
+import org.opentoolset.nettyagents.TestData.SampleCerts;
+import org.opentoolset.nettyagents.agents.ClusterMessages.DirectoryUpdate;
+
+public class ClusterNodeTest {
+
+	@Test
+	public void testClusterTrustsOnlyMemberCerts() throws Exception {
+		int clusterPort = ServerAgentTest.freePort();
+		ServerAgent node = new ServerAgent();
+		SampleCerts.configureTls(node.getConfig(), "server");
+		ClientAgent member = newPeer("client", clusterPort);
+		ClientAgent intruder = newPeer("other", clusterPort);
+		SampleCerts.trust(member, node.getConfig().getCert());
+		SampleCerts.trust(intruder, node.getConfig().getCert());
+
+		// Certificates trusted for clients don't give access to the cluster
+		SampleCerts.trust(node, intruder.getConfig().getCert());
+		node.getConfig().setLocalPort(ServerAgentTest.freePort()).setCluster("node-a", clusterPort);
+		node.getConfig().addClusterMember("node-a", "localhost", clusterPort, node.getConfig().getCert());
+		node.getConfig().addClusterMember("node-b", "localhost", ServerAgentTest.freePort(), member.getConfig().getCert());
+
+		node.startup();
+		member.startup();
+		intruder.startup();
+		try {
+			awaitConnected(member);
+			intruder.sendMessageTracked(new DirectoryUpdate("node-b", "intruder-peer", true), DeliveryMode.WRITTEN);
+			member.sendMessageTracked(new DirectoryUpdate("node-b", "member-peer", true), DeliveryMode.WRITTEN);
+
+			Assert.assertEquals("node-b", awaitOwnerNode(node, "member-peer"));
+			Assert.assertNull(intruder.getServer().getChannelHandlerContext());
+			Assert.assertNull(node.getClusterNode().getOwnerNode("intruder-peer"));
+		} finally {
+			intruder.shutdown();
+			member.shutdown();
+			node.shutdown();
+		}
+	}
+
+	@Test
+	public void testClusterWithoutTlsAcceptsOnlyMemberHosts() throws Exception {
+		int clusterPort = ServerAgentTest.freePort();
+		ServerAgent node = new ServerAgent();
+		node.getConfig().setLocalPort(ServerAgentTest.freePort()).setCluster("node-a", clusterPort);
+		node.getConfig().addClusterMember("node-a", "192.0.2.1", clusterPort).addClusterMember("node-b", "192.0.2.2", clusterPort);
+		ClientAgent intruder = newPeer(null, clusterPort);
+
+		node.startup();
+		intruder.startup();
+		try {
+			awaitConnected(intruder);
+			intruder.sendMessageTracked(new DirectoryUpdate("node-b", "intruder-peer", true), DeliveryMode.WRITTEN);
+
+			Assert.assertNull(awaitOwnerNode(node, "intruder-peer"));
+		} finally {
+			intruder.shutdown();
+			node.shutdown();
+		}
+	}
+
+	// ---
+
+	private static ClientAgent newPeer(String certName, int clusterPort) throws Exception {
+		ClientAgent peer = new ClientAgent();
+		if (certName != null) {
+			SampleCerts.configureTls(peer.getConfig(), certName);
+		}
+		peer.getConfig().setRemoteHost("localhost").setRemotePort(clusterPort);
+		return peer;
+	}
+
+	private static void awaitConnected(ClientAgent clientAgent) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (clientAgent.getServer().getChannelHandlerContext() == null && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+	}
+
+	private static String awaitOwnerNode(ServerAgent node, String peerId) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while (node.getClusterNode().getOwnerNode(peerId) == null && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return node.getClusterNode().getOwnerNode(peerId);
+	}
+}
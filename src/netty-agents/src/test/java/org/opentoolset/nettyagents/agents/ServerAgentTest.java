@@ -0,0 +1,112 @@
+// ---
+// Copyright 2020 netty-agents team
+// All rights reserved
+// ---
+package org.opentoolset.nettyagents.agents;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.opentoolset.nettyagents.AgentRuntime;
+import org.opentoolset.nettyagents.Transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
+
+public class ServerAgentTest {
+
+	@Test
+	public void testSingleAcceptorWithoutEpoll() throws Exception {
+		ServerAgent agent = new ServerAgent();
+		agent.getConfig().setTransport(Transport.NIO);
+		agent.getConfig().setLocalPort(freePort()).setAcceptors(4).setBacklog(16);
+		agent.startup();
+		try {
+			List<Channel> acceptorChannels = awaitAcceptors(agent, 1);
+			Assert.assertEquals(1, acceptorChannels.size());
+			Assert.assertEquals(Integer.valueOf(16), acceptorChannels.get(0).config().getOption(ChannelOption.SO_BACKLOG));
+		} finally {
+			agent.shutdown();
+		}
+	}
+
+	@Test
+	public void testMultipleAcceptorsWithEpoll() throws Exception {
+		Assume.assumeTrue(Epoll.isAvailable());
+
+		int port = freePort();
+		ServerAgent agent = new ServerAgent();
+		agent.getConfig().setTransport(Transport.EPOLL);
+		agent.getConfig().setLocalPort(port).setAcceptors(2).setBacklog(16);
+		agent.startup();
+		try {
+			List<Channel> acceptorChannels = awaitAcceptors(agent, 2);
+			Assert.assertEquals(2, acceptorChannels.size());
+			for (Channel acceptorChannel : acceptorChannels) {
+				Assert.assertEquals(Integer.valueOf(16), acceptorChannel.config().getOption(ChannelOption.SO_BACKLOG));
+			}
+		} finally {
+			agent.shutdown();
+		}
+	}
+
+	@Test
+	public void testClosedAcceptorIsBoundAgain() throws Exception {
+		ServerAgent agent = new ServerAgent();
+		agent.getConfig().setTransport(Transport.NIO);
+		agent.getConfig().setLocalPort(freePort());
+		agent.startup();
+		try {
+			Channel acceptorChannel = awaitAcceptors(agent, 1).get(0);
+			acceptorChannel.close().sync();
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while ((agent.getAcceptorChannels().isEmpty() || agent.getAcceptorChannels().contains(acceptorChannel)) && System.nanoTime() < deadline) {
+				TimeUnit.MILLISECONDS.sleep(10);
+			}
+			Assert.assertEquals(1, agent.getAcceptorChannels().size());
+			Assert.assertTrue(agent.getAcceptorChannels().get(0).isActive());
+		} finally {
+			agent.shutdown();
+		}
+	}
+
+	@Test
+	public void testRepeatedShutdownReleasesSharedRuntimeOnce() throws Exception {
+		AgentRuntime runtime = new AgentRuntime();
+		try {
+			ServerAgent agent = new ServerAgent();
+			agent.setRuntime(runtime);
+			agent.getConfig().setLocalPort(freePort());
+			agent.startup();
+			Assert.assertEquals(2, runtime.refCount());
+
+			agent.shutdown();
+			agent.shutdown();
+			Assert.assertEquals(1, runtime.refCount());
+		} finally {
+			runtime.release();
+		}
+	}
+
+	// ---
+
+	static int freePort() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static List<Channel> awaitAcceptors(ServerAgent agent, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (agent.getAcceptorChannels().size() < count && System.nanoTime() < deadline) {
+			TimeUnit.MILLISECONDS.sleep(10);
+		}
+		return agent.getAcceptorChannels();
+	}
+}